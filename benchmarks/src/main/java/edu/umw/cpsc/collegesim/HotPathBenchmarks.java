@@ -0,0 +1,133 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sim.util.Bag;
+
+
+/**
+ * Microbenchmarks of the methods a simulated month spends most of its time
+ * in, each on a {@link Population} of 4k, 40k, and 400k students. Each call
+ * is on the next of the population's students or groups, so the numbers
+ * include the cache misses of a real run. (Except {@link #decay}, which
+ * times a whole month of decays; see {@link NextMonth}.)
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Give the throughput (and, with <code>-prof gc</code>, the allocation
+ * rate) of each hot path on its own, so that a change to one can be
+ * measured without the noise of a whole run.</li>
+ * </ul>
+ * Run with, e.g., <code>java -jar benchmarks/target/benchmarks.jar
+ * HotPathBenchmarks -prof gc</code>, or <code>-p size=4000</code> for just
+ * the smallest population.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector",
+    "-Xmx4g"})
+public class HotPathBenchmarks {
+
+    private final GroupProposal proposal = new GroupProposal();
+
+    /**
+     * A copy of the population's simulation, made afresh for each
+     * iteration, and stepped as far as the start of its next month (the
+     * groups' step). Decaying every student's friendships uses up the
+     * month's due ones, so each iteration needs its own copy for them to
+     * be due.
+     */
+    @State(Scope.Thread)
+    public static class NextMonth {
+
+        Sim sim;
+
+        // The time of the copy's next students' step.
+        double personTime;
+
+        @Setup(Level.Iteration)
+        public void copy(Population pop) throws IOException {
+            String[] args = { "-simtag", "" + (pop.sim.params.SIMTAG + 1) };
+            sim = pop.sim.fork(new String[][] { args }, false)[0];
+            double next = Math.floor(sim.schedule.getTime()) + 1;
+            while (sim.schedule.getTime() < next) {
+                sim.schedule.step(sim);
+            }
+            personTime = next + 0.5;
+        }
+
+        @TearDown(Level.Iteration)
+        public void discard() {
+            sim.finish();
+            sim = null;
+        }
+    }
+
+    @Benchmark
+    public double similarityTo(Population pop) {
+        return pop.nextPerson().similarityTo(pop.nextPerson());
+    }
+
+    /**
+     * Every student's friendships decaying, in order, as at the next
+     * students' step: looking at each friendship due this month, and
+     * removing the ones that have lapsed.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public int decay(NextMonth next) {
+        ArrayList<Person> people = next.sim.getPeople();
+        for (int i = 0; i < people.size(); i++) {
+            people.get(i).decay(next.personTime);
+        }
+        return next.sim.peopleGraph.getNumEdges();
+    }
+
+    @Benchmark
+    public Bag getPeopleInGroups(Population pop) {
+        return pop.nextPerson().getPeopleInGroups();
+    }
+
+    @Benchmark
+    public double affinityTo(Population pop) {
+        return pop.nextGroup().affinityTo(pop.nextPerson());
+    }
+
+    /**
+     * A group's influence on its members, as in {@link Group#step}: working
+     * out the influence on each member, then applying it.
+     */
+    @Benchmark
+    public GroupProposal influenceMembers(Population pop) {
+        Group group = pop.nextGroup();
+        proposal.clear();
+        group.proposeInfluence(proposal, pop.sim.streams.get(
+            RandomStreams.Purpose.INFLUENCE, group.getID(),
+            pop.sim.getCurrMonthNum()));
+        for (int x = 0; x < proposal.numMembers; x++) {
+            group.applyInfluence(proposal, x);
+        }
+        return proposal;
+    }
+}
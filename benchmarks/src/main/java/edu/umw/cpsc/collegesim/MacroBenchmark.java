@@ -0,0 +1,385 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+
+/**
+ * Runs whole simulations, headless, on each of a list of {@link Workload}s,
+ * and reports how fast each ran, and how the time per simulated year grows
+ * with the population.
+ * <p></p>
+ * Usage: <code>MacroBenchmark -simtag num [Sim's arguments] [-workloads
+ * label,label,...|all] [-warmups num] [-maxExponent x] [-list]</code>
+ * <ul>
+ * <li>The workloads run get consecutive SIMTAGs starting with -simtag's,
+ * and write their usual output (to the current directory). Sim's other
+ * arguments (say, -personThreads) are passed to every one, overriding the
+ * workload's own; the seed is 1 unless one is passed.</li>
+ * <li>-workloads gives the labels of the workloads to run (see {@link
+ * Workload#getLabel()}); by default, every one but "huge".</li>
+ * <li>First, -warmups (default 1) runs of the "small-short" workload are
+ * made and not reported, so that the first workload isn't run on cold
+ * code. They get the SIMTAGs after the last workload's.</li>
+ * <li>With -maxExponent, the exit status is 3 if any series' fitted
+ * exponent is more than x (say, 1.3, to catch a phase gone quadratic).</li>
+ * <li>-list just lists the workloads.</li>
+ * </ul>
+ * For each workload, it reports:
+ * <ul>
+ * <li>agent-steps per second: the number of student and group steps, over
+ * the wall time;</li>
+ * <li>the wall time per simulated year;</li>
+ * <li>the peak heap: the sum of each heap pool's peak use while it ran
+ * (so, if anything, an overestimate);</li>
+ * <li>output bytes: the size of every file it wrote.</li>
+ * </ul>
+ * Then, for each series of workloads that differ only in population, it
+ * fits (by least squares, in log-log) the wall time per year as a power of
+ * the mean population, and reports the exponent: about 1 for a model
+ * linear in the number of students, about 2 for a quadratic one. The
+ * results are written to macro&lt;SIMTAG&gt;.csv and
+ * macroScaling&lt;SIMTAG&gt;.csv, as well as printed.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Catch a change that makes a phase quadratic in a benchmark run that
+ * takes minutes, rather than in a production run that takes a
+ * weekend.</li>
+ * <li>Give the throughput, memory, and output size of runs like the real
+ * ones, to compare across changes and machines.</li>
+ * </ul>
+ * The workloads run one after another in this JVM, with a garbage
+ * collection between. The simulations' own progress messages are
+ * discarded.
+ */
+public class MacroBenchmark {
+
+    /** The result of running one workload. */
+    public static class Result {
+        public Workload workload;
+        public long simtag;
+        public long agentSteps;
+        /** The mean number of students over the students' steps. */
+        public double meanPeople;
+        public double wallSeconds;
+        public long peakHeapBytes;
+        public long outputBytes;
+
+        public double getSecondsPerYear() {
+            return wallSeconds / workload.getNumYears();
+        }
+
+        public double getAgentStepsPerSecond() {
+            return agentSteps / wallSeconds;
+        }
+    }
+
+    /** The power of the mean population the time per year was fitted
+     * to, for one series of workloads. */
+    public static class Fit {
+        public String series;
+        public int numWorkloads;
+        public double exponent;
+        /** The fit's coefficient of determination (R squared). */
+        public double r2;
+    }
+
+    // The prefix of the reports' filenames.
+    private static final String REPORT = "macro";
+
+    private final String[] sharedArgs;
+
+    /** Constructs a benchmark whose workloads are passed the arguments
+     * passed (on top of their own). */
+    public MacroBenchmark(String[] sharedArgs) {
+        this.sharedArgs = sharedArgs;
+    }
+
+    /**
+     * Runs the workload passed, as SIMTAG simtag, and returns how it went.
+     * (The simulation's own output goes wherever System.out does.)
+     */
+    public Result run(Workload workload, long simtag) throws IOException {
+        ArrayList<String> args = new ArrayList<String>();
+        args.add("-seed");
+        args.add("1");
+        args.addAll(Arrays.asList(workload.getArgs()));
+        args.addAll(Arrays.asList(sharedArgs));
+        args.add("-simtag");
+        args.add("" + simtag);
+        SimParameters params = SimParameters.parse(
+            args.toArray(new String[0]));
+
+        Result result = new Result();
+        result.workload = workload;
+        result.simtag = simtag;
+        List<MemoryPoolMXBean> heap = heapPools();
+        System.gc();
+        for (int i = 0; i < heap.size(); i++) {
+            heap.get(i).resetPeakUsage();
+        }
+
+        long start = System.nanoTime();
+        params.writeParamsFile();
+        Sim sim = new Sim(params.SEED, params);
+        sim.start();
+        long personSteps = 0;
+        long peopleSteps = 0;
+        while (true) {
+            // Students step at the half month, and groups on the month, so
+            // the ones that stepped are the ones there just beforehand.
+            int numPeople = sim.getNumPeople();
+            int numGroups = sim.getNumGroups();
+            if (!sim.schedule.step(sim)) {
+                break;
+            }
+            double time = sim.schedule.getTime();
+            if (time - Math.floor(time) == 0.5) {
+                result.agentSteps += numPeople;
+                peopleSteps += numPeople;
+                personSteps++;
+            } else if (time == Math.floor(time)) {
+                result.agentSteps += numGroups;
+            }
+        }
+        sim.finish();
+        result.wallSeconds = (System.nanoTime() - start) / 1e9;
+
+        for (int i = 0; i < heap.size(); i++) {
+            result.peakHeapBytes += heap.get(i).getPeakUsage().getUsed();
+        }
+        result.meanPeople = personSteps == 0 ? workload.getNumPeople() :
+            (double) peopleSteps / personSteps;
+        result.outputBytes = outputBytes(simtag);
+        return result;
+    }
+
+    /**
+     * Fits, for each series with workloads of at least two populations
+     * among the results passed, the time per year as a power of the mean
+     * population.
+     */
+    public static List<Fit> fit(List<Result> results) {
+        LinkedHashMap<String,ArrayList<Result>> series =
+            new LinkedHashMap<String,ArrayList<Result>>();
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            ArrayList<Result> members =
+                series.get(result.workload.getSeries());
+            if (members == null) {
+                members = new ArrayList<Result>();
+                series.put(result.workload.getSeries(), members);
+            }
+            members.add(result);
+        }
+
+        ArrayList<Fit> fits = new ArrayList<Fit>();
+        for (String name : series.keySet()) {
+            ArrayList<Result> members = series.get(name);
+            int n = members.size();
+            double[] x = new double[n];
+            double[] y = new double[n];
+            double meanX = 0, meanY = 0;
+            for (int i = 0; i < n; i++) {
+                x[i] = Math.log(members.get(i).meanPeople);
+                y[i] = Math.log(members.get(i).getSecondsPerYear());
+                meanX += x[i] / n;
+                meanY += y[i] / n;
+            }
+            double sxx = 0, sxy = 0, syy = 0;
+            for (int i = 0; i < n; i++) {
+                sxx += (x[i] - meanX) * (x[i] - meanX);
+                sxy += (x[i] - meanX) * (y[i] - meanY);
+                syy += (y[i] - meanY) * (y[i] - meanY);
+            }
+            if (sxx == 0) {
+                // Only one population; nothing to fit.
+                continue;
+            }
+            Fit fit = new Fit();
+            fit.series = name;
+            fit.numWorkloads = n;
+            fit.exponent = sxy / sxx;
+            fit.r2 = syy == 0 ? 1 : Math.min(1, sxy * sxy / (sxx * syy));
+            fits.add(fit);
+        }
+        return fits;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long simtag = -1;
+        Workload[] workloads = Workload.DEFAULT;
+        int warmups = 1;
+        double maxExponent = Double.NaN;
+        ArrayList<String> shared = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-simtag")) {
+                simtag = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-workloads")) {
+                workloads = parseWorkloads(args[++i]);
+            } else if (args[i].equals("-warmups")) {
+                warmups = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-maxExponent")) {
+                maxExponent = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-list")) {
+                listWorkloads();
+                return;
+            } else {
+                shared.add(args[i]);
+            }
+        }
+        if (simtag == -1) {
+            printUsageAndQuit();
+        }
+
+        PrintStream out = System.out;
+        MacroBenchmark benchmark = new MacroBenchmark(
+            shared.toArray(new String[0]));
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < warmups; i++) {
+                benchmark.run(Workload.SMALL_SHORT,
+                    simtag + workloads.length + i);
+            }
+        } finally {
+            System.setOut(out);
+        }
+        ArrayList<Result> results = new ArrayList<Result>();
+        PrintWriter report = new PrintWriter(new FileWriter(
+            REPORT + simtag + ".csv"));
+        report.println("workload,simtag,series,initNumPeople,meanPeople," +
+            "years,wallSeconds,secondsPerYear,agentSteps," +
+            "agentStepsPerSecond,peakHeapBytes,outputBytes");
+        out.printf("%-14s %9s %10s %12s %14s %12s %12s%n", "workload",
+            "people", "wall (s)", "s/year", "agent-steps/s", "peak heap",
+            "output");
+        for (int i = 0; i < workloads.length; i++) {
+            Result result;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try {
+                result = benchmark.run(workloads[i], simtag + i);
+            } finally {
+                System.setOut(out);
+            }
+            results.add(result);
+            out.printf("%-14s %9.0f %10.2f %12.3f %14.0f %12s %12s%n",
+                result.workload.getLabel(), result.meanPeople,
+                result.wallSeconds, result.getSecondsPerYear(),
+                result.getAgentStepsPerSecond(),
+                megabytes(result.peakHeapBytes),
+                megabytes(result.outputBytes));
+            report.println(result.workload.getLabel() + "," +
+                result.simtag + "," + result.workload.getSeries() + "," +
+                result.workload.getNumPeople() + "," + result.meanPeople +
+                "," + result.workload.getNumYears() + "," +
+                result.wallSeconds + "," + result.getSecondsPerYear() + "," +
+                result.agentSteps + "," + result.getAgentStepsPerSecond() +
+                "," + result.peakHeapBytes + "," + result.outputBytes);
+            report.flush();
+        }
+        report.close();
+
+        List<Fit> fits = fit(results);
+        boolean tooSteep = false;
+        PrintWriter scaling = new PrintWriter(new FileWriter(
+            REPORT + "Scaling" + simtag + ".csv"));
+        scaling.println("series,numWorkloads,exponent,r2");
+        for (int i = 0; i < fits.size(); i++) {
+            Fit fit = fits.get(i);
+            out.printf("%s: time per year ~ people^%.2f (R^2 %.3f, %d " +
+                "workloads)%n", fit.series, fit.exponent, fit.r2,
+                fit.numWorkloads);
+            scaling.println(fit.series + "," + fit.numWorkloads + "," +
+                fit.exponent + "," + fit.r2);
+            if (fit.exponent > maxExponent) {
+                tooSteep = true;
+            }
+        }
+        scaling.close();
+        if (tooSteep) {
+            System.err.println("Time per year grows faster than people^" +
+                maxExponent + ".");
+            System.exit(3);
+        }
+    }
+
+    /** (public simply to get it in the JavaDoc.) */
+    public static void printUsageAndQuit() {
+        System.err.println(
+        "Usage: MacroBenchmark -simtag num      # Long; first run's SIMTAG\n" +
+        "  [Sim's arguments]                    # see Sim\n" +
+        "  [-workloads label,label,...|all]     # default all but huge\n" +
+        "  [-warmups num]                       # Integer; default 1\n" +
+        "  [-maxExponent x]                     # exit 3 if steeper\n" +
+        "  [-list]                              # list the workloads");
+        System.exit(1);
+    }
+
+    private static Workload[] parseWorkloads(String labels) {
+        if (labels.equals("all")) {
+            return Workload.values();
+        }
+        String[] names = labels.split(",");
+        Workload[] workloads = new Workload[names.length];
+        for (int i = 0; i < names.length; i++) {
+            workloads[i] = Workload.forLabel(names[i]);
+        }
+        return workloads;
+    }
+
+    private static void listWorkloads() {
+        Workload[] workloads = Workload.values();
+        for (int i = 0; i < workloads.length; i++) {
+            System.out.println(workloads[i].getLabel() + "\t" +
+                workloads[i].getSeries() + "\t" +
+                String.join(" ", workloads[i].getArgs()));
+        }
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools =
+            ManagementFactory.getMemoryPoolMXBeans();
+        ArrayList<MemoryPoolMXBean> heap = new ArrayList<MemoryPoolMXBean>();
+        for (int i = 0; i < pools.size(); i++) {
+            if (pools.get(i).getType() == MemoryType.HEAP) {
+                heap.add(pools.get(i));
+            }
+        }
+        return heap;
+    }
+
+    // The total size of the files in the current directory written by the
+    // run with the SIMTAG passed (each named for its table, then the
+    // SIMTAG, then maybe an underscore and more, then an extension), other
+    // than this benchmark's own reports.
+    private static long outputBytes(long simtag) {
+        Pattern name = Pattern.compile(
+            "[A-Za-z_]*" + simtag + "(_[^.]*)?\\.[A-Za-z]+");
+        File[] files = new File(".").listFiles();
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            if (name.matcher(files[i].getName()).matches()  &&
+                !files[i].getName().startsWith(REPORT)) {
+                total += files[i].length();
+            }
+        }
+        return total;
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1f MB", bytes / 1048576.0);
+    }
+}
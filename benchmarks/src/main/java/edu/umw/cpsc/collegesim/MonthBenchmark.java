@@ -0,0 +1,48 @@
+package edu.umw.cpsc.collegesim;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks one whole simulated month (every student's and group's step,
+ * and the start or end of the year when it comes round) of a {@link
+ * Population} of 4k, 40k, and 400k students.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Measure what the hot paths add up to, including the scheduling,
+ * parallel phases, and output between them.</li>
+ * </ul>
+ * Each call runs the next month of the same simulation, so the population
+ * ages as the benchmark runs (and graduates and enrolls students every
+ * twelve calls); the months are single-shot, and the number of iterations
+ * small, so that it stays close to the one set up. Run with, e.g.,
+ * <code>java -jar benchmarks/target/benchmarks.jar MonthBenchmark -prof
+ * gc</code>.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 12)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector",
+    "-Xmx4g"})
+public class MonthBenchmark {
+
+    @Benchmark
+    public double month(Population pop) {
+        Sim sim = pop.sim;
+        double end = Math.floor(sim.schedule.getTime()) + 1;
+        while (sim.schedule.getTime() < end) {
+            sim.schedule.step(sim);
+        }
+        return sim.schedule.getTime();
+    }
+}
@@ -0,0 +1,116 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+
+/**
+ * The benchmarks' fixture: a simulation of 4k, 40k, or 400k students,
+ * with groups and new students per year in the same proportions as the
+ * defaults (one group per 20 students, a quarter of the students new each
+ * year), run for its first few months so that the friendships and groups
+ * are as dense as they'd really be.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Build the population once per trial (which, for 400k students, is
+ * a matter of minutes).</li>
+ * <li>Hand the benchmarks students and groups to work on, in a fixed
+ * pseudo-random order, so that they don't just hit the same few
+ * (cached) ones.</li>
+ * </ul>
+ * The events are summarized rather than written out row by row (see
+ * {@link SimParameters#SUMMARIZE_EVENTS}), so that the benchmarks mostly
+ * measure the model rather than the disk. The simulation's own progress
+ * messages are discarded.
+ */
+@State(Scope.Benchmark)
+public class Population {
+
+    /** The number of months to run the simulation before measuring. */
+    public static final int WARMUP_MONTHS = 3;
+
+    // The number of students and groups handed out before the order
+    // repeats.
+    private static final int NUM_PICKS = 1 << 16;
+
+    @Param({"4000", "40000", "400000"})
+    public int size;
+
+    Sim sim;
+
+    private Person[] people;
+    private Group[] groups;
+    private int nextPerson;
+    private int nextGroup;
+
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void build() {
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        SimParameters params = new SimParameters();
+        params.SEED = 1;
+        params.SIMTAG = 1000000 + size;
+        params.NUM_SIMULATION_YEARS = 1000;
+        params.INIT_NUM_PEOPLE = size;
+        params.INIT_NUM_GROUPS = size / 20;
+        params.NUM_FRESHMEN_ENROLLING_PER_YEAR = size / 4;
+        params.NUM_NEW_GROUPS_PER_YEAR = size / 400;
+        params.SUMMARIZE_EVENTS = true;
+        sim = new Sim(params.SEED, params);
+        sim.start();
+        // (Stopping just after the students' step, as though one of them
+        // were stepping, so that nothing on the decay wheel looks due
+        // before its time.)
+        while (sim.schedule.getTime() < WARMUP_MONTHS + 0.5) {
+            sim.schedule.step(sim);
+        }
+        pick();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    // Pick the students and groups to hand out.
+    private void pick() {
+        ec.util.MersenneTwisterFast rng =
+            new ec.util.MersenneTwisterFast(size);
+        people = new Person[NUM_PICKS];
+        for (int i = 0; i < NUM_PICKS; i++) {
+            people[i] = sim.getPeople().get(
+                rng.nextInt(sim.getNumPeople()));
+        }
+        groups = new Group[NUM_PICKS];
+        for (int i = 0; i < NUM_PICKS; i++) {
+            groups[i] = sim.getGroups().get(
+                rng.nextInt(sim.getNumGroups()));
+        }
+        nextPerson = nextGroup = 0;
+    }
+
+    /** Returns the next student. */
+    Person nextPerson() {
+        Person p = people[nextPerson];
+        nextPerson = (nextPerson + 1) & (NUM_PICKS - 1);
+        return p;
+    }
+
+    /** Returns the next group. */
+    Group nextGroup() {
+        Group g = groups[nextGroup];
+        nextGroup = (nextGroup + 1) & (NUM_PICKS - 1);
+        return g;
+    }
+}
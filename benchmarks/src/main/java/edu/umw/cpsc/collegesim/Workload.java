@@ -0,0 +1,97 @@
+package edu.umw.cpsc.collegesim;
+
+
+/**
+ * The catalog of workloads {@link MacroBenchmark} runs: populations from
+ * small to huge, with sparse, standard, or dense groups, over a short,
+ * standard, or long horizon.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Pin down, by name, exactly which simulations a benchmark result is
+ * for, so that results from different changes (or machines) can be
+ * compared.</li>
+ * <li>Group the workloads that differ only in population into series, so
+ * that the growth of the time per year with population can be fitted.</li>
+ * </ul>
+ * Every workload has, per student, as many new students and new groups a
+ * year as the defaults do (a quarter as many freshmen as initial students,
+ * and a new group per 400). The groups are standard at one per 20 students
+ * (the defaults' proportion), sparse at one per 100, and dense at one per
+ * 5. The horizon is standard at two years, short at one, and long at
+ * eight.
+ */
+public enum Workload {
+
+    SMALL("standard", 1000, 20, 2),
+    MEDIUM("standard", 4000, 20, 2),
+    LARGE("standard", 40000, 20, 2),
+    /** (Only run when asked for by name, or with "all"; it takes hours,
+     * and gigabytes of heap and disk.) */
+    HUGE("standard", 400000, 20, 2),
+    MEDIUM_SPARSE("sparse", 4000, 100, 2),
+    LARGE_SPARSE("sparse", 40000, 100, 2),
+    MEDIUM_DENSE("dense", 4000, 5, 2),
+    LARGE_DENSE("dense", 40000, 5, 2),
+    SMALL_SHORT("short", 1000, 20, 1),
+    MEDIUM_SHORT("short", 4000, 20, 1),
+    SMALL_LONG("long", 1000, 20, 8),
+    MEDIUM_LONG("long", 4000, 20, 8);
+
+    /** The workloads run by default: all but {@link #HUGE}. */
+    public static final Workload[] DEFAULT = {
+        SMALL, MEDIUM, LARGE, MEDIUM_SPARSE, LARGE_SPARSE, MEDIUM_DENSE,
+        LARGE_DENSE, SMALL_SHORT, MEDIUM_SHORT, SMALL_LONG, MEDIUM_LONG
+    };
+
+    private final String series;
+    private final int numPeople;
+    private final int peoplePerGroup;
+    private final int numYears;
+
+    private Workload(String series, int numPeople, int peoplePerGroup,
+        int numYears) {
+        this.series = series;
+        this.numPeople = numPeople;
+        this.peoplePerGroup = peoplePerGroup;
+        this.numYears = numYears;
+    }
+
+    /** Returns the name of the series of workloads this one belongs to:
+     * the ones that differ from it only in population. */
+    public String getSeries() {
+        return series;
+    }
+
+    /** Returns the number of students the workload starts with. */
+    public int getNumPeople() {
+        return numPeople;
+    }
+
+    /** Returns the number of years the workload is simulated for. */
+    public int getNumYears() {
+        return numYears;
+    }
+
+    /** Returns the name the workload is asked for by (its own, in lower
+     * case, with dashes). */
+    public String getLabel() {
+        return name().toLowerCase().replace('_', '-');
+    }
+
+    /** Returns the workload whose label (or name) is passed. */
+    public static Workload forLabel(String label) {
+        return valueOf(label.toUpperCase().replace('-', '_'));
+    }
+
+    /** Returns Sim's arguments (less -simtag) for the workload. */
+    public String[] getArgs() {
+        return new String[] {
+            "-maxTime", "" + numYears,
+            "-initNumPeople", "" + numPeople,
+            "-initNumGroups", "" + numPeople / peoplePerGroup,
+            "-numFreshmenPerYear", "" + numPeople / 4,
+            "-numNewGroupsPerYear", "" + Math.max(1, numPeople / 400)
+        };
+    }
+}
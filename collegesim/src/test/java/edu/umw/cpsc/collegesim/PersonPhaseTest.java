@@ -0,0 +1,76 @@
+package edu.umw.cpsc.collegesim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Checks that the students' steps count the friendships they make and
+ * lose exactly as they change the friendship graph, whether the students
+ * step one at a time or in a parallel {@link PersonPhase}. (In parallel,
+ * two students can each propose befriending the other in the same month;
+ * only the first of the two to commit may make, and count, the
+ * friendship.)
+ */
+public class PersonPhaseTest {
+
+    @Test
+    void serialStepsCountFriendshipsOnce() {
+        checkFriendshipCounts(0);
+    }
+
+    @Test
+    void parallelPhaseCountsFriendshipsOnce() {
+        checkFriendshipCounts(2);
+    }
+
+    // Run a small simulation with the number of person threads passed,
+    // checking after each of the students' steps that the friendships
+    // counted as made, less those counted as lapsed, are the change in the
+    // number of friendships.
+    private static void checkFriendshipCounts(int personThreads) {
+        SimParameters params = new SimParameters();
+        params.SEED = 7;
+        params.SIMTAG = 7000 + personThreads;
+        params.NUM_SIMULATION_YEARS = 2;
+        params.INIT_NUM_PEOPLE = 300;
+        params.SUMMARIZE_EVENTS = true;
+        params.PERSON_THREADS = personThreads;
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Sim sim = new Sim(params.SEED, params);
+        long totalFormed = 0;
+        try {
+            sim.start();
+            while (true) {
+                long formed = sim.metrics.getCount(
+                    SimMetrics.Counter.FRIENDSHIPS_FORMED);
+                long decays = sim.metrics.getCount(SimMetrics.Counter.DECAYS);
+                int edges = sim.peopleGraph.getNumEdges();
+                if (!sim.schedule.step(sim)) {
+                    break;
+                }
+                double time = sim.schedule.getTime();
+                if (time - Math.floor(time) == 0.5) {
+                    long newlyFormed = sim.metrics.getCount(
+                        SimMetrics.Counter.FRIENDSHIPS_FORMED) - formed;
+                    long newDecays = sim.metrics.getCount(
+                        SimMetrics.Counter.DECAYS) - decays;
+                    assertEquals(sim.peopleGraph.getNumEdges() - edges,
+                        newlyFormed - newDecays, "at time " + time);
+                    totalFormed += newlyFormed;
+                }
+            }
+        } finally {
+            sim.finish();
+            System.setOut(out);
+        }
+        assertTrue(totalFormed > 0, "no friendships were made");
+    }
+}
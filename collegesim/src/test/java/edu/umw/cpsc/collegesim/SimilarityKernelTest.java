@@ -0,0 +1,145 @@
+package edu.umw.cpsc.collegesim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+
+import ec.util.MersenneTwisterFast;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Checks that {@link VectorSimilarityKernel} agrees with the plain {@link
+ * SimilarityKernel.Scalar} loop, both on its own and inside {@link
+ * Person#similarityTo(Person)}. Since the vector kernel adds in a
+ * different order, they're only expected to agree to within {@link
+ * #TOLERANCE}.
+ * <p></p>
+ * Needs the JVM to have been started with <code>--add-modules
+ * jdk.incubator.vector</code> (as surefire is configured to).
+ */
+public class SimilarityKernelTest {
+
+    /** How far apart the two kernels' distances (each a sum of at most a
+     * couple of hundred values between 0 and 1) may be. */
+    static final double TOLERANCE = 1e-9;
+
+    // The longest row to try; the lengths tried include every remainder
+    // modulo any vector width up to 64 doubles.
+    private static final int MAX_LENGTH = 200;
+
+    private static final SimilarityKernel SCALAR =
+        new SimilarityKernel.Scalar();
+
+    private static Sim sim;
+
+    @BeforeAll
+    static void buildSim() {
+        SimParameters params = new SimParameters();
+        params.SEED = 3;
+        params.SIMTAG = 3003;
+        params.NUM_SIMULATION_YEARS = 1;
+        params.INIT_NUM_PEOPLE = 60;
+        params.INIT_NUM_GROUPS = 3;
+        params.SUMMARIZE_EVENTS = true;
+        // Pool sizes that aren't a multiple of any vector width.
+        params.CONSTANT_ATTRIBUTE_POOL_SIZE = 13;
+        params.NUM_PREFERENCES = params.PREFERENCE_POOL_SIZE = 23;
+        params.NUM_HOBBIES = params.HOBBY_POOL_SIZE = 17;
+        sim = new Sim(params.SEED, params);
+        sim.start();
+    }
+
+    @AfterAll
+    static void finishSim() {
+        sim.finish();
+    }
+
+    @Test
+    void vectorKernelIsTheOneInUse() {
+        assertTrue(SimilarityKernel.create() instanceof VectorSimilarityKernel,
+            "jdk.incubator.vector isn't available; run with --add-modules " +
+            "jdk.incubator.vector");
+    }
+
+    @Test
+    void vectorKernelMatchesScalar() {
+        SimilarityKernel vector = new VectorSimilarityKernel();
+        MersenneTwisterFast rng = new MersenneTwisterFast(1);
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            // (At random offsets into longer arrays, as rows of a matrix
+            // would be.)
+            int aOff = rng.nextInt(8);
+            int bOff = rng.nextInt(8);
+            double[] a = randomRow(rng, aOff + length + rng.nextInt(8));
+            double[] b = randomRow(rng, bOff + length + rng.nextInt(8));
+            assertEquals(SCALAR.l1Distance(a, aOff, b, bOff, length),
+                vector.l1Distance(a, aOff, b, bOff, length), TOLERANCE,
+                "length " + length);
+        }
+    }
+
+    @Test
+    void similarityToMatchesScalar() {
+        ArrayList<Person> people = sim.getPeople();
+        for (int i = 0; i < people.size(); i++) {
+            for (int j = 0; j < people.size(); j++) {
+                Person p = people.get(i);
+                Person q = people.get(j);
+                assertEquals(scalarSimilarity(p, q), p.similarityTo(q),
+                    TOLERANCE, p.getID() + " to " + q.getID());
+            }
+        }
+    }
+
+    private static double[] randomRow(MersenneTwisterFast rng, int length) {
+        double[] row = new double[length];
+        for (int i = 0; i < length; i++) {
+            row[i] = rng.nextDouble();
+        }
+        return row;
+    }
+
+    // Person.similarityTo(), worked out from the people's attributes with
+    // the scalar kernel.
+    private static double scalarSimilarity(Person p, Person q) {
+        SimParameters params = sim.params;
+        int numConstants = params.CONSTANT_ATTRIBUTE_POOL_SIZE;
+        double[] constants = sim.attributes.constantData();
+        double constantCount = numConstants - SCALAR.l1Distance(
+            constants, p.getSlot() * numConstants,
+            constants, q.getSlot() * numConstants, numConstants);
+
+        int numPrefs = params.PREFERENCE_POOL_SIZE;
+        double[] prefs = sim.attributes.preferenceData();
+        double prefCount = numPrefs - SCALAR.l1Distance(
+            prefs, p.getSlot() * numPrefs, prefs, q.getSlot() * numPrefs,
+            numPrefs);
+
+        int numHobbies = params.HOBBY_POOL_SIZE;
+        double[] pHobbies = new double[numHobbies];
+        double[] qHobbies = new double[numHobbies];
+        for (int i = 0; i < numHobbies; i++) {
+            pHobbies[i] = p.getHobbyValue(i);
+            qHobbies[i] = q.getHobbyValue(i);
+        }
+        double hobbyCount = numHobbies - SCALAR.l1Distance(
+            pHobbies, 0, qHobbies, 0, numHobbies);
+
+        int raceCount = p.getRace() == q.getRace() ? 1 : 0;
+        int genCount = p.getGender() == q.getGender() ? 1 : 0;
+        double similarity = constantCount * Person.CONST_WEIGHT +
+            prefCount * Person.PREF_WEIGHT +
+            hobbyCount * Person.HOBBY_WEIGHT +
+            raceCount * params.RACE_WEIGHT + genCount * Person.GEN_WEIGHT;
+        double maxRating = numConstants * Person.CONST_WEIGHT +
+            numPrefs * Person.PREF_WEIGHT +
+            numHobbies * Person.HOBBY_WEIGHT +
+            params.RACE_WEIGHT + Person.GEN_WEIGHT;
+        return similarity / maxRating;
+    }
+}
@@ -0,0 +1,392 @@
+package edu.umw.cpsc.collegesim;
+
+import ec.util.MersenneTwisterFast;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+
+/**
+ * A {@link TableWriter} for an event table (such as encounters or
+ * similarity) that, rather than writing a row per event, keeps counts in
+ * memory and writes a summary once a year. Each year's events are grouped
+ * by the values of their SYMBOL and BOOLEAN columns (the race pairing,
+ * whether they became friends, the type of encounter, ...); the summary
+ * has a row per group giving how many events it had, or, if the table has
+ * a DOUBLE column (the similarity), a row per bin of a fixed-bin histogram
+ * of that column. The INT columns other than the year (the ids) are not
+ * summarized.
+ * <p></p>
+ * Optionally, a bounded random sample of each year's raw rows (chosen by
+ * reservoir sampling) is also written, to a table laid out like the
+ * original.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Let a run output distributions, in space proportional to the number
+ * of years, rather than every event.</li>
+ * <li>Do so without allocating anything per event.</li>
+ * </ul>
+ */
+public class AggregatingTableWriter extends TableWriter {
+
+    // The most columns events can be grouped by (so that a group's key fits
+    // in an int, with a byte per column).
+    static final int MAX_KEY_COLUMNS = 3;
+
+    private final TableWriter out;
+    private final TableWriter sampleOut;
+
+    // The columns events are grouped by.
+    private final int[] keyColumns;
+
+    // The DOUBLE column histogrammed (-1 if none), and its bins.
+    private final int valueColumn;
+    private final int numBins;
+    private final double min;
+    private final double max;
+    private final double binWidth;
+
+    // The values of each SYMBOL column seen so far, and their codes.
+    private final ArrayList<HashMap<String,Integer>> codes =
+        new ArrayList<HashMap<String,Integer>>();
+    private final ArrayList<ArrayList<String>> symbols =
+        new ArrayList<ArrayList<String>>();
+
+    // This year's groups: a map from each one's key to its index, its key,
+    // and its counts (numBins per group, or one if there's no histogram).
+    private final IntIntHashMap groupIndex = new IntIntHashMap();
+    private int numGroups;
+    private int[] groupKeys = new int[16];
+    private int[] counts;
+
+    // The row being put: numbers for INT and DOUBLE columns, codes for
+    // SYMBOL and BOOLEAN ones.
+    private final double[] rowNumbers;
+    private final int[] rowCodes;
+
+    // The year whose events are being counted, and how many there have
+    // been.
+    private int year;
+    private long numEvents;
+
+    // The sample of this year's rows, and when each arrived.
+    private final MersenneTwisterFast random;
+    private final int sampleSize;
+    private final double[][] sampleNumbers;
+    private final int[][] sampleCodes;
+    private final long[] sampleOrder;
+
+    /**
+     * Returns the layout of the summary of the event table passed: the
+     * year, the columns events are grouped by, the lower edge of the
+     * histogram bin (if there's a DOUBLE column), and the count.
+     */
+    public static TableSchema summaryOf(TableSchema events) {
+        StringBuilder header = new StringBuilder(events.getColumnName(0));
+        ArrayList<TableSchema.Type> types = new ArrayList<TableSchema.Type>();
+        types.add(TableSchema.Type.INT);
+        String binColumn = null;
+        for (int c = 1; c < events.getNumColumns(); c++) {
+            switch (events.getType(c)) {
+            case SYMBOL:
+            case BOOLEAN:
+                header.append(',').append(events.getColumnName(c));
+                types.add(events.getType(c));
+                break;
+            case DOUBLE:
+                binColumn = events.getColumnName(c) + "Bin";
+                break;
+            default:
+                break;
+            }
+        }
+        if (binColumn != null) {
+            header.append(',').append(binColumn);
+            types.add(TableSchema.Type.DOUBLE);
+        }
+        header.append(",count");
+        types.add(TableSchema.Type.INT);
+        return new TableSchema(events.getName() + "Summary",
+            header.toString(), types.toArray(new TableSchema.Type[0]));
+    }
+
+    /**
+     * Constructs a writer that summarizes the event table passed to the
+     * table writer passed (which must be laid out as {@link
+     * #summaryOf(TableSchema)} says). If the table has a DOUBLE column, its
+     * values are counted in the number of equal bins passed between the
+     * min and max passed (values outside go in the first or last bin). If
+     * the sample size passed is positive, that many of each year's rows
+     * (or all, if there are fewer) are written to the sample table writer
+     * passed, chosen using a generator seeded with the seed passed.
+     */
+    public AggregatingTableWriter(TableSchema events, TableWriter out,
+        int numBins, double min, double max, int sampleSize,
+        TableWriter sampleOut, long seed) {
+        super(events);
+        this.out = out;
+        this.sampleOut = sampleOut;
+
+        int numKeys = 0;
+        int value = -1;
+        int[] keys = new int[events.getNumColumns()];
+        for (int c = 1; c < events.getNumColumns(); c++) {
+            switch (events.getType(c)) {
+            case SYMBOL:
+            case BOOLEAN:
+                keys[numKeys++] = c;
+                break;
+            case DOUBLE:
+                if (value != -1) {
+                    throw new IllegalArgumentException("Can't summarize " +
+                        events.getName() + ": more than one DOUBLE column");
+                }
+                value = c;
+                break;
+            default:
+                break;
+            }
+        }
+        if (numKeys > MAX_KEY_COLUMNS) {
+            throw new IllegalArgumentException("Can't summarize " +
+                events.getName() + ": more than " + MAX_KEY_COLUMNS +
+                " SYMBOL and BOOLEAN columns");
+        }
+        keyColumns = Arrays.copyOf(keys, numKeys);
+        valueColumn = value;
+        this.numBins = valueColumn == -1 ? 1 : numBins;
+        this.min = min;
+        this.max = max;
+        this.binWidth = (max - min) / this.numBins;
+        counts = new int[groupKeys.length * this.numBins];
+        for (int c = 0; c < events.getNumColumns(); c++) {
+            boolean symbol = events.getType(c) == TableSchema.Type.SYMBOL;
+            codes.add(symbol ? new HashMap<String,Integer>() : null);
+            symbols.add(symbol ? new ArrayList<String>() : null);
+        }
+
+        rowNumbers = new double[events.getNumColumns()];
+        rowCodes = new int[events.getNumColumns()];
+
+        random = new MersenneTwisterFast(seed);
+        this.sampleSize = sampleOut == null ? 0 : sampleSize;
+        sampleNumbers = new double[this.sampleSize][events.getNumColumns()];
+        sampleCodes = new int[this.sampleSize][events.getNumColumns()];
+        sampleOrder = new long[this.sampleSize];
+    }
+
+    public TableWriter putInt(int value) {
+        int c = column;
+        nextColumn(TableSchema.Type.INT);
+        if (c == 0) {
+            if (numEvents > 0  &&  value != year) {
+                // Events from a new year, before the old one was ended.
+                endYear();
+            }
+            year = value;
+        }
+        rowNumbers[c] = value;
+        return this;
+    }
+
+    public TableWriter putDouble(double value) {
+        int c = column;
+        nextColumn(TableSchema.Type.DOUBLE);
+        rowNumbers[c] = value;
+        return this;
+    }
+
+    public TableWriter putBoolean(boolean value) {
+        int c = column;
+        nextColumn(TableSchema.Type.BOOLEAN);
+        rowCodes[c] = value ? 1 : 0;
+        return this;
+    }
+
+    public TableWriter putSymbol(String value) {
+        int c = column;
+        nextColumn(TableSchema.Type.SYMBOL);
+        Integer code = codes.get(c).get(value);
+        if (code == null) {
+            if (codes.get(c).size() == ColumnarTableWriter.MAX_SYMBOLS) {
+                throw new IllegalStateException("More than " +
+                    ColumnarTableWriter.MAX_SYMBOLS +
+                    " different values in column " +
+                    schema.getColumnName(c) + " of " + schema.getName());
+            }
+            code = codes.get(c).size();
+            codes.get(c).put(value, code);
+            symbols.get(c).add(value);
+        }
+        rowCodes[c] = code;
+        return this;
+    }
+
+    public void endRow() {
+        checkRowComplete();
+        int key = 0;
+        for (int k = 0; k < keyColumns.length; k++) {
+            key |= rowCodes[keyColumns[k]] << (8 * k);
+        }
+        int group = groupIndex.get(key, -1);
+        if (group == -1) {
+            group = addGroup(key);
+        }
+        int bin = 0;
+        if (valueColumn != -1) {
+            bin = (int) ((rowNumbers[valueColumn] - min) / binWidth);
+            bin = Math.max(0, Math.min(numBins - 1, bin));
+        }
+        counts[group * numBins + bin]++;
+
+        if (sampleSize > 0) {
+            // Reservoir sampling: keep this row with probability
+            // sampleSize/(numEvents+1), in place of a random one.
+            int slot = numEvents < sampleSize ? (int) numEvents :
+                (int) random.nextLong(numEvents + 1);
+            if (slot < sampleSize) {
+                System.arraycopy(rowNumbers, 0, sampleNumbers[slot], 0,
+                    rowNumbers.length);
+                System.arraycopy(rowCodes, 0, sampleCodes[slot], 0,
+                    rowCodes.length);
+                sampleOrder[slot] = numEvents;
+            }
+        }
+        numEvents++;
+    }
+
+    /**
+     * Writes the summary (and sample) of the events since the last call,
+     * and starts counting afresh. The Sim calls this every May.
+     */
+    public void endYear() {
+        if (numEvents == 0) {
+            return;
+        }
+        Integer[] order = new Integer[numGroups];
+        for (int g = 0; g < numGroups; g++) {
+            order[g] = g;
+        }
+        // Write the groups in order of their columns' values, so that
+        // every year's summary is laid out alike.
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                for (int k = 0; k < keyColumns.length; k++) {
+                    int diff = label(keyColumns[k], keyCode(a, k))
+                        .compareTo(label(keyColumns[k], keyCode(b, k)));
+                    if (diff != 0) {
+                        return diff;
+                    }
+                }
+                return 0;
+            }
+        });
+        for (int i = 0; i < numGroups; i++) {
+            int g = order[i];
+            for (int bin = 0; bin < numBins; bin++) {
+                out.putInt(year);
+                for (int k = 0; k < keyColumns.length; k++) {
+                    putCode(out, keyColumns[k], keyCode(g, k));
+                }
+                if (valueColumn != -1) {
+                    out.putDouble(min + (max - min) * bin / numBins);
+                }
+                out.putInt(counts[g * numBins + bin]).endRow();
+            }
+        }
+        out.flush();
+
+        if (sampleSize > 0) {
+            writeSample();
+        }
+
+        groupIndex.clear();
+        Arrays.fill(counts, 0, numGroups * numBins, 0);
+        numGroups = 0;
+        numEvents = 0;
+    }
+
+    /** Flushes whatever summaries have been written. (Counts are only
+     * written by {@link #endYear()}.) */
+    public void flush() {
+        out.flush();
+        if (sampleOut != null) {
+            sampleOut.flush();
+        }
+    }
+
+    /** Writes the summary of any events not yet written, and closes the
+     * table(s). */
+    public void close() {
+        endYear();
+        out.close();
+        if (sampleOut != null) {
+            sampleOut.close();
+        }
+    }
+
+    private int addGroup(int key) {
+        if (numGroups == groupKeys.length) {
+            groupKeys = Arrays.copyOf(groupKeys, numGroups * 2);
+            counts = Arrays.copyOf(counts, groupKeys.length * numBins);
+        }
+        groupKeys[numGroups] = key;
+        groupIndex.put(key, numGroups);
+        return numGroups++;
+    }
+
+    // Returns the code the group passed has for its k'th key column.
+    private int keyCode(int group, int k) {
+        return (groupKeys[group] >>> (8 * k)) & 0xFF;
+    }
+
+    // Returns the value the code passed stands for in the column passed.
+    private String label(int column, int code) {
+        if (schema.getType(column) == TableSchema.Type.BOOLEAN) {
+            return code == 1 ? "true" : "false";
+        }
+        return symbols.get(column).get(code);
+    }
+
+    private void putCode(TableWriter table, int column, int code) {
+        if (schema.getType(column) == TableSchema.Type.BOOLEAN) {
+            table.putBoolean(code == 1);
+        } else {
+            table.putSymbol(symbols.get(column).get(code));
+        }
+    }
+
+    // Write the sampled rows, in the order they arrived.
+    private void writeSample() {
+        int n = (int) Math.min(numEvents, sampleSize);
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.compare(sampleOrder[a], sampleOrder[b]);
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            int s = order[i];
+            for (int c = 0; c < schema.getNumColumns(); c++) {
+                switch (schema.getType(c)) {
+                case INT:
+                    sampleOut.putInt((int) sampleNumbers[s][c]);
+                    break;
+                case DOUBLE:
+                    sampleOut.putDouble(sampleNumbers[s][c]);
+                    break;
+                default:
+                    putCode(sampleOut, c, sampleCodes[s][c]);
+                    break;
+                }
+            }
+            sampleOut.endRow();
+        }
+        sampleOut.flush();
+    }
+}
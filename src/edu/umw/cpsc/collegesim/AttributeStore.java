@@ -0,0 +1,178 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+
+/**
+ * The population-wide storage for every student's constant attributes,
+ * preferences, and hobbies.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Keep each kind of attribute in one dense <code>double[]</code> matrix,
+ * with one row per student "slot" and one column per attribute, rather than
+ * one boxed <code>ArrayList&lt;Double&gt;</code> per student. Each {@link
+ * Person} is handed a slot when created and delegates all of its attribute
+ * reads and writes here.</li>
+ * <li>Recycle the slots of students who leave the university, so the
+ * matrices stay about as big as the current student body.</li>
+ * </ul>
+ * Hobby values are stored un-normalized here, alongside a matrix of their
+ * normalized values which is kept up to date by each student's {@link
+ * HobbyVector}.
+ */
+public class AttributeStore implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int numConstants;
+    private final int numPreferences;
+    private final int numHobbies;
+
+    private double[] constants;
+    private double[] preferences;
+    private double[] hobbies;
+    private double[] normalizedHobbies;
+
+    // The number of slots the matrices currently have room for.
+    private int capacity;
+
+    // The number of slots ever handed out (free or not).
+    private int numSlots;
+
+    // A stack of slots given back by departed students, ready for reuse.
+    private int[] freeSlots;
+    private int numFreeSlots;
+
+    /**
+     * Constructs an empty store whose rows have the number of constant
+     * attributes, preferences, and hobbies passed.
+     */
+    public AttributeStore(int numConstants, int numPreferences,
+        int numHobbies) {
+        this.numConstants = numConstants;
+        this.numPreferences = numPreferences;
+        this.numHobbies = numHobbies;
+        capacity = INITIAL_CAPACITY;
+        constants = new double[capacity * numConstants];
+        preferences = new double[capacity * numPreferences];
+        hobbies = new double[capacity * numHobbies];
+        normalizedHobbies = new double[capacity * numHobbies];
+        freeSlots = new int[16];
+    }
+
+    /**
+     * Hand out an unused slot, all of whose attributes are 0.0.
+     */
+    public int allocate() {
+        if (numFreeSlots > 0) {
+            return freeSlots[--numFreeSlots];
+        }
+        if (numSlots == capacity) {
+            grow();
+        }
+        return numSlots++;
+    }
+
+    /**
+     * Give back the slot passed, zeroing its attributes so it can be handed
+     * to some future student.
+     */
+    public void release(int slot) {
+        Arrays.fill(constants, slot * numConstants,
+            (slot + 1) * numConstants, 0.0);
+        Arrays.fill(preferences, slot * numPreferences,
+            (slot + 1) * numPreferences, 0.0);
+        Arrays.fill(hobbies, slot * numHobbies, (slot + 1) * numHobbies, 0.0);
+        Arrays.fill(normalizedHobbies, slot * numHobbies,
+            (slot + 1) * numHobbies, 0.0);
+        if (numFreeSlots == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, numFreeSlots * 2);
+        }
+        freeSlots[numFreeSlots++] = slot;
+    }
+
+    private void grow() {
+        capacity *= 2;
+        constants = Arrays.copyOf(constants, capacity * numConstants);
+        preferences = Arrays.copyOf(preferences, capacity * numPreferences);
+        hobbies = Arrays.copyOf(hobbies, capacity * numHobbies);
+        normalizedHobbies = Arrays.copyOf(normalizedHobbies,
+            capacity * numHobbies);
+    }
+
+    public int getNumConstants() {
+        return numConstants;
+    }
+
+    public int getNumPreferences() {
+        return numPreferences;
+    }
+
+    public int getNumHobbies() {
+        return numHobbies;
+    }
+
+    public double getConstant(int slot, int index) {
+        return constants[slot * numConstants + index];
+    }
+
+    public void setConstant(int slot, int index, double val) {
+        constants[slot * numConstants + index] = val;
+    }
+
+    public double getPreference(int slot, int index) {
+        return preferences[slot * numPreferences + index];
+    }
+
+    public void setPreference(int slot, int index, double val) {
+        preferences[slot * numPreferences + index] = val;
+    }
+
+    /** Returns the raw (un-normalized) value of the hobby passed. */
+    public double getHobby(int slot, int index) {
+        return hobbies[slot * numHobbies + index];
+    }
+
+    /** Sets the raw (un-normalized) value of the hobby passed. */
+    public void setHobby(int slot, int index, double val) {
+        hobbies[slot * numHobbies + index] = val;
+    }
+
+    /** Returns a copy of the preferences row of the slot passed. */
+    public double[] copyPreferences(int slot) {
+        return Arrays.copyOfRange(preferences, slot * numPreferences,
+            (slot + 1) * numPreferences);
+    }
+
+    /** Returns a copy of the (un-normalized) hobbies row of the slot
+     * passed. */
+    public double[] copyHobbies(int slot) {
+        return Arrays.copyOfRange(hobbies, slot * numHobbies,
+            (slot + 1) * numHobbies);
+    }
+
+    // The backing matrices themselves, for tight loops elsewhere in the
+    // package. Don't hang on to these: they are replaced whenever the store
+    // grows.
+    double[] constantData() {
+        return constants;
+    }
+
+    double[] preferenceData() {
+        return preferences;
+    }
+
+    double[] hobbyData() {
+        return hobbies;
+    }
+
+    // Only as fresh as the owning HobbyVector has made it; go through
+    // HobbyVector.normalizedData() instead.
+    double[] normalizedHobbyData() {
+        return normalizedHobbies;
+    }
+}
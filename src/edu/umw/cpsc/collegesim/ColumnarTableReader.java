@@ -0,0 +1,187 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * Reads a table written by {@link ColumnarTableWriter}, one chunk at a
+ * time.
+ * <pre>
+ *     ColumnarTableReader r = new ColumnarTableReader("encounters1.cols");
+ *     while (r.nextChunk()) {
+ *         for (int i = 0; i &lt; r.getNumRows(); i++) {
+ *             ... r.getYear(), r.getInt(1, i), r.getSymbol(3, i) ...
+ *         }
+ *     }
+ *     r.close();
+ * </pre>
+ */
+public class ColumnarTableReader {
+
+    private final DataInputStream in;
+    private final TableSchema schema;
+
+    // Each column's values in the current chunk, in whichever array suits
+    // its type (nothing for the first column, the year).
+    private final int[][] ints;
+    private final double[][] doubles;
+    private final byte[][] bytes;
+
+    // Each SYMBOL column's dictionary so far.
+    private final ArrayList<ArrayList<String>> symbols;
+
+    private int year;
+    private int numRows;
+    private byte[] buffer = new byte[8 * 1024];
+
+    /** Opens the file whose name is passed, and reads its header. */
+    public ColumnarTableReader(String filename) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(filename), 1 << 16));
+        byte[] magic = new byte[ColumnarTableWriter.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, ColumnarTableWriter.MAGIC)) {
+            in.close();
+            throw new IOException(filename +
+                " is not a CollegeSim columnar table");
+        }
+        String name = in.readUTF();
+        int numColumns = in.readInt();
+        StringBuilder header = new StringBuilder();
+        TableSchema.Type[] types = new TableSchema.Type[numColumns];
+        for (int c = 0; c < numColumns; c++) {
+            if (c > 0) {
+                header.append(',');
+            }
+            header.append(in.readUTF());
+            types[c] = TableSchema.Type.values()[in.readByte()];
+        }
+        schema = new TableSchema(name, header.toString(), types);
+
+        ints = new int[numColumns][];
+        doubles = new double[numColumns][];
+        bytes = new byte[numColumns][];
+        symbols = new ArrayList<ArrayList<String>>();
+        for (int c = 0; c < numColumns; c++) {
+            symbols.add(types[c] == TableSchema.Type.SYMBOL ?
+                new ArrayList<String>() : null);
+        }
+    }
+
+    /** Returns the layout of the table, as read from the file. */
+    public TableSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Reads the next chunk, returning false (and reading nothing) if there
+     * are no more.
+     */
+    public boolean nextChunk() throws IOException {
+        try {
+            year = in.readInt();
+        } catch (EOFException e) {
+            numRows = 0;
+            return false;
+        }
+        numRows = in.readInt();
+        for (int c = 0; c < schema.getNumColumns(); c++) {
+            if (schema.getType(c) == TableSchema.Type.SYMBOL) {
+                int numNew = in.readInt();
+                for (int i = 0; i < numNew; i++) {
+                    symbols.get(c).add(in.readUTF());
+                }
+            }
+        }
+        for (int c = 1; c < schema.getNumColumns(); c++) {
+            readColumn(c);
+        }
+        return true;
+    }
+
+    /** Returns the year of every row in the current chunk. */
+    public int getYear() {
+        return year;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /** Returns the value of the INT column passed in the row passed of the
+     * current chunk. (Column 0 is the year.) */
+    public int getInt(int column, int row) {
+        return column == 0 ? year : ints[column][row];
+    }
+
+    public double getDouble(int column, int row) {
+        return doubles[column][row];
+    }
+
+    public boolean getBoolean(int column, int row) {
+        return bytes[column][row] != 0;
+    }
+
+    public String getSymbol(int column, int row) {
+        return symbols.get(column).get(bytes[column][row] & 0xFF);
+    }
+
+    /** Writes the row passed of the current chunk to the table writer
+     * passed (which should be for a table laid out the same way). */
+    public void copyRow(int row, TableWriter out) {
+        for (int c = 0; c < schema.getNumColumns(); c++) {
+            switch (schema.getType(c)) {
+            case INT: out.putInt(getInt(c, row)); break;
+            case DOUBLE: out.putDouble(getDouble(c, row)); break;
+            case BOOLEAN: out.putBoolean(getBoolean(c, row)); break;
+            case SYMBOL: out.putSymbol(getSymbol(c, row)); break;
+            }
+        }
+        out.endRow();
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readColumn(int c) throws IOException {
+        switch (schema.getType(c)) {
+        case INT:
+            readFully(numRows * 4);
+            if (ints[c] == null  ||  ints[c].length < numRows) {
+                ints[c] = new int[numRows];
+            }
+            ByteBuffer.wrap(buffer, 0, numRows * 4).asIntBuffer()
+                .get(ints[c], 0, numRows);
+            break;
+        case DOUBLE:
+            readFully(numRows * 8);
+            if (doubles[c] == null  ||  doubles[c].length < numRows) {
+                doubles[c] = new double[numRows];
+            }
+            ByteBuffer.wrap(buffer, 0, numRows * 8).asDoubleBuffer()
+                .get(doubles[c], 0, numRows);
+            break;
+        default:
+            if (bytes[c] == null  ||  bytes[c].length < numRows) {
+                bytes[c] = new byte[numRows];
+            }
+            in.readFully(bytes[c], 0, numRows);
+            break;
+        }
+    }
+
+    private void readFully(int n) throws IOException {
+        if (buffer.length < n) {
+            buffer = new byte[Math.max(n, buffer.length * 2)];
+        }
+        in.readFully(buffer, 0, n);
+    }
+}
@@ -0,0 +1,254 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * Writes a table in a compact binary, columnar format: values are kept in
+ * memory column by column and written out in chunks, each chunk holding
+ * one year's rows (or part of a year's, if it has a great many). A chunk is
+ * cut when the first row of the next year is put, when it reaches {@link
+ * #MAX_CHUNK_ROWS}, or when the table is closed, and not otherwise; so a
+ * year's rows reach the file only once the year is over.
+ * <p></p>
+ * The file format (all numbers big-endian, strings as in {@link
+ * DataOutputStream#writeUTF(String)}):
+ * <pre>
+ *   "CSIMCOL" 0x01                   magic number and version
+ *   table name                       string
+ *   number of columns                int
+ *   for each column:
+ *     name                           string
+ *     type                           byte (ordinal of TableSchema.Type)
+ *   chunks, until the end of the file:
+ *     year                           int (the first column, for every row)
+ *     number of rows, n              int
+ *     for each SYMBOL column:
+ *       number of new symbols        int
+ *       each new symbol              string (appended to that column's
+ *                                    dictionary, whose codes are 0, 1, ...)
+ *     for each column but the first:
+ *       n values: INT as 4 bytes, DOUBLE as 8, BOOLEAN as 1 (0 or 1),
+ *       SYMBOL as a 1-byte dictionary code
+ * </pre>
+ * Use {@link ColumnarTableReader} to read one, or {@link ColumnarToCsv}
+ * to turn one back into the CSV file the run would otherwise have
+ * written.
+ */
+public class ColumnarTableWriter extends TableWriter {
+
+    /** The filename extension for tables in this format. */
+    public static final String EXTENSION = ".cols";
+
+    static final byte[] MAGIC = { 'C', 'S', 'I', 'M', 'C', 'O', 'L', 1 };
+
+    /** The most rows in one chunk; a year with more is split. */
+    public static final int MAX_CHUNK_ROWS = 1 << 20;
+
+    // The most symbols a SYMBOL column can have (so codes fit in a byte).
+    static final int MAX_SYMBOLS = 256;
+
+    // One column's values for the chunk so far (in whichever array suits its
+    // type), and for SYMBOL columns, the dictionary.
+    private static class Column {
+        final TableSchema.Type type;
+        int[] ints;
+        double[] doubles;
+        byte[] bytes;
+        HashMap<String,Integer> codes;
+        ArrayList<String> newSymbols;
+
+        Column(TableSchema.Type type, int capacity) {
+            this.type = type;
+            switch (type) {
+            case INT: ints = new int[capacity]; break;
+            case DOUBLE: doubles = new double[capacity]; break;
+            case BOOLEAN: bytes = new byte[capacity]; break;
+            case SYMBOL:
+                codes = new HashMap<String,Integer>();
+                newSymbols = new ArrayList<String>();
+                bytes = new byte[capacity];
+                break;
+            }
+        }
+
+        void grow() {
+            if (ints != null) ints = Arrays.copyOf(ints, ints.length * 2);
+            if (doubles != null) {
+                doubles = Arrays.copyOf(doubles, doubles.length * 2);
+            }
+            if (bytes != null) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+    }
+
+    private final String filename;
+    private final DataOutputStream out;
+    private final Column[] columns;
+    private int capacity = 1024;
+
+    // The rows in the current chunk, and their year.
+    private int numRows;
+    private int year;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+
+    /**
+     * Creates (or truncates) the file whose name is passed, and writes the
+     * header for the table passed to it.
+     */
+    public ColumnarTableWriter(TableSchema schema, String filename)
+        throws IOException {
+        super(schema);
+        this.filename = filename;
+        out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(filename), 1 << 16));
+        columns = new Column[schema.getNumColumns()];
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = new Column(schema.getType(c), capacity);
+        }
+        out.write(MAGIC);
+        out.writeUTF(schema.getName());
+        out.writeInt(columns.length);
+        for (int c = 0; c < columns.length; c++) {
+            out.writeUTF(schema.getColumnName(c));
+            out.writeByte(schema.getType(c).ordinal());
+        }
+    }
+
+    public TableWriter putInt(int value) {
+        if (column == 0) {
+            // The year. A new one starts a new chunk.
+            if (numRows > 0  &&  value != year) {
+                writeChunk();
+            }
+            year = value;
+            nextColumn(TableSchema.Type.INT);
+            return this;
+        }
+        columns[column].ints[numRows] = value;
+        nextColumn(TableSchema.Type.INT);
+        return this;
+    }
+
+    public TableWriter putDouble(double value) {
+        columns[column].doubles[numRows] = value;
+        nextColumn(TableSchema.Type.DOUBLE);
+        return this;
+    }
+
+    public TableWriter putBoolean(boolean value) {
+        columns[column].bytes[numRows] = (byte) (value ? 1 : 0);
+        nextColumn(TableSchema.Type.BOOLEAN);
+        return this;
+    }
+
+    public TableWriter putSymbol(String value) {
+        Column col = columns[column];
+        Integer code = col.codes.get(value);
+        if (code == null) {
+            if (col.codes.size() == MAX_SYMBOLS) {
+                throw new IllegalStateException("More than " + MAX_SYMBOLS +
+                    " different values in column " +
+                    schema.getColumnName(column) + " of " + schema.getName());
+            }
+            code = col.codes.size();
+            col.codes.put(value, code);
+            col.newSymbols.add(value);
+        }
+        col.bytes[numRows] = (byte) (int) code;
+        nextColumn(TableSchema.Type.SYMBOL);
+        return this;
+    }
+
+    public void endRow() {
+        checkRowComplete();
+        numRows++;
+        if (numRows == MAX_CHUNK_ROWS) {
+            writeChunk();
+        } else if (numRows == capacity) {
+            capacity *= 2;
+            for (int c = 0; c < columns.length; c++) {
+                columns[c].grow();
+            }
+        }
+    }
+
+    /** Flushes the chunks finished so far to the file. (The current year's
+     * rows stay in memory until the year is over; see the class
+     * comment.) */
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void close() {
+        writeChunk();
+        flush();
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.out.println("Could not close " + filename);
+        }
+    }
+
+    private void writeChunk() {
+        if (numRows == 0) {
+            return;
+        }
+        try {
+            out.writeInt(year);
+            out.writeInt(numRows);
+            for (int c = 0; c < columns.length; c++) {
+                Column col = columns[c];
+                if (col.type == TableSchema.Type.SYMBOL) {
+                    out.writeInt(col.newSymbols.size());
+                    for (int i = 0; i < col.newSymbols.size(); i++) {
+                        out.writeUTF(col.newSymbols.get(i));
+                    }
+                    col.newSymbols.clear();
+                }
+            }
+            for (int c = 1; c < columns.length; c++) {
+                writeColumn(columns[c]);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        numRows = 0;
+    }
+
+    private void writeColumn(Column col) throws IOException {
+        switch (col.type) {
+        case INT:
+            ensureBuffer(numRows * 4);
+            buffer.asIntBuffer().put(col.ints, 0, numRows);
+            out.write(buffer.array(), 0, numRows * 4);
+            break;
+        case DOUBLE:
+            ensureBuffer(numRows * 8);
+            buffer.asDoubleBuffer().put(col.doubles, 0, numRows);
+            out.write(buffer.array(), 0, numRows * 8);
+            break;
+        default:
+            out.write(col.bytes, 0, numRows);
+            break;
+        }
+    }
+
+    private void ensureBuffer(int size) {
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+        }
+        buffer.clear();
+    }
+}
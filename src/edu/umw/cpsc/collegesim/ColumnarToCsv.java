@@ -0,0 +1,47 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+
+/**
+ * A command-line tool that turns tables written in the binary format (see
+ * {@link ColumnarTableWriter}) back into the CSV files the run would have
+ * written otherwise, so that scripts that read the CSVs keep working.
+ * <p></p>
+ * Usage: <code>ColumnarToCsv file.cols ...</code> writes
+ * <code>file.csv</code> alongside each file passed.
+ */
+public class ColumnarToCsv {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: ColumnarToCsv file" +
+                ColumnarTableWriter.EXTENSION + " ...");
+            System.exit(1);
+        }
+        for (int i = 0; i < args.length; i++) {
+            String in = args[i];
+            String out = (in.endsWith(ColumnarTableWriter.EXTENSION) ?
+                in.substring(0, in.length() -
+                    ColumnarTableWriter.EXTENSION.length()) : in) + ".csv";
+            convert(in, out);
+        }
+    }
+
+    /** Writes the binary table in the first file passed as CSV to the
+     * second. */
+    public static void convert(String in, String out) throws IOException {
+        ColumnarTableReader reader = new ColumnarTableReader(in);
+        CsvTableWriter writer = new CsvTableWriter(reader.getSchema(),
+            new BufferedWriter(new FileWriter(out), 1 << 16), true);
+        while (reader.nextChunk()) {
+            for (int row = 0; row < reader.getNumRows(); row++) {
+                reader.copyRow(row, writer);
+            }
+        }
+        writer.close();
+        reader.close();
+    }
+}
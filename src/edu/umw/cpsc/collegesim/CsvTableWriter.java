@@ -0,0 +1,169 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.IOException;
+import java.io.Writer;
+
+
+/**
+ * Writes a table as comma-separated text: a header line of column names,
+ * then one line per row, with each value as Java prints it.
+ * <p></p>
+ * Values are encoded straight into a reusable char buffer (ints digit by
+ * digit, symbols and booleans by copying their chars), so writing a row
+ * creates no Strings. The buffer is handed to the underlying Writer in a
+ * single write() once it holds {@link #BATCH_CHARS} chars' worth of whole
+ * rows, and on {@link #flush()}; so a buffering writer (such as an {@link
+ * EventLog}) never splits a row between its buffers.
+ */
+public class CsvTableWriter extends TableWriter {
+
+    /** How many chars of finished rows to collect before writing them. */
+    public static final int BATCH_CHARS = 4 * 1024;
+
+    // The longest an int can print as.
+    private static final int MAX_INT_CHARS = 11;
+
+    private final Writer out;
+
+    // Finished rows, then the row so far, and where each starts and ends.
+    private char[] chars = new char[2 * BATCH_CHARS];
+    private int rowStart;
+    private int end;
+
+    // For printing doubles exactly as Double.toString() would.
+    private final StringBuilder scratch = new StringBuilder(32);
+
+    /**
+     * Constructs a writer for the table passed, which writes to the Writer
+     * passed, starting with the header line if so requested.
+     */
+    public CsvTableWriter(TableSchema schema, Writer out,
+        boolean writeHeader) {
+        super(schema);
+        this.out = out;
+        if (writeHeader) {
+            appendChars(schema.getHeader());
+            finishRow();
+        }
+    }
+
+    public TableWriter putInt(int value) {
+        separate(TableSchema.Type.INT);
+        ensureRoom(MAX_INT_CHARS);
+        if (value < 0) {
+            if (value == Integer.MIN_VALUE) {
+                appendChars(Integer.toString(value));
+                return this;
+            }
+            chars[end++] = '-';
+            value = -value;
+        }
+        // Write the digits backwards, then reverse them.
+        int first = end;
+        do {
+            chars[end++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = first, j = end - 1; i < j; i++, j--) {
+            char c = chars[i];
+            chars[i] = chars[j];
+            chars[j] = c;
+        }
+        return this;
+    }
+
+    public TableWriter putDouble(double value) {
+        separate(TableSchema.Type.DOUBLE);
+        scratch.setLength(0);
+        scratch.append(value);
+        int n = scratch.length();
+        ensureRoom(n);
+        scratch.getChars(0, n, chars, end);
+        end += n;
+        return this;
+    }
+
+    public TableWriter putBoolean(boolean value) {
+        separate(TableSchema.Type.BOOLEAN);
+        appendChars(value ? "true" : "false");
+        return this;
+    }
+
+    public TableWriter putSymbol(String value) {
+        separate(TableSchema.Type.SYMBOL);
+        appendChars(value);
+        return this;
+    }
+
+    public void endRow() {
+        checkRowComplete();
+        finishRow();
+    }
+
+    /** Writes the rows so far to the underlying Writer, and flushes it. */
+    public void flush() {
+        writeRows();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void close() {
+        writeRows();
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.out.println("Could not close file");
+        }
+    }
+
+    private void separate(TableSchema.Type type) {
+        if (column > 0) {
+            ensureRoom(1);
+            chars[end++] = ',';
+        }
+        nextColumn(type);
+    }
+
+    private void appendChars(String s) {
+        int n = s.length();
+        ensureRoom(n);
+        s.getChars(0, n, chars, end);
+        end += n;
+    }
+
+    private void ensureRoom(int n) {
+        if (end + n > chars.length) {
+            char[] bigger = new char[Math.max(end + n, chars.length * 2)];
+            System.arraycopy(chars, 0, bigger, 0, end);
+            chars = bigger;
+        }
+    }
+
+    private void finishRow() {
+        ensureRoom(1);
+        chars[end++] = '\n';
+        rowStart = end;
+        if (rowStart >= BATCH_CHARS) {
+            writeRows();
+        }
+    }
+
+    // Hand the finished rows to the Writer.
+    private void writeRows() {
+        if (rowStart == 0) {
+            return;
+        }
+        try {
+            out.write(chars, 0, rowStart);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        // Keep any row that's been started.
+        System.arraycopy(chars, rowStart, chars, 0, end - rowStart);
+        end -= rowStart;
+        rowStart = 0;
+    }
+}
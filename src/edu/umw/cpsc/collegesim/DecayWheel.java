@@ -0,0 +1,163 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+
+/**
+ * A timing wheel that tells each student which of their friendships might
+ * have decayed, so that {@link Person}s needn't look at every friend every
+ * month.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Every time two students become friends or tickle each other, {@link
+ * #arm(int,int,double)} files the friendship in the bucket for the month in
+ * which it will expire if nothing else happens: that is, the first month
+ * whose Person step (at time <i>month</i>.5) comes at least {@link
+ * SimParameters#DECAY_THRESHOLD} after the tickle. The wheel has one bucket per
+ * month of the threshold (plus slack), reused round-robin.</li>
+ * <li>When a student steps, {@link #advanceTo(double)} empties every bucket
+ * that has come due onto the due lists of the two students involved, and
+ * {@link #takeDue(int)} hands the student their own due list. Whichever of
+ * the two steps first gets to decay the friendship, just as before.</li>
+ * </ul>
+ * Entries aren't removed when a friendship is re-tickled or broken.
+ * Instead, each entry remembers the expiry time it was armed with, and the
+ * friendship decays only if it still exists and that is still its expiry
+ * time; otherwise the entry is just stale and is dropped. So the cost of
+ * decay is proportional to the number of tickles and expirations, not to
+ * the number of friendships.
+ */
+public class DecayWheel implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * A growable list of (slot, slot, expiry time) triples, all primitive.
+     */
+    static class EntryList implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        int[] slotA = new int[4];
+        int[] slotB = new int[4];
+        double[] expiry = new double[4];
+        int size;
+
+        void add(int a, int b, double when) {
+            if (size == slotA.length) {
+                slotA = Arrays.copyOf(slotA, size * 2);
+                slotB = Arrays.copyOf(slotB, size * 2);
+                expiry = Arrays.copyOf(expiry, size * 2);
+            }
+            slotA[size] = a;
+            slotB[size] = b;
+            expiry[size] = when;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    private final double threshold;
+    private final EntryList[] buckets;
+
+    // Indexed by slot: the friendships to check the next time that student
+    // steps.
+    private EntryList[] due = new EntryList[1024];
+
+    // The last month whose bucket has been emptied onto the due lists.
+    private long lastDrainedMonth;
+
+    /**
+     * Constructs an empty wheel for friendships that decay after the number
+     * of months passed without a tickle.
+     */
+    public DecayWheel(int decayThreshold) {
+        threshold = decayThreshold;
+        buckets = new EntryList[decayThreshold + 2];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new EntryList();
+        }
+        // Nothing can be due before the simulation starts.
+        lastDrainedMonth = (long) Math.floor(sim.engine.Schedule.
+            BEFORE_SIMULATION) - 1;
+    }
+
+    /**
+     * Files the friendship between the students in the two slots passed,
+     * who last tickled each other at the time passed, to be checked when it
+     * would expire.
+     */
+    public void arm(int slotA, int slotB, double lastTickleTime) {
+        double expiry = lastTickleTime + threshold;
+        // Persons step at month + .5, so this is the first month whose step
+        // is at or after the expiry time.
+        long month = (long) Math.ceil(expiry - 0.5);
+        if (month <= lastDrainedMonth) {
+            // Already due (only possible with tiny thresholds).
+            dueListFor(slotA).add(slotA, slotB, expiry);
+            dueListFor(slotB).add(slotA, slotB, expiry);
+        } else {
+            buckets[bucketFor(month)].add(slotA, slotB, expiry);
+        }
+    }
+
+    /**
+     * Empties onto the students' due lists every bucket whose month is no
+     * later than the time passed.
+     */
+    public void advanceTo(double now) {
+        long month = (long) Math.floor(now);
+        // Every armed entry lies within one wheel's turn of the last drain,
+        // so there's no point going round more than once.
+        long last = Math.min(month, lastDrainedMonth + buckets.length);
+        for (long m = lastDrainedMonth + 1; m <= last; m++) {
+            EntryList bucket = buckets[bucketFor(m)];
+            for (int i = 0; i < bucket.size; i++) {
+                dueListFor(bucket.slotA[i]).add(bucket.slotA[i],
+                    bucket.slotB[i], bucket.expiry[i]);
+                dueListFor(bucket.slotB[i]).add(bucket.slotA[i],
+                    bucket.slotB[i], bucket.expiry[i]);
+            }
+            bucket.clear();
+        }
+        if (month > lastDrainedMonth) {
+            lastDrainedMonth = month;
+        }
+    }
+
+    /**
+     * Returns the due list of the student in the slot passed. The caller
+     * should process it and then {@link EntryList#clear()} it.
+     */
+    EntryList takeDue(int slot) {
+        return dueListFor(slot);
+    }
+
+    /**
+     * Forgets anything due for the student in the slot passed (because they
+     * are leaving, and their slot may be reused).
+     */
+    public void forget(int slot) {
+        if (slot < due.length && due[slot] != null) {
+            due[slot].clear();
+        }
+    }
+
+    private int bucketFor(long month) {
+        return (int) Math.floorMod(month, (long) buckets.length);
+    }
+
+    private EntryList dueListFor(int slot) {
+        if (slot >= due.length) {
+            due = Arrays.copyOf(due, Math.max(due.length * 2, slot + 1));
+        }
+        if (due[slot] == null) {
+            due[slot] = new EntryList();
+        }
+        return due[slot];
+    }
+}
@@ -0,0 +1,274 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+ * A Writer for a file of one line per event (such as the encounters and
+ * similarity files) that does its writing on a background thread, in big
+ * batches, so that the simulation doesn't wait on a write for every event.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Collect what's written into a batch (a reusable block of
+ * characters). When a batch fills, hand it to the writer thread through a
+ * bounded ring of batches, and carry on with an empty one. What's passed
+ * to any one write() is never split between batches, so lines written
+ * whole stay whole in each batch.</li>
+ * <li>If the disk falls behind and every batch is waiting to be written,
+ * make the simulation wait for one to come free (backpressure), rather
+ * than buffering without limit.</li>
+ * <li>Also hand over partial batches and flush the file according to the
+ * {@link FlushPolicy}, so a file being watched during a long run is never
+ * too far behind.</li>
+ * <li>On {@link #close()} (which the Sim calls when it seals the schedule
+ * at the end of the run), write everything, force it to disk, and close
+ * the file.</li>
+ * </ul>
+ * Everything must be written from one thread at a time (in practice, the
+ * simulation's), and appears in the file in the order written. (Writing is
+ * synchronized anyway, so that if the JVM exits mid-run, the shutdown hook
+ * closes the log between writes, never during one.)
+ */
+public class EventLog extends Writer {
+
+    /**
+     * When to write out a partial batch and flush the file, in addition to
+     * whenever a batch fills up and at the end of the run.
+     */
+    public enum FlushPolicy {
+        /** Only when a batch fills up (and at the end of the run). */
+        SIZE,
+        /** At the end of every month. */
+        MONTH,
+        /** At the end of every academic year. */
+        YEAR
+    }
+
+    /** The number of characters in each batch. */
+    public static final int BATCH_CHARS = 1 << 16;
+
+    /** The number of batches in the ring. */
+    public static final int NUM_BATCHES = 16;
+
+    // A block of lines on its way to the file.
+    private static class Batch {
+        char[] chars = new char[BATCH_CHARS];
+        int length;
+        // Flush the file after writing this one.
+        boolean flush;
+        // This is the last one; close the file after writing it.
+        boolean last;
+    }
+
+    private final String filename;
+    private final FileOutputStream file;
+    private final Writer out;
+    private final Thread writerThread;
+
+    // Batches waiting to be written, and emptied batches waiting to be
+    // reused. Between them (and the one being filled) they hold every
+    // batch there is.
+    private final BlockingQueue<Batch> full =
+        new ArrayBlockingQueue<Batch>(NUM_BATCHES);
+    private final BlockingQueue<Batch> empty =
+        new ArrayBlockingQueue<Batch>(NUM_BATCHES);
+    private Batch current;
+
+    // True if anything's been written since the last flush.
+    private boolean dirty;
+    private boolean closed;
+
+    // True if the shutdown hook closed the log, after which whatever the
+    // simulation (yet to notice the JVM exiting) still writes is dropped.
+    private boolean exiting;
+
+    // Set (by the writer thread) if writing failed, after which everything
+    // else is thrown away.
+    private volatile IOException failure;
+
+    // Closes the log if the JVM exits before the simulation does, so that
+    // what's been simulated so far isn't lost.
+    private final Thread shutdownHook;
+
+    /**
+     * Creates (or truncates) the file whose name is passed.
+     */
+    public EventLog(String filename) throws IOException {
+        this.filename = filename;
+        file = new FileOutputStream(filename);
+        out = new OutputStreamWriter(file, StandardCharsets.UTF_8);
+        for (int i = 1; i < NUM_BATCHES; i++) {
+            empty.add(new Batch());
+        }
+        current = new Batch();
+
+        writerThread = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "EventLog-" + filename);
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        shutdownHook = new Thread(new Runnable() {
+            public void run() {
+                synchronized (EventLog.this) {
+                    exiting = true;
+                    close();
+                }
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public synchronized void write(char[] chars, int off, int len) {
+        if (exiting) {
+            return;
+        }
+        System.arraycopy(chars, off, room(len), current.length, len);
+        current.length += len;
+    }
+
+    public synchronized void write(String str, int off, int len) {
+        if (exiting) {
+            return;
+        }
+        str.getChars(off, off + len, room(len), current.length);
+        current.length += len;
+    }
+
+    // Returns the current batch's characters, having made sure they have
+    // room for the number passed more.
+    private char[] room(int n) {
+        if (closed) {
+            throw new IllegalStateException(filename + " is closed");
+        }
+        if (current.length + n > current.chars.length) {
+            handOff(false);
+            if (n > current.chars.length) {
+                // A write longer than a whole batch gets a batch to itself.
+                current.chars = new char[n];
+            }
+        }
+        dirty = true;
+        return current.chars;
+    }
+
+    /**
+     * Hands everything written so far to the writer thread, to be flushed
+     * to the file once written. (Returns without waiting for that.)
+     */
+    public synchronized void flush() {
+        if (dirty  &&  !closed) {
+            handOff(true);
+        }
+    }
+
+    /**
+     * Writes everything, forces it to disk, closes the file, and waits for
+     * all that to be done. Does nothing if already closed.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        current.flush = true;
+        current.last = true;
+        putFull(current);
+        current = null;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // We're being called from the hook itself, as the JVM exits.
+        }
+        if (failure != null) {
+            System.out.println("Could not write " + filename);
+            failure.printStackTrace();
+        }
+    }
+
+    // Give the current batch to the writer thread, and get an empty one to
+    // carry on with, waiting for one if they're all still being written.
+    private void handOff(boolean flush) {
+        current.flush = flush;
+        putFull(current);
+        try {
+            current = empty.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (flush) {
+            dirty = false;
+        }
+    }
+
+    private void putFull(Batch b) {
+        try {
+            full.put(b);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    // The writer thread: write each full batch in turn, and recycle it.
+    private void drain() {
+        while (true) {
+            Batch b;
+            try {
+                b = full.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (failure == null) {
+                SimEvents.EventLogWrite event = new SimEvents.EventLogWrite();
+                event.begin();
+                try {
+                    out.write(b.chars, 0, b.length);
+                    if (b.flush) {
+                        out.flush();
+                    }
+                    if (b.last) {
+                        file.getFD().sync();
+                        out.close();
+                    }
+                    if (event.shouldCommit()) {
+                        event.file = filename;
+                        event.chars = b.length;
+                        event.flush = b.flush;
+                        event.commit();
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (b.last) {
+                if (failure != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        // Already reported the first failure.
+                    }
+                }
+                return;
+            }
+            b.length = 0;
+            b.flush = false;
+            empty.add(b);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package edu.umw.cpsc.collegesim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * Writes the history of the friendship graph, one snapshot a year, to a
+ * table laid out like {@link TableSchema#FRIENDSHIP_CHANGES}, in which each
+ * undirected friendship is a single row (with the lower id first). Every
+ * so many years the snapshot is a <i>keyframe</i>, listing every
+ * friendship; the rest list only the friendships {@link #ADDED} and
+ * {@link #REMOVED} since the year before. {@link FriendshipHistory} reads
+ * the table back and rebuilds the graph for any year.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Output the friendship graph in space proportional to how much it
+ * changes, rather than to its size times the number of years.</li>
+ * </ul>
+ */
+public class FriendshipDeltaWriter {
+
+    /** The change recorded for each friendship in a keyframe. */
+    public static final String KEYFRAME = "keyframe";
+
+    /** The change recorded for a friendship made since the year before. */
+    public static final String ADDED = "added";
+
+    /** The change recorded for a friendship ended since the year before
+     * (including by one of the two leaving). */
+    public static final String REMOVED = "removed";
+
+    private final TableWriter table;
+    private final int keyframeYears;
+
+    // Last year's and this year's friendships, each packed into a long
+    // (see pack()), sorted.
+    private long[] previous = new long[1024];
+    private int numPrevious;
+    private long[] current = new long[1024];
+    private int numCurrent;
+
+    // Whether a snapshot has been written yet.
+    private boolean started;
+
+    /**
+     * Constructs a writer that writes to the table passed, with a keyframe
+     * every so many years (starting with year 0, and the first snapshot
+     * written, whatever its year).
+     */
+    public FriendshipDeltaWriter(TableWriter table, int keyframeYears) {
+        this.table = table;
+        this.keyframeYears = keyframeYears;
+    }
+
+    /**
+     * Writes the snapshot for the year passed of the friendships between
+     * the people passed, as recorded in the graph passed.
+     */
+    public void writeSnapshot(int year, ArrayList<Person> people,
+        FriendshipGraph graph) {
+        collect(people, graph);
+
+        // (A keyframe with no friendships would leave no rows to mark it;
+        // recording that everyone fell out serves just as well.)
+        if ((!started  ||  year % keyframeYears == 0)  &&  numCurrent > 0) {
+            for (int i = 0; i < numCurrent; i++) {
+                put(year, current[i], KEYFRAME);
+            }
+        } else {
+            // Merge last year's friendships with this year's.
+            int i = 0, j = 0;
+            while (i < numPrevious  ||  j < numCurrent) {
+                if (j == numCurrent  ||
+                    (i < numPrevious  &&  previous[i] < current[j])) {
+                    put(year, previous[i++], REMOVED);
+                } else if (i == numPrevious  ||  current[j] < previous[i]) {
+                    put(year, current[j++], ADDED);
+                } else {
+                    i++;
+                    j++;
+                }
+            }
+        }
+
+        started = true;
+        long[] t = previous;
+        previous = current;
+        numPrevious = numCurrent;
+        current = t;
+    }
+
+    /** Packs the friendship between the two (non-negative) ids passed
+     * into a long, the lower id in the high half. */
+    public static long pack(int id1, int id2) {
+        return id1 < id2 ? ((long) id1 << 32) | id2 :
+            ((long) id2 << 32) | id1;
+    }
+
+    /** Returns the lower id of the friendship packed by {@link
+     * #pack(int, int)}. */
+    public static int lowerId(long friendship) {
+        return (int) (friendship >>> 32);
+    }
+
+    /** Returns the higher id of the friendship packed by {@link
+     * #pack(int, int)}. */
+    public static int higherId(long friendship) {
+        return (int) friendship;
+    }
+
+    // Fill current with every friendship, once each, sorted.
+    private void collect(ArrayList<Person> people, FriendshipGraph graph) {
+        numCurrent = 0;
+        for (int x = 0; x < people.size(); x++) {
+            Person p = people.get(x);
+            int n = graph.getFriendTableLength(p);
+            for (int i = 0; i < n; i++) {
+                Person friend = graph.getFriendAt(p, i);
+                if (friend != null  &&  friend.getID() > p.getID()) {
+                    if (numCurrent == current.length) {
+                        current = Arrays.copyOf(current, numCurrent * 2);
+                    }
+                    current[numCurrent++] = pack(p.getID(), friend.getID());
+                }
+            }
+        }
+        Arrays.sort(current, 0, numCurrent);
+    }
+
+    private void put(int year, long friendship, String change) {
+        table.putInt(year).putInt(lowerId(friendship))
+            .putInt(higherId(friendship)).putSymbol(change).endRow();
+    }
+}
@@ -0,0 +1,224 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import sim.util.Bag;
+import sim.field.network.Network;
+
+
+/**
+ * The undirected graph of friendships between students, keyed by each
+ * student's dense attribute slot (see {@link AttributeStore}).
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Keep, for each student, an {@link IntDoubleHashMap} from their
+ * friends' slots to the time the two last tickled each other (or met), so
+ * that asking whether two students are friends, making or breaking a
+ * friendship, and counting someone's friends all take (expected) constant
+ * time, without walking and casting MASON <code>Edge</code> Bags.</li>
+ * <li>Keep a Bag of every student in the graph, from which random
+ * encounters are drawn.</li>
+ * <li>For the GUI, or anything else that wants one, build an equivalent
+ * MASON {@link Network} on demand (see {@link #toNetwork()}).</li>
+ * </ul>
+ */
+public class FriendshipGraph implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Indexed by slot: the person in that slot (or null), and their friends
+    // (with last tickle times).
+    private Person[] people = new Person[INITIAL_CAPACITY];
+    private IntDoubleHashMap[] friends =
+        new IntDoubleHashMap[INITIAL_CAPACITY];
+
+    // Indexed by slot: where that person sits in allNodes.
+    private int[] nodeIndex = new int[INITIAL_CAPACITY];
+
+    // Every person in the graph. Removing someone moves the last person
+    // into their spot, the same way MASON's Network does.
+    private Bag allNodes = new Bag();
+
+    private int numEdges;
+
+    /** Adds the person passed to the graph, with no friends. */
+    public void addNode(Person p) {
+        int slot = p.getSlot();
+        if (slot >= people.length) {
+            int newCapacity = Math.max(people.length * 2, slot + 1);
+            people = Arrays.copyOf(people, newCapacity);
+            friends = Arrays.copyOf(friends, newCapacity);
+            nodeIndex = Arrays.copyOf(nodeIndex, newCapacity);
+        }
+        people[slot] = p;
+        if (friends[slot] == null) {
+            friends[slot] = new IntDoubleHashMap();
+        }
+        nodeIndex[slot] = allNodes.size();
+        allNodes.add(p);
+    }
+
+    /** Removes the person passed from the graph, along with all of their
+     * friendships. */
+    public void removeNode(Person p) {
+        if (!containsNode(p)) {
+            return;
+        }
+        int slot = p.getSlot();
+        IntDoubleHashMap mine = friends[slot];
+        for (int i = 0; i < mine.tableLength(); i++) {
+            int friendSlot = mine.keyAt(i);
+            if (friendSlot != IntDoubleHashMap.EMPTY) {
+                friends[friendSlot].remove(slot);
+                numEdges--;
+            }
+        }
+        mine.clear();
+        int index = nodeIndex[slot];
+        allNodes.remove(index);
+        if (index < allNodes.size()) {
+            nodeIndex[((Person) allNodes.get(index)).getSlot()] = index;
+        }
+        people[slot] = null;
+    }
+
+    /** Returns true if the person passed is (still) in the graph. */
+    public boolean containsNode(Person p) {
+        int slot = p.getSlot();
+        return slot < people.length && people[slot] == p;
+    }
+
+    /**
+     * Returns a Bag of everyone in the graph. This is the graph's own Bag,
+     * so callers must not change it.
+     */
+    public Bag getAllNodes() {
+        return allNodes;
+    }
+
+    public int getNumNodes() {
+        return allNodes.size();
+    }
+
+    public int getNumEdges() {
+        return numEdges;
+    }
+
+    public boolean friendsWith(Person a, Person b) {
+        return friends[a.getSlot()].containsKey(b.getSlot());
+    }
+
+    /** Returns true if the two people in the slots passed are friends. */
+    boolean friendsWith(int slotA, int slotB) {
+        return friends[slotA].containsKey(slotB);
+    }
+
+    /** Makes the two people passed friends, as of the time passed; returns
+     * false if they already were (in which case this is the same as {@link
+     * #setLastTickleTime(Person,Person,double)}). */
+    public boolean addFriend(Person a, Person b, double time) {
+        friends[b.getSlot()].put(a.getSlot(), time);
+        if (!friends[a.getSlot()].put(b.getSlot(), time)) {
+            return false;
+        }
+        numEdges++;
+        return true;
+    }
+
+    /** Records that the two (already friends) people passed last tickled
+     * each other at the time passed. */
+    public void setLastTickleTime(Person a, Person b, double time) {
+        friends[a.getSlot()].put(b.getSlot(), time);
+        friends[b.getSlot()].put(a.getSlot(), time);
+    }
+
+    /** Returns the time the two people in the slots passed last tickled
+     * each other, or NaN if they aren't friends. */
+    double getLastTickleTime(int slotA, int slotB) {
+        return friends[slotA].get(slotB, Double.NaN);
+    }
+
+    /** Makes the two people passed no longer friends; returns false if they
+     * weren't. */
+    public boolean removeFriend(Person a, Person b) {
+        return removeFriend(a.getSlot(), b.getSlot());
+    }
+
+    boolean removeFriend(int slotA, int slotB) {
+        if (!friends[slotA].remove(slotB)) {
+            return false;
+        }
+        friends[slotB].remove(slotA);
+        numEdges--;
+        return true;
+    }
+
+    /** Returns the person in the slot passed (or null). */
+    Person getPerson(int slot) {
+        return people[slot];
+    }
+
+    /** Returns the number of friends the person passed has. */
+    public int getDegree(Person p) {
+        return friends[p.getSlot()].size();
+    }
+
+    /** Returns a new Bag of the friends of the person passed. */
+    public Bag getFriends(Person p) {
+        IntDoubleHashMap mine = friends[p.getSlot()];
+        Bag b = new Bag(mine.size());
+        for (int i = 0; i < mine.tableLength(); i++) {
+            int friendSlot = mine.keyAt(i);
+            if (friendSlot != IntDoubleHashMap.EMPTY) {
+                b.add(people[friendSlot]);
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Returns the size of the table of the friends of the person passed. To
+     * walk someone's friends without allocating a Bag, loop <code>i</code>
+     * from 0 to this, skipping the entries for which {@link
+     * #getFriendAt(Person, int)} returns null. (The order is the same as
+     * {@link #getFriends(Person)}'s.)
+     */
+    public int getFriendTableLength(Person p) {
+        return friends[p.getSlot()].tableLength();
+    }
+
+    /** Returns the friend at the entry passed of the table of the friends
+     * of the person passed, or null if the entry is unused. */
+    public Person getFriendAt(Person p, int i) {
+        int friendSlot = friends[p.getSlot()].keyAt(i);
+        return friendSlot == IntDoubleHashMap.EMPTY ? null : people[friendSlot];
+    }
+
+    /**
+     * Builds a MASON Network holding the same people and friendships as this
+     * graph (one undirected edge, with info 1, per friendship). The Network
+     * is a snapshot; it does not track later changes.
+     */
+    public Network toNetwork() {
+        Network net = new Network(false);
+        for (int i = 0; i < allNodes.size(); i++) {
+            net.addNode(allNodes.get(i));
+        }
+        for (int i = 0; i < allNodes.size(); i++) {
+            Person p = (Person) allNodes.get(i);
+            IntDoubleHashMap mine = friends[p.getSlot()];
+            for (int j = 0; j < mine.tableLength(); j++) {
+                int friendSlot = mine.keyAt(j);
+                if (friendSlot != IntDoubleHashMap.EMPTY &&
+                    friendSlot > p.getSlot()) {
+                    net.addEdge(p, people[friendSlot], 1);
+                }
+            }
+        }
+        return net;
+    }
+}
@@ -0,0 +1,144 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+
+/**
+ * The history of the friendship graph, as written by {@link
+ * FriendshipDeltaWriter} to a friendshipChanges table (in either format),
+ * from which the friendships of any year can be rebuilt.
+ * <p></p>
+ * Usage: <code>FriendshipHistory friendshipChanges1.csv year</code> prints
+ * that year's friendships, in the layout of {@link
+ * TableSchema#FRIENDSHIPS} (though with each friendship once, lower id
+ * first).
+ */
+public class FriendshipHistory {
+
+    // Every row of the table, in order.
+    private int numRows;
+    private int[] years = new int[1024];
+    private long[] friendships = new long[1024];
+    private byte[] changes = new byte[1024];
+
+    private static final byte KEYFRAME = 0;
+    private static final byte ADDED = 1;
+    private static final byte REMOVED = 2;
+
+    /** Reads the whole of the table in the file whose name is passed (a
+     * .csv or .cols file). */
+    public FriendshipHistory(String filename) throws IOException {
+        if (filename.endsWith(ColumnarTableWriter.EXTENSION)) {
+            ColumnarTableReader in = new ColumnarTableReader(filename);
+            while (in.nextChunk()) {
+                for (int i = 0; i < in.getNumRows(); i++) {
+                    add(in.getYear(), in.getInt(1, i), in.getInt(2, i),
+                        in.getSymbol(3, i));
+                }
+            }
+            in.close();
+        } else {
+            BufferedReader in = new BufferedReader(new FileReader(filename));
+            String line = in.readLine();
+            if (line == null  ||
+                !line.equals(TableSchema.FRIENDSHIP_CHANGES.getHeader())) {
+                in.close();
+                throw new IOException(filename +
+                    " is not a friendship changes table");
+            }
+            while ((line = in.readLine()) != null) {
+                String[] values = line.split(",");
+                add(Integer.parseInt(values[0]), Integer.parseInt(values[1]),
+                    Integer.parseInt(values[2]), values[3]);
+            }
+            in.close();
+        }
+    }
+
+    /** Returns the first year with a snapshot, or -1 if there are none. */
+    public int getFirstYear() {
+        return numRows == 0 ? -1 : years[0];
+    }
+
+    /** Returns the last year with any changes, or -1 if there are none. */
+    public int getLastYear() {
+        return numRows == 0 ? -1 : years[numRows - 1];
+    }
+
+    /**
+     * Returns the friendships as of the year passed (that is, as dumped in
+     * that year's May), each packed as by {@link
+     * FriendshipDeltaWriter#pack(int, int)}, sorted.
+     */
+    public long[] getFriendships(int year) {
+        if (numRows == 0  ||  year < years[0]) {
+            throw new IllegalArgumentException("No snapshot for year " +
+                year);
+        }
+        // Start from the last keyframe at or before the year, and apply
+        // the changes since.
+        int start = 0;
+        for (int i = 0; i < numRows  &&  years[i] <= year; i++) {
+            if (changes[i] == KEYFRAME  &&
+                (i == 0  ||  changes[i-1] != KEYFRAME  ||
+                    years[i-1] != years[i])) {
+                start = i;
+            }
+        }
+        HashSet<Long> graph = new HashSet<Long>();
+        for (int i = start; i < numRows  &&  years[i] <= year; i++) {
+            if (changes[i] == REMOVED) {
+                graph.remove(friendships[i]);
+            } else {
+                graph.add(friendships[i]);
+            }
+        }
+        long[] result = new long[graph.size()];
+        int n = 0;
+        for (Long f : graph) {
+            result[n++] = f;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println(
+                "Usage: FriendshipHistory friendshipChangesFile year");
+            System.exit(1);
+        }
+        int year = Integer.parseInt(args[1]);
+        long[] graph = new FriendshipHistory(args[0]).getFriendships(year);
+        System.out.println(TableSchema.FRIENDSHIPS.getHeader());
+        for (int i = 0; i < graph.length; i++) {
+            System.out.println(year + "," +
+                FriendshipDeltaWriter.lowerId(graph[i]) + "," +
+                FriendshipDeltaWriter.higherId(graph[i]));
+        }
+    }
+
+    private void add(int year, int id1, int id2, String change) {
+        if (numRows == years.length) {
+            years = Arrays.copyOf(years, numRows * 2);
+            friendships = Arrays.copyOf(friendships, numRows * 2);
+            changes = Arrays.copyOf(changes, numRows * 2);
+        }
+        years[numRows] = year;
+        friendships[numRows] = FriendshipDeltaWriter.pack(id1, id2);
+        if (change.equals(FriendshipDeltaWriter.KEYFRAME)) {
+            changes[numRows] = KEYFRAME;
+        } else if (change.equals(FriendshipDeltaWriter.ADDED)) {
+            changes[numRows] = ADDED;
+        } else if (change.equals(FriendshipDeltaWriter.REMOVED)) {
+            changes[numRows] = REMOVED;
+        } else {
+            throw new IllegalArgumentException("Unknown change " + change);
+        }
+        numRows++;
+    }
+}
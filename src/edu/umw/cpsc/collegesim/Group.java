@@ -1,6 +1,8 @@
 package edu.umw.cpsc.collegesim;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import ec.util.*;
@@ -16,20 +18,29 @@ import sim.util.Bag;
  * <ul>
  * <li>Upon creation, populates with random students.</li>
  * <li>Every month, influences each of its members, using {@link
- * #LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE}, among other things. Each
- * student can have any of his/her attributes drift some amount towards the
- * mean of that attribute for other students in that group, or not.</li>
+ * SimParameters#GROUP_LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE}, among
+ * other things. Each student can have any of his/her attributes drift some
+ * amount towards the mean of that attribute for other students in that
+ * group, or not.</li>
  * <li>Every month, randomly selects students to <b>recruit</b> to the group.
  * Students who are already members are simply ignored. Those who are not will
  * join with a probability related to their <b>affinity</b> to the group.</li>
  * <li>Every month, allow students to leave the group. This depends on {@link
- * #LIKELIHOOD_OF_RANDOMLY_LEAVING_GROUP}, but will also not allow the group
- * size to drift below the {@link #MINIMUM_GROUP_SIZE}. <i>(but Morgan doesn't
- * like this)</i></li>
+ * SimParameters#LIKELIHOOD_OF_RANDOMLY_LEAVING_GROUP}, but will also not
+ * allow the group size to drift below the {@link #MINIMUM_GROUP_SIZE}.
+ * <i>(but Morgan doesn't like this)</i></li>
+ * <li>Own the membership relation between students and groups. Every join
+ * and leave goes through {@link #addStudent(Person)} and {@link
+ * #removeStudent(Person)}, which keep this group's member list and the
+ * student's group list in step, so that each side can answer "is X a
+ * member?" in constant time. Members are swap-removed, so their order is
+ * not meaningful.</li>
  * </ul>
  */
 public class Group implements Steppable{
 
+    private static final long serialVersionUID = 1L;
+
     /**
      * The lower bound on the size of a group at any point during its
      * lifespan. */
@@ -43,51 +54,18 @@ public class Group implements Steppable{
     /**
      * The upper bound on the size of a newly created group. */
     public static final int MAXIMUM_START_GROUP_SIZE = 8; 
-  
-    /**
-     * A threshold that determines the likelihood of whether a student will 
-     * join a group. Higher numbers means less acceptance into groups. The
-     * number itself is difficult to interpret, since a complex conflagration
-     * of factors will be put together to compare to it. */
-    public static double RECRUITMENT_REQUIRED;
-  
-    /**
-     * Each time step, the probability that each student will leave each of
-     * their groups, provided that leaving said group would not push the
-     * group size below the minimum. */
-    public static double LIKELIHOOD_OF_RANDOMLY_LEAVING_GROUP;
-  
-    /** Each time step, the probability that a student will change one of
-     * their attribute values <i>provided</i> that said attribute is "different
-     * enough" from their influencing peers to warrant change. */
-    public static double LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE;
-  
-    /** Each time a student changes one of her attribute values in response to
-     * a group (see {@link #LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE}), the
-     * fraction towards the group's mean value for that attribute that student
-     * will drift. */
-    public static double DRIFT_DISTANCE;
 
     /**
      * Each time step, the number of students who will be "invited" to a
-     * group. (<i>i.e.</i>, have {@link #recruitStudent(Person)} called on
-     * them.)
+     * group. (<i>i.e.</i>, be considered for membership; see {@link
+     * #step(SimState)}.)
      */
     public static final int NUM_PEOPLE_TO_RECRUIT = 10;
 
-    /**
-     * The number of forced-mixed-race orientation groups to start with.
-     */
-    public static int INITIAL_NUM_MIXED_RACE_GROUPS;
-
-    /**
-     * For the forced-mixed-race orientation groups, what fraction should be
-     * composed of minorities?
-     */
-    public static double MIXED_RACE_GROUP_FRACTION;
+    // The simulation this group is part of, and its parameters.
+    private final Sim sim;
+    private final SimParameters params;
 
-    // Hand out consecutive unique numbers to new groups.
-    private static int nextGroupId = 0;
     private int id;
 
     private boolean isFixed;  // more elegant with inheritance, but oh well
@@ -96,21 +74,40 @@ public class Group implements Steppable{
     // in attracting members.
     private double recruitmentFactor;
   
-    private ArrayList<Person> students;
+    // (Stored separately in a checkpoint; see writeLinks().)
+    private transient ArrayList<Person> students;
+
+    // Each member's position in students, keyed by their slot.
+    private IntIntHashMap studentIndex;
+
+    // The number of members of each race, indexed by ordinal.
+    private int[] numByRace;
+
+    // Reused each month when stepping ourselves.
+    private GroupProposal proposal = new GroupProposal();
     
-    private void init() {
-      this.id = nextGroupId++;
+    // Returns the generator to use for the rest of the group's creation.
+    private MersenneTwisterFast init() {
+      this.id = sim.nextGroupId++;
       students = new ArrayList<Person>();
-      recruitmentFactor = Sim.instance().random.nextDouble();
+      studentIndex = new IntIntHashMap();
+      numByRace = new int[Person.Race.values().length];
+      MersenneTwisterFast rng = sim.streams.get(
+          RandomStreams.Purpose.GROUP_INIT, id,
+          sim.getCurrMonthNum());
+      recruitmentFactor = rng.nextDouble();
+      return rng;
     }
 
     /**
      * Constructs a new Group object and pre-populate it with members. 
      */
-    public Group() {
-        init();
+    public Group(Sim sim) {
+        this.sim = sim;
+        this.params = sim.params;
+        MersenneTwisterFast rng = init();
         isFixed = false;
-        selectStartingStudents();
+        selectStartingStudents(rng);
     }
 
     /**
@@ -118,22 +115,24 @@ public class Group implements Steppable{
      * does not change over time) and pre-populate it with members of
      * (approximately) the fraction of minorities passed.
      */
-    public Group(double minorityFraction) {
-        init();
+    public Group(Sim sim, double minorityFraction) {
+        this.sim = sim;
+        this.params = sim.params;
+        MersenneTwisterFast rng = init();
         isFixed = true;
-        selectStartingStudents(minorityFraction);
+        selectStartingStudents(minorityFraction, rng);
     }
 
-    private int generateInitialGroupSize() {
-        int initialGroupSize = Sim.instance().random.nextInt(
+    private int generateInitialGroupSize(MersenneTwisterFast rng) {
+        int initialGroupSize = rng.nextInt(
             MAXIMUM_START_GROUP_SIZE-MINIMUM_START_GROUP_SIZE) + 
             MINIMUM_START_GROUP_SIZE + 1;
         if(initialGroupSize<MINIMUM_GROUP_SIZE){
           initialGroupSize=MINIMUM_GROUP_SIZE;    //keeps groups at least 
           // the min
         }
-        if(initialGroupSize>Sim.getNumPeople()){
-          initialGroupSize=Sim.getNumPeople();    //to ensure the initial 
+        if(initialGroupSize>sim.getNumPeople()){
+          initialGroupSize=sim.getNumPeople();    //to ensure the initial 
           // group size is never greater than the number of total people
         }
         return initialGroupSize;
@@ -142,91 +141,58 @@ public class Group implements Steppable{
     // Note: make sure this stays in sync with the other
     // selectStartingStudents(). (I couldn't think of a good way to refactor
     // common functionality.)
-    private void selectStartingStudents() {
-        int initialGroupSize = generateInitialGroupSize();
-        ArrayList<Person> people = Sim.getPeople();
+    private void selectStartingStudents(MersenneTwisterFast rng) {
+        int initialGroupSize = generateInitialGroupSize(rng);
+        ArrayList<Person> people = sim.getPeople();
         Person randStudent;
         for(int x = 0; x < initialGroupSize; x++){
-          randStudent = people.get(Sim.instance().random.nextInt(people.size()));
+          randStudent = people.get(rng.nextInt(people.size()));
           while(groupContainsStudent(randStudent)){
-            randStudent = people.get(Sim.instance().random.nextInt(people.size()));
+            randStudent = people.get(rng.nextInt(people.size()));
           }
-          students.add(randStudent);
-          randStudent.joinGroup(this);
+          addStudent(randStudent);
         }
     }
 
     // Note: make sure this stays in sync with the other
     // selectStartingStudents(). (I couldn't think of a good way to refactor
     // common functionality.)
-    private void selectStartingStudents(double minorityFraction) {
-        double initialGroupSize = (double) generateInitialGroupSize();
+    private void selectStartingStudents(double minorityFraction,
+        MersenneTwisterFast rng) {
+        double initialGroupSize = (double) generateInitialGroupSize(rng);
         int numMinorities = 
             (int) Math.round(initialGroupSize * minorityFraction);
         int numWhites = (int) initialGroupSize - numMinorities;
 
-        ArrayList<Person> people = Sim.getPeople();
+        ArrayList<Person> people = sim.getPeople();
         Person randStudent;
 
         for(int x = 0; x < numWhites; x++){
-          randStudent = people.get(Sim.instance().random.nextInt(people.size()));
+          randStudent = people.get(rng.nextInt(people.size()));
           while(randStudent.getRace() != Person.Race.WHITE  ||
             groupContainsStudent(randStudent)){
-            randStudent = people.get(Sim.instance().random.nextInt(people.size()));
+            randStudent = people.get(rng.nextInt(people.size()));
           }
-          students.add(randStudent);
-          randStudent.joinGroup(this);
+          addStudent(randStudent);
         }
         for(int x = 0; x < numMinorities; x++){
-          randStudent = people.get(Sim.instance().random.nextInt(people.size()));
+          randStudent = people.get(rng.nextInt(people.size()));
           while(randStudent.getRace() != Person.Race.MINORITY  ||
             groupContainsStudent(randStudent)){
-            randStudent = people.get(Sim.instance().random.nextInt(people.size()));
+            randStudent = people.get(rng.nextInt(people.size()));
           }
-          students.add(randStudent);
-          randStudent.joinGroup(this);
+          addStudent(randStudent);
         }
     }
 
-    private ArrayList<Person> findStudentsToRecruit(ArrayList<Person> people){
-        int numPeople = NUM_PEOPLE_TO_RECRUIT;
-        ArrayList<Person> recruits = new ArrayList<Person>();
-        Person randStudent;
-        if(numPeople>Sim.getNumPeople()){
-          numPeople=Sim.getNumPeople();    //to ensure the initial group size 
-          // is never greater than the number of total people
-        }
-        for(int x = 0; x < numPeople; x++){
-          randStudent = people.get(Sim.instance().random.nextInt(people.size()));
-          while(groupContainsStudent(randStudent)){
-            randStudent = people.get(Sim.instance().random.nextInt(people.size()));
-          }
-          recruits.add(randStudent);
-        }
-        return recruits;
+    private boolean groupContainsStudent(Person p){
+        return studentIndex.containsKey(p.getSlot());
     }
 
-    private void recruitStudent(Person s){
-        if(!groupContainsStudent(s)){
-
-          //FIX FOR DECIMALS
-            double r = (affinityTo(s) + recruitmentFactor + 
-                s.getExtroversion()*2 + Sim.instance().random.nextDouble()*2)/6.0; 
-                //want to mess with balance here
-            if(r>RECRUITMENT_REQUIRED){
-                students.add(s);
-                s.joinGroup(this);
-            }
-        }
-    }
-  
-    private boolean groupContainsStudent(Person p){
-        for (int x = 0; x<students.size(); x++){
-          if (p.getID()==students.get(x).getID()){
-            return true;
-          }
-        }
-        return false;
+    /** Returns the position of the member passed in this group (see {@link
+     * #getPersonAtIndex(int)}), or -1 if they aren't a member. */
+    int positionOf(Person p){
+        return studentIndex.get(p.getSlot(), -1);
     }
   
 
@@ -236,41 +202,56 @@ public class Group implements Steppable{
      */
      
      public double affinityTo(Person p){
-         if(getSize( ) > 0){
+         return affinityTo(p, null, 0);
+     }
+
+     // As affinityTo(Person), but as though the first numExtra of the
+     // people in extra (not yet members) were members already.
+     private double affinityTo(Person p, Person[] extra, int numExtra){
+         int size = students.size( ) + numExtra;
+         if(size > 0){
              double temp = 0;
-             for(int x = 0; x < students.size( ); x++){
-                 Person q = students.get(x);
+             for(int x = 0; x < size; x++){
+                 Person q = x < students.size( ) ? students.get(x) :
+                     extra[x - students.size( )];
                  if(q.getID( ) != p.getID( )){
                      temp = temp + p.similarityTo(q);
                  }
              }
-             return temp / students.size( );
+             return temp / size;
          }else{
              return 0.5;
          }
      }
 
-   	private void influenceMembers( ){
+    /**
+     * Work out this month's influence on the members (see {@link
+     * #step(SimState)}) in the proposal passed, without changing anything.
+     */
+   	void proposeInfluence(GroupProposal prop, MersenneTwisterFast rng){
    	    //should we add something short for if n=1 or just let it go through
    	    //the loop even though that's kind of a waste
    	    int n = students.size( );
+   	    int nP = params.PREFERENCE_POOL_SIZE;
+   	    int nH = params.HOBBY_POOL_SIZE;
+   	    prop.prepareInfluence(n, nP, nH);
    	    if(n > 0){
-   	    	ArrayList<Double> preferenceAverage = new ArrayList<Double>();
-   	    	ArrayList<Double> hobbyAverage = new ArrayList<Double>();
+   	    	double[] preferenceAverage = prop.preferenceAverage;
+   	    	double[] hobbyAverage = prop.hobbyAverage;
    	    	double tempTotal;
-   	    	for (int x = 0; x < students.get(0).getPreferences( ).size( ); x++){    
+   	    	for (int x = 0; x < preferenceAverage.length; x++){    
    	    		tempTotal=0;
    	    		for (int y = 0; y < n; y++){
-   	    			tempTotal+=students.get(y).getPreferences( ).get(x);
+   	    			tempTotal+=students.get(y).getPreferenceValue(x);
    	    		}
-   	    		preferenceAverage.add(tempTotal/n);
+   	    		preferenceAverage[x] = tempTotal/n;
    	    	}
-   	    	for (int x = 0; x < students.get(0).getHobbies( ).size( ); x++){
+   	    	for (int x = 0; x < hobbyAverage.length; x++){
    	    		tempTotal=0;
    	    		for (int y = 0; y < n; y++){
-   	    			tempTotal+=students.get(y).getHobbies().get(x);
+   	    			tempTotal+=students.get(y).getHobbyValue(x);
    	    		}
-   	    		hobbyAverage.add(tempTotal/n);
+   	    		hobbyAverage[x] = tempTotal/n;
    	    	}
 
         //At this point, both preferenceAverage and hobbyAverage are filled.
@@ -281,44 +262,133 @@ public class Group implements Steppable{
         //hobbies may only decrement by indirect normalization. We have to 
         //keep our numbers pretty low here-- this will be called at every 
         //step
-        
-   	    	double distanceP;  //distance between current person's current 
-        // preference and the group's average value for that preference
-   	    	double distanceH;  //distance between current person's current 
-        // hobby and group's average value for that hobby
-   	    	double increment; //how much each attribute will increment by
    	    	for(int x = 0; x < n; x++){
-   	    		for (int y = 0; y < preferenceAverage.size( ); y++){
-   	    			distanceP = preferenceAverage.get(y) - students.get(x).getPreferences().get(y);
-   	    			if(Sim.instance( ).random.nextDouble(true,true)< LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE){
-   	    				increment = (Sim.instance( ).random.nextDouble(true,true)*DRIFT_DISTANCE) * distanceP; 
+   	    		for (int y = 0; y < nP; y++){
+   	    			prop.preferenceFactor[x*nP + y] = Double.NaN;
+   	    			if(rng.nextDouble(true,true)< params.GROUP_LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE){
+   	    				prop.preferenceFactor[x*nP + y] =
+   	    				    rng.nextDouble(true,true)*params.GROUP_DRIFT_DISTANCE;
                     //random number inclusively from 0-1, then divide by 5,
-                    //then multiply by the distance that attribute is from
-                    //the group's average
-   	    				students.get(x).setPreferenceValue(y, (students.get(x).getPreferences().get(y)) +
-   	    						increment);
+                    //(to be multiplied by the distance that attribute is
+                    //from the group's average)
    	    			}
    	    		}
-   	    		
-   	    		for(int y = 0; y < hobbyAverage.size( ); y++){
-   	    			distanceH = hobbyAverage.get(y) - students.get(x).getHobbies().get(y);
-   	    			if(Sim.instance().random.nextDouble(true,true) < LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE){  
-   	    				increment = (Sim.instance( ).random.nextDouble(true, true)*DRIFT_DISTANCE)*distanceH;
-   	    				students.get(x).setHobbyValue(y,(students.get(x).getHobbies().get(y)) +
-   	    						increment);  //Morgan's method
+   	    		for(int y = 0; y < nH; y++){
+   	    			prop.hobbyFactor[x*nH + y] = Double.NaN;
+   	    			if(rng.nextDouble(true,true) < params.GROUP_LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE){  
+   	    				prop.hobbyFactor[x*nH + y] =
+   	    				    rng.nextDouble(true, true)*params.GROUP_DRIFT_DISTANCE;
    	    			}
    	    		}
    	    	}
    	    }
     }
 
-     private void possiblyLeaveGroup(Person p){
-      if(Sim.instance().random.nextDouble(true,true)<
-            LIKELIHOOD_OF_RANDOMLY_LEAVING_GROUP && 
-            students.size()>MINIMUM_GROUP_SIZE){
-        p.leaveGroup(this);
-        removeStudent(p);
-      }
+    /**
+     * Apply the influence worked out by proposeInfluence() to the member
+     * who was at the position passed when it was worked out. Each attribute
+     * moves its fraction of the way from wherever it is now towards the
+     * group's average.
+     */
+    void applyInfluence(GroupProposal prop, int x){
+        Person p = students.get(x);
+        int nP = prop.preferenceAverage.length;
+        int nH = prop.hobbyAverage.length;
+        double distanceP;  //distance between current person's current 
+        // preference and the group's average value for that preference
+        double distanceH;  //distance between current person's current 
+        // hobby and group's average value for that hobby
+        double increment; //how much each attribute will increment by
+        for (int y = 0; y < nP; y++){
+            double factor = prop.preferenceFactor[x*nP + y];
+            if(!Double.isNaN(factor)){
+                distanceP = prop.preferenceAverage[y] - p.getPreferenceValue(y);
+                increment = factor * distanceP;
+                p.setPreferenceValue(y, p.getPreferenceValue(y) + increment);
+            }
+        }
+        for(int y = 0; y < nH; y++){
+            double factor = prop.hobbyFactor[x*nH + y];
+            if(!Double.isNaN(factor)){
+                distanceH = prop.hobbyAverage[y] - p.getHobbyValue(y);
+                increment = factor * distanceH;
+                p.setHobbyValue(y, p.getHobbyValue(y) + increment);
+                    //Morgan's method
+            }
+        }
+    }
+
+    /**
+     * Work out this month's recruiting and leaving (see {@link
+     * #step(SimState)}) in the proposal passed, drawing recruits from the
+     * list of people passed, without changing anything. (Fixed groups
+     * neither recruit nor lose members.)
+     */
+    void proposeMembership(GroupProposal prop, MersenneTwisterFast rng,
+        ArrayList<Person> people){
+        if(isFixed){
+            return;
+        }
+        int numPeople = NUM_PEOPLE_TO_RECRUIT;
+        Person randStudent;
+        if(numPeople>people.size()){
+          numPeople=people.size();    //to ensure the initial group size 
+          // is never greater than the number of total people
+        }
+        for(int x = 0; x < numPeople; x++){
+          randStudent = people.get(rng.nextInt(people.size()));
+          while(groupContainsStudent(randStudent)){
+            randStudent = people.get(rng.nextInt(people.size()));
+          }
+          prop.addCandidate(randStudent);
+        }
+
+        // Students already invited earlier this month are simply ignored.
+        for(int x = 0; x < prop.numCandidates; x++){
+          Person s = prop.candidates[x];
+          if(!groupContainsStudent(s)  &&  !prop.recruits(s)){
+            //FIX FOR DECIMALS
+            double r = (affinityTo(s, prop.recruits, prop.numRecruits) +
+                recruitmentFactor + s.getExtroversion()*2 +
+                rng.nextDouble()*2)/6.0; 
+                //want to mess with balance here
+            if(r>params.RECRUITMENT_REQUIRED){
+                prop.addRecruit(s);
+            }
+          }
+        }
+
+        // Give every member (new recruits included) a chance to leave,
+        // last first: that's the order they'd be visited in if each were
+        // removed (and replaced by the last member) as we went.
+        int size = students.size() + prop.numRecruits;
+        for(int x = size-1; x>=0; x--){
+          Person p = x < students.size() ? students.get(x) :
+              prop.recruits[x - students.size()];
+          if(rng.nextDouble(true,true)<
+                params.LIKELIHOOD_OF_RANDOMLY_LEAVING_GROUP && 
+                size>MINIMUM_GROUP_SIZE){
+            prop.addLeaver(p);
+            size--;
+          }
+        }
+    }
+
+    /**
+     * Apply the recruiting and leaving worked out by proposeMembership().
+     */
+    void commitMembership(GroupProposal prop){
+        sim.metrics.count(SimMetrics.Counter.RECRUITS_ATTEMPTED,
+            prop.numCandidates);
+        sim.metrics.count(SimMetrics.Counter.RECRUITS_ACCEPTED,
+            prop.numRecruits);
+        sim.metrics.count(SimMetrics.Counter.GROUP_LEAVES, prop.numLeavers);
+        for(int x = 0; x < prop.numRecruits; x++){
+            addStudent(prop.recruits[x]);
+        }
+        for(int x = 0; x < prop.numLeavers; x++){
+            removeStudent(prop.leavers[x]);
+        }
     }
 
     /**
@@ -332,32 +402,50 @@ public class Group implements Steppable{
      * </ol>
      * After this, the Group reschedules itself for the next month (or
      * August, if it's coming up on summertime.)
-     * <p>Note that Groups only step during academic months.</p>
+     * <p>Note that Groups only step during academic months, and that when
+     * the Group phase runs in parallel (see {@link GroupPhase}), this method
+     * isn't used at all.</p>
      */
       public void step(SimState state){
         System.out.println("#### " + (isFixed ? "FIXED " : "") + "GROUP " + 
             id + " (" + state.schedule.getTime() + ") (with " +
             students.size() + " members)");
-        influenceMembers();
-        if (!isFixed) {
-            ArrayList<Person> recruits = 
-                findStudentsToRecruit(Sim.getPeople());
-            for(int x = 0; x < recruits.size(); x++){
-              recruitStudent(recruits.get(x));
-            }
-            for(int x = 0; x<students.size(); x++){
-              possiblyLeaveGroup(students.get(x));
-            }
+        long start = SimMetrics.startTimer();
+        SimEvents.GroupStep event = null;
+        if (id % params.JFR_SAMPLE_EVERY == 0) {
+            event = new SimEvents.GroupStep();
+            event.begin();
+        }
+        long month = sim.getCurrMonthNum();
+        // Each part is applied before the next is worked out, so that,
+        // e.g., recruits' affinity is to the members as just influenced.
+        proposal.clear();
+        proposeInfluence(proposal, sim.streams.get(
+            RandomStreams.Purpose.INFLUENCE, id, month));
+        for(int x = 0; x < proposal.numMembers; x++){
+          applyInfluence(proposal, x);
+        }
+        proposeMembership(proposal, sim.streams.get(
+            RandomStreams.Purpose.MEMBERSHIP, id, month), sim.getPeople());
+        commitMembership(proposal);
+        sim.metrics.stopTimer(SimMetrics.Timer.GROUP_STEP, start);
+        if (event != null  &&  event.shouldCommit()) {
+            event.group = id;
+            event.month = month;
+            event.size = students.size();
+            event.recruits = proposal.numRecruits;
+            event.leavers = proposal.numLeavers;
+            event.commit();
         }
         
-        if (Sim.instance().nextMonthInAcademicYear()) {
+        if (sim.nextMonthInAcademicYear()) {
           // It's not the end of the academic year yet. Run again
           // next month.
-          Sim.instance( ).schedule.scheduleOnceIn(1, this);
+          sim.schedule.scheduleOnceIn(1, this);
         } else {
-            if (!Sim.instance().isLastYearOfSim()) {
+            if (!sim.isLastYearOfSim()) {
               // It's summer break! Sleep for the summer.
-              Sim.instance( ).schedule.scheduleOnceIn(
+              sim.schedule.scheduleOnceIn(
                   Sim.NUM_MONTHS_IN_SUMMER + 1, this);
             }
         }
@@ -366,8 +454,8 @@ public class Group implements Steppable{
   
     /** Sets the recruitment factor for this group, which is a number in the
      * range 0 to 1 indicating how aggressive the group is in attracting
-     * members. Higher numbers increase the likelihood of {@link
-     * #recruitStudent(Person)} returning true.
+     * members. Higher numbers increase the likelihood of a recruited student
+     * joining.
      */
     public void setRecruitmentFactor(double r){
       recruitmentFactor=r;
@@ -383,22 +471,15 @@ public class Group implements Steppable{
      * group.
      */
     public int getSize(Person.Race race){
-        int num=0;
-        for (int i=0; i<students.size(); i++) {
-            if (students.get(i).getRace() == race) {
-                num++;
-            }
-        }
-        return num;
-    }
-
-    public static void printHeaderToGroupsFile(PrintWriter pw) {
-        pw.println("year,id,numMin,numWhi");
+        return numByRace[race.ordinal()];
     }
 
-    public void printToFile(PrintWriter pw) {
-        pw.println(Sim.instance().getCurrYearNum() + "," + id + "," + 
-            getSize(Person.Race.MINORITY) + "," + getSize(Person.Race.WHITE));
+    /** Output this group's makeup to the table passed (laid out like
+     * {@link TableSchema#GROUPS}). */
+    public void printToFile(TableWriter table) {
+        table.putInt(sim.getCurrYearNum()).putInt(id)
+            .putInt(getSize(Person.Race.MINORITY))
+            .putInt(getSize(Person.Race.WHITE)).endRow();
     }
 
     /** Gets the recruitment factor for this group (See {@link
@@ -428,21 +509,73 @@ public class Group implements Steppable{
       return students.get(x);
     }
 
-    /** Removes the person passed from this group. If the person is not
-     * already a member, does nothing. */
+    /** Adds the person passed to this group (and the group to the
+     * person's list of groups). If the person is already a member, does
+     * nothing. */
+    public void addStudent(Person p){
+      if(groupContainsStudent(p)){
+        return;
+      }
+      studentIndex.put(p.getSlot(), students.size());
+      students.add(p);
+      numByRace[p.getRace().ordinal()]++;
+      p.addedToGroup(this);
+      // Everyone here (p included) now shares this group with p.
+      for(int x = 0; x < students.size(); x++){
+        Person q = students.get(x);
+        q.getGroupmates().add(p);
+        if(q != p){
+          p.getGroupmates().add(q);
+        }
+      }
+    }
+
+    /** Removes the person passed from this group (and the group from the
+     * person's list of groups). If the person is not already a member, does
+     * nothing. */
     public void removeStudent(Person p){
-      for(int x = 0; x<students.size(); x++){
-          if(students.get(x).getID( ) == p.getID( )){
-            students.remove(x);
-          }
+      int x = studentIndex.get(p.getSlot(), -1);
+      if(x == -1){
+        return;
+      }
+      // Fill the hole with the last member.
+      Person last = students.remove(students.size()-1);
+      if(last != p){
+        students.set(x, last);
+        studentIndex.put(last.getSlot(), x);
       }
+      studentIndex.remove(p.getSlot());
+      numByRace[p.getRace().ordinal()]--;
+      p.removedFromGroup(this);
+      p.getGroupmates().remove(p);
+      for(int y = 0; y < students.size(); y++){
+        Person q = students.get(y);
+        q.getGroupmates().remove(p);
+        p.getGroupmates().remove(q);
+      }
+    }
+
+    /*
+     * Writes our members, which (as with Person.writeLinks()) aren't
+     * written along with the rest of us, so that writing a checkpoint
+     * doesn't recurse through the whole student body.
+     */
+    void writeLinks(ObjectOutputStream out) throws IOException {
+        out.writeObject(students);
+    }
+
+    // Reads what writeLinks() wrote.
+    @SuppressWarnings("unchecked")
+    void readLinks(ObjectInputStream in) throws IOException,
+        ClassNotFoundException {
+        students = (ArrayList<Person>) in.readObject();
     }
 
     /** Clears all Person objects from this group. (This method will in
      * turn inform each ex-member that they are no longer members.) */
     public void removeEveryoneFromGroup(){
-      for(int x = 0; x<students.size(); x++){
-        students.get(x).leaveGroup(this);
+      while(students.size() > 0){
+        removeStudent(students.get(students.size()-1));
       }
     }
 
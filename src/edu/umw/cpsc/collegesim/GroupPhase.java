@@ -0,0 +1,141 @@
+package edu.umw.cpsc.collegesim;
+
+import java.util.ArrayList;
+
+import sim.engine.*;
+
+
+/**
+ * Steps every group at once, in parallel, in place of each {@link Group}
+ * scheduling and stepping itself. Used only when {@link
+ * SimParameters#GROUP_THREADS} is positive.
+ * <p></p>
+ * Each month, at the time the Groups would have stepped:
+ * <ol>
+ * <li><b>Propose</b>, in parallel: every group works out its influence on
+ * its members, whom it will recruit, and who will leave, in a {@link
+ * GroupProposal}, reading the simulation as it stood at the start of the
+ * month and writing nothing shared. Each group draws from its own {@link
+ * RandomStreams}, just as when it steps itself.</li>
+ * <li><b>Influence</b>, in parallel over <i>students</i>: each student has
+ * the pull of each of their groups applied in turn, in the order of their
+ * own list of groups. A student's attributes are only ever written by the
+ * task for that student, so no two threads touch the same student.</li>
+ * <li><b>Commit</b>, one group at a time, in the order of {@link
+ * Sim#getGroups()}: each group's recruits join, and then its leavers
+ * leave. Since each group only decides about its own membership, no
+ * group's decisions can conflict with another's.</li>
+ * </ol>
+ * So the results for a given seed are the same however many threads are
+ * used. (They are <i>not</i> the same as when Groups step one at a time,
+ * since no group sees another's influence, recruits or leavers from the
+ * same month, and recruits' affinity is to the members as they were before
+ * this month's influence.)
+ */
+public class GroupPhase extends ParallelPhase {
+
+    private static final long serialVersionUID = 1L;
+
+    // Indexed like this month's list of groups; reused from month to month.
+    private GroupProposal[] proposals = new GroupProposal[0];
+
+    // Each group's position in this month's list, keyed by group ID.
+    private IntIntHashMap groupIndex = new IntIntHashMap();
+
+    /**
+     * Constructs a Group phase that uses the number of threads passed.
+     */
+    public GroupPhase(int numThreads) {
+        super(numThreads, "GroupPhase");
+    }
+
+    /**
+     * Step every group once, as described above, and then reschedule for
+     * the next month (or August, if it's coming up on summertime).
+     */
+    public void step(SimState state) {
+        final Sim sim = (Sim) state;
+        double now = state.schedule.getTime();
+        System.out.println("#### GROUP PHASE (" + now + ")");
+        long start = SimMetrics.startTimer();
+        SimEvents.Phase event = new SimEvents.Phase();
+        event.begin();
+        final ArrayList<Group> groups = new ArrayList<Group>(sim.getGroups());
+        final ArrayList<Person> people = sim.getPeople();
+        final long month = (long) Math.floor(now);
+        final int sampleEvery = sim.params.JFR_SAMPLE_EVERY;
+
+        if (proposals.length < groups.size()) {
+            GroupProposal[] bigger = new GroupProposal[groups.size() * 2];
+            System.arraycopy(proposals, 0, bigger, 0, proposals.length);
+            for (int i = proposals.length; i < bigger.length; i++) {
+                bigger[i] = new GroupProposal();
+            }
+            proposals = bigger;
+        }
+        groupIndex = new IntIntHashMap();
+        for (int i = 0; i < groups.size(); i++) {
+            groupIndex.put(groups.get(i).getID(), i);
+        }
+
+        // Anything computed lazily must be computed now, before it's read
+        // from several threads at once.
+        for (int i = 0; i < people.size(); i++) {
+            people.get(i).prepareForParallelReads();
+        }
+
+        // Propose.
+        runInParallel(groups.size(), new IndexedTask() {
+            public void run(int i) {
+                Group g = groups.get(i);
+                SimEvents.GroupStep stepEvent = null;
+                if (g.getID() % sampleEvery == 0) {
+                    stepEvent = new SimEvents.GroupStep();
+                    stepEvent.begin();
+                }
+                GroupProposal prop = proposals[i];
+                prop.clear();
+                g.proposeInfluence(prop, sim.streams.get(
+                    RandomStreams.Purpose.INFLUENCE, g.getID(), month));
+                g.proposeMembership(prop, sim.streams.get(
+                    RandomStreams.Purpose.MEMBERSHIP, g.getID(), month),
+                    people);
+                if (stepEvent != null  &&  stepEvent.shouldCommit()) {
+                    stepEvent.group = g.getID();
+                    stepEvent.month = month;
+                    stepEvent.size = g.getSize();
+                    stepEvent.recruits = prop.numRecruits;
+                    stepEvent.leavers = prop.numLeavers;
+                    stepEvent.commit();
+                }
+            }
+        });
+
+        // Influence, student by student.
+        runInParallel(people.size(), new IndexedTask() {
+            public void run(int i) {
+                Person p = people.get(i);
+                for (int k = 0; k < p.getNumGroups(); k++) {
+                    Group g = p.getGroup(k);
+                    g.applyInfluence(proposals[groupIndex.get(g.getID(), -1)],
+                        g.positionOf(p));
+                }
+            }
+        });
+
+        // Commit.
+        for (int i = 0; i < groups.size(); i++) {
+            groups.get(i).commitMembership(proposals[i]);
+        }
+        sim.metrics.stopTimer(SimMetrics.Timer.GROUP_STEP, start);
+        if (event.shouldCommit()) {
+            event.phase = "group";
+            event.month = month;
+            event.agents = groups.size();
+            event.threads = getNumThreads();
+            event.commit();
+        }
+
+        reschedule(state);
+    }
+}
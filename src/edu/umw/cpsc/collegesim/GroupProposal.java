@@ -0,0 +1,108 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+
+/**
+ * What a {@link Group} has decided to do in one month's step, worked out
+ * against the state of the simulation at the time but not yet applied to
+ * it.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Record the group's influence on its members: the average attributes
+ * of the group, and for each member and attribute, the random fraction of
+ * {@link SimParameters#GROUP_DRIFT_DISTANCE} drawn (or none, if that attribute doesn't
+ * change).</li>
+ * <li>Record, in order, the students the group will recruit and the
+ * members who will leave it.</li>
+ * </ul>
+ * Influence is recorded as fractions rather than as new values so that a
+ * student in several groups can have each group's pull applied in turn to
+ * wherever the previous one left them, just as when Groups step one at a
+ * time. See {@link GroupPhase}.
+ */
+public class GroupProposal implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // The number of members the influence was worked out for. Members are
+    // identified by their position in the group at the time.
+    int numMembers;
+    double[] preferenceAverage = new double[0];
+    double[] hobbyAverage = new double[0];
+
+    // Row-major, one row per member: the random fraction of DRIFT_DISTANCE
+    // to move towards the average, or NaN if the attribute doesn't change.
+    double[] preferenceFactor = new double[0];
+    double[] hobbyFactor = new double[0];
+
+    // The students considered for recruitment, in the order drawn.
+    int numCandidates;
+    Person[] candidates = new Person[16];
+
+    int numRecruits;
+    Person[] recruits = new Person[16];
+
+    // In the order they leave.
+    int numLeavers;
+    Person[] leavers = new Person[16];
+
+    /** Forgets everything, ready for another month. */
+    public void clear() {
+        Arrays.fill(candidates, 0, numCandidates, null);
+        Arrays.fill(recruits, 0, numRecruits, null);
+        Arrays.fill(leavers, 0, numLeavers, null);
+        numMembers = numCandidates = numRecruits = numLeavers = 0;
+    }
+
+    // Make sure the influence arrays are there and big enough.
+    void prepareInfluence(int members, int numPreferences, int numHobbies) {
+        numMembers = members;
+        if (preferenceAverage.length != numPreferences) {
+            preferenceAverage = new double[numPreferences];
+        }
+        if (hobbyAverage.length != numHobbies) {
+            hobbyAverage = new double[numHobbies];
+        }
+        if (preferenceFactor.length < members * numPreferences) {
+            preferenceFactor = new double[members * numPreferences * 2];
+        }
+        if (hobbyFactor.length < members * numHobbies) {
+            hobbyFactor = new double[members * numHobbies * 2];
+        }
+    }
+
+    void addCandidate(Person p) {
+        if (numCandidates == candidates.length) {
+            candidates = Arrays.copyOf(candidates, numCandidates * 2);
+        }
+        candidates[numCandidates++] = p;
+    }
+
+    void addRecruit(Person p) {
+        if (numRecruits == recruits.length) {
+            recruits = Arrays.copyOf(recruits, numRecruits * 2);
+        }
+        recruits[numRecruits++] = p;
+    }
+
+    void addLeaver(Person p) {
+        if (numLeavers == leavers.length) {
+            leavers = Arrays.copyOf(leavers, numLeavers * 2);
+        }
+        leavers[numLeavers++] = p;
+    }
+
+    /** Returns true if this proposal has the group recruiting the person
+     * passed. */
+    boolean recruits(Person p) {
+        for (int i = 0; i < numRecruits; i++) {
+            if (recruits[i] == p) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
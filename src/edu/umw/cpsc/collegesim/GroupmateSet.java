@@ -0,0 +1,86 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import sim.util.Bag;
+
+
+/**
+ * The set of students who share at least one group with a particular
+ * student (including that student, if they're in any group at all), kept up
+ * to date as people join and leave groups rather than rebuilt every month.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Count, for each groupmate, how many groups the two share, so that
+ * leaving one group only drops a groupmate when the count hits zero.</li>
+ * <li>Keep the groupmates themselves in a Bag (swap-removed, so in no
+ * particular order) that can be sampled from directly, without
+ * allocating.</li>
+ * </ul>
+ * {@link Group#addStudent(Person)} and {@link Group#removeStudent(Person)}
+ * are the only things that should change one of these.
+ */
+public class GroupmateSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Bag members = new Bag();
+
+    // Each groupmate's position in members, keyed by slot.
+    private IntIntHashMap index = new IntIntHashMap();
+
+    // Indexed like members: the number of groups shared with each.
+    private int[] sharedGroups = new int[8];
+
+    /** Records one more group shared with the person passed. */
+    void add(Person p) {
+        int x = index.get(p.getSlot(), -1);
+        if (x == -1) {
+            x = members.size();
+            index.put(p.getSlot(), x);
+            members.add(p);
+            if (x == sharedGroups.length) {
+                sharedGroups = Arrays.copyOf(sharedGroups, x * 2);
+            }
+            sharedGroups[x] = 0;
+        }
+        sharedGroups[x]++;
+    }
+
+    /** Records one fewer group shared with the person passed, dropping them
+     * if that was the last. */
+    void remove(Person p) {
+        int x = index.get(p.getSlot(), -1);
+        if (x == -1  ||  --sharedGroups[x] > 0) {
+            return;
+        }
+        // Fill the hole with the last groupmate.
+        int lastPos = members.size() - 1;
+        Person last = (Person) members.get(lastPos);
+        members.remove(lastPos);
+        if (last != p) {
+            members.set(x, last);
+            sharedGroups[x] = sharedGroups[lastPos];
+            index.put(last.getSlot(), x);
+        }
+        index.remove(p.getSlot());
+    }
+
+    public boolean contains(Person p) {
+        return index.containsKey(p.getSlot());
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Returns the groupmates as a Bag. This is the set's own Bag, kept up to
+     * date as groups change, so callers must not modify it.
+     */
+    public Bag asBag() {
+        return members;
+    }
+}
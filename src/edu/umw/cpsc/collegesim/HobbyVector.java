@@ -0,0 +1,116 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.Serializable;
+
+
+/**
+ * One student's hobbies, which auto-normalize: the student has one unit of
+ * time to split among them, so having more of one hobby means having
+ * relatively less of the others.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Keep a running sum of the student's raw (un-normalized) hobby
+ * values, which live in their row of the {@link AttributeStore}, so that
+ * neither normalizing nor {@link #setNormalized(int,double)} has to re-add
+ * the whole pool.</li>
+ * <li>Keep a normalized copy of the row in the store, refreshed lazily the
+ * first time it is read after a hobby changes. Reads never allocate.</li>
+ * </ul>
+ */
+public class HobbyVector implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final AttributeStore store;
+    private final int slot;
+    private final int size;
+
+    // The sum of all the raw hobby values in our row.
+    private double sum;
+
+    // True if a raw value has changed since the normalized row was last
+    // computed.
+    private boolean stale;
+
+    /**
+     * Constructs the hobby vector for the (freshly allocated, hence all
+     * zero) slot of the store passed.
+     */
+    public HobbyVector(AttributeStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+        this.size = store.getNumHobbies();
+        this.sum = 0.0;
+        this.stale = true;
+    }
+
+    /** Returns the number of hobbies in the vector. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the raw (un-normalized) value of the hobby passed. */
+    public double getRaw(int index) {
+        return store.getHobby(slot, index);
+    }
+
+    /** Sets the raw (un-normalized) value of the hobby passed. */
+    public void setRaw(int index, double val) {
+        sum += val - store.getHobby(slot, index);
+        store.setHobby(slot, index, val);
+        stale = true;
+    }
+
+    /** Returns the sum of all the raw hobby values. */
+    public double getSum() {
+        return sum;
+    }
+
+    /** Returns the normalized value of the hobby passed. */
+    public double get(int index) {
+        return normalizedData()[offset() + index];
+    }
+
+    /**
+     * Adjusts the raw value of the hobby passed so that its normalized value
+     * becomes the value passed, leaving the other raw values alone (and
+     * hence scaling their normalized values so the total is still 1).
+     */
+    public void setNormalized(int index, double val) {
+        double others = sum - store.getHobby(slot, index);
+        double newNonNormalVal = (val * others)/(1-val);
+        store.setHobby(slot, index, newNonNormalVal);
+        sum = others + newNonNormalVal;
+        stale = true;
+    }
+
+    /**
+     * Returns the store's normalized-hobby matrix, with our row (starting at
+     * {@link #offset()}) up to date. The array is shared and must not be
+     * modified or held on to.
+     */
+    double[] normalizedData() {
+        double[] normal = store.normalizedHobbyData();
+        if (stale) {
+            double[] raw = store.hobbyData();
+            int off = offset();
+            // Re-add from scratch while we're touching every value anyway,
+            // so rounding error in the running sum can't accumulate.
+            sum = 0.0;
+            for (int i=0; i<size; i++) {
+                sum = sum + raw[off+i];
+            }
+            for (int i=0; i<size; i++) {
+                normal[off+i] = raw[off+i]/sum;
+            }
+            stale = false;
+        }
+        return normal;
+    }
+
+    /** Returns the index of our first hobby in the store's matrices. */
+    int offset() {
+        return slot * size;
+    }
+}
@@ -0,0 +1,59 @@
+package edu.umw.cpsc.collegesim;
+
+
+/**
+ * A map from non-negative ints to doubles, stored in flat open-addressing
+ * tables with no boxing and no per-entry objects. Put, remove, get, and
+ * containsKey all take expected constant time.
+ * <p></p>
+ * To walk the map without allocating, loop <code>i</code> from 0 to {@link
+ * #tableLength()} and skip the entries for which {@link #keyAt(int)} returns
+ * {@link #EMPTY}; {@link #valueAt(int)} gives the matching value. The order
+ * is deterministic (it depends only on the sequence of puts and removes)
+ * but otherwise arbitrary.
+ */
+public class IntDoubleHashMap extends IntKeyHashMap {
+
+    private static final long serialVersionUID = 1L;
+
+    private double[] values = new double[INITIAL_CAPACITY];
+
+    /** Returns the value for the key passed, or the default passed if the
+     * key isn't present. */
+    public double get(int key, double defaultValue) {
+        int i = indexOf(key);
+        return i >= 0 ? values[i] : defaultValue;
+    }
+
+    /** Maps the key passed to the value passed; returns false if the key
+     * was already present (in which case its value is replaced). */
+    public boolean put(int key, double value) {
+        int i = probe(key);
+        if (i >= 0) {
+            values[i] = value;
+            return false;
+        }
+        values[~i] = value;
+        insertKey(~i, key);
+        return true;
+    }
+
+    /** See the class comment. */
+    public double valueAt(int i) {
+        return values[i];
+    }
+
+    void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+
+    void rehashValues(int newCapacity, int[] newIndex) {
+        double[] oldValues = values;
+        values = new double[newCapacity];
+        for (int j = 0; j < newIndex.length; j++) {
+            if (newIndex[j] != EMPTY) {
+                values[newIndex[j]] = oldValues[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+
+/**
+ * The part of {@link IntIntHashMap} and {@link IntDoubleHashMap} that
+ * doesn't depend on the type of the values: a flat open-addressing
+ * (linear probing) table of non-negative int keys, kept at most half full.
+ * Each subclass keeps its values in an array of its own type, parallel to
+ * the keys, and moves them when this class moves the keys.
+ * <p></p>
+ * To walk the map without allocating, loop <code>i</code> from 0 to {@link
+ * #tableLength()} and skip the entries for which {@link #keyAt(int)} returns
+ * {@link #EMPTY}; the subclass's <code>valueAt(i)</code> gives the matching
+ * value. The order is deterministic (it depends only on the sequence of
+ * puts and removes) but otherwise arbitrary.
+ */
+public abstract class IntKeyHashMap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The marker for an unused entry in the table. */
+    public static final int EMPTY = -1;
+
+    /** The length of a new map's table. */
+    static final int INITIAL_CAPACITY = 8;
+
+    private int[] keys;
+    private int size;
+
+    IntKeyHashMap() {
+        keys = new int[INITIAL_CAPACITY];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    /** Removes the key passed; returns false if it wasn't present. */
+    public boolean remove(int key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (; keys[i] != key; i = (i+1) & mask) {
+            if (keys[i] == EMPTY) {
+                return false;
+            }
+        }
+        // Shift later members of the probe run back into the hole, so no
+        // tombstones are needed.
+        int hole = i;
+        for (int j = (hole+1) & mask; keys[j] != EMPTY; j = (j+1) & mask) {
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                moveValue(j, hole);
+                hole = j;
+            }
+        }
+        keys[hole] = EMPTY;
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /** See the class comment. */
+    public int tableLength() {
+        return keys.length;
+    }
+
+    /** See the class comment. */
+    public int keyAt(int i) {
+        return keys[i];
+    }
+
+    /** Copies the value at index from over the one at index to. */
+    abstract void moveValue(int from, int to);
+
+    /**
+     * Replaces the values with a table of the capacity passed, in which
+     * the value that was at index j goes at newIndex[j] (unless that's
+     * {@link #EMPTY}, for an unused entry).
+     */
+    abstract void rehashValues(int newCapacity, int[] newIndex);
+
+    /** Returns the index of the key passed, or -1 if it isn't present. */
+    final int indexOf(int key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; keys[i] != EMPTY; i = (i+1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the key passed, or if it isn't present, the
+     * complement (~) of the index of the unused entry it would go in (to
+     * pass to {@link #insertKey(int, int)}).
+     */
+    final int probe(int key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (; keys[i] != EMPTY; i = (i+1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return ~i;
+    }
+
+    /**
+     * Puts the key passed in the unused entry passed (from {@link
+     * #probe(int)}), whose value the subclass has already set, growing the
+     * table if need be.
+     */
+    final void insertKey(int i, int key) {
+        keys[i] = key;
+        // Keep the table at most half full, so probe runs stay short.
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        keys = new int[newCapacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = newCapacity - 1;
+        // (Each old key is overwritten with its new index once it's moved,
+        // which is what rehashValues() needs.)
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != EMPTY) {
+                int i = hash(oldKeys[j]) & mask;
+                while (keys[i] != EMPTY) {
+                    i = (i+1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                oldKeys[j] = i;
+            }
+        }
+        rehashValues(newCapacity, oldKeys);
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
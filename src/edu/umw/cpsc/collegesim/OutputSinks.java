@@ -0,0 +1,149 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+
+/**
+ * The tables one run writes, each to a file named for the table and the
+ * run's SIMTAG, in the run's {@link TableWriter.Format}.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Own every one of the run's tables: open each one's file once, the
+ * first time it's asked for, with a large buffer and its header.</li>
+ * <li>Keep them all open for the whole run (rather than reopening them
+ * every year, or every row), and close them all at the end.</li>
+ * </ul>
+ */
+public class OutputSinks {
+
+    /** The size of each CSV file's buffer, in chars. */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private final SimParameters params;
+    private final long simtag;
+    private final TableWriter.Format format;
+
+    // The tables opened so far, by name, in the order they were opened.
+    private final LinkedHashMap<String,TableWriter> tables =
+        new LinkedHashMap<String,TableWriter>();
+
+    // The name of every file opened.
+    private final LinkedHashSet<String> filenames =
+        new LinkedHashSet<String>();
+
+    /** Constructs the (as yet empty) set of tables for the run with the
+     * parameters passed (which give its SIMTAG and output format). */
+    public OutputSinks(SimParameters params) {
+        this.params = params;
+        this.simtag = params.SIMTAG;
+        this.format = params.OUTPUT_FORMAT;
+    }
+
+    /**
+     * Returns the writer for the table passed, creating (or truncating)
+     * its file and writing its header the first time it's asked for.
+     */
+    public TableWriter get(TableSchema schema) {
+        TableWriter table = tables.get(schema.getName());
+        if (table == null) {
+            table = open(schema);
+            tables.put(schema.getName(), table);
+        }
+        return table;
+    }
+
+    /**
+     * Returns the writer for the event table passed (such as {@link
+     * TableSchema#ENCOUNTERS}), opening it the first time. Depending on
+     * {@link SimParameters#SUMMARIZE_EVENTS}, it's written as yearly
+     * summaries (see {@link AggregatingTableWriter}), or a row per event
+     * (which, in CSV, is written in the background; see {@link
+     * EventLog}).
+     */
+    public TableWriter getEvents(TableSchema schema) {
+        TableWriter table = tables.get(schema.getName());
+        if (table != null) {
+            return table;
+        }
+        if (params.SUMMARIZE_EVENTS) {
+            // (The only DOUBLE column summarized is similarity, which is
+            // between 0 and 1.)
+            table = new AggregatingTableWriter(schema,
+                open(AggregatingTableWriter.summaryOf(schema)),
+                params.SIMILARITY_BINS, 0, 1, params.EVENT_SAMPLE_SIZE,
+                params.EVENT_SAMPLE_SIZE > 0 ? open(schema) : null,
+                params.SEED + schema.getName().hashCode());
+        } else if (format == TableWriter.Format.BINARY) {
+            table = open(schema);
+        } else {
+            try {
+                String filename = schema.getFileName(simtag, format);
+                filenames.add(filename);
+                table = new CsvTableWriter(schema, new EventLog(filename),
+                    true);
+            } catch(IOException e) {
+                couldNotCreate(e);
+            }
+        }
+        tables.put(schema.getName(), table);
+        return table;
+    }
+
+    /** Tells every table a year is over (see {@link
+     * TableWriter#endYear()}). */
+    public void endYear() {
+        for (TableWriter table : tables.values()) {
+            table.endYear();
+        }
+    }
+
+    /** Returns the total size of every file opened so far, as far as
+     * what's been written to them has reached the disk. */
+    public long getBytesOnDisk() {
+        long total = 0;
+        for (String filename : filenames) {
+            total += new File(filename).length();
+        }
+        return total;
+    }
+
+    /** Flushes and closes every table. Any asked for afterwards are
+     * opened anew. */
+    public void close() {
+        ArrayList<TableWriter> toClose =
+            new ArrayList<TableWriter>(tables.values());
+        tables.clear();
+        for (int i = 0; i < toClose.size(); i++) {
+            toClose.get(i).close();
+        }
+    }
+
+    // Create the file for the table passed, and return a writer for it.
+    private TableWriter open(TableSchema schema) {
+        String filename = schema.getFileName(simtag, format);
+        filenames.add(filename);
+        try {
+            if (format == TableWriter.Format.BINARY) {
+                return new ColumnarTableWriter(schema, filename);
+            }
+            return new CsvTableWriter(schema, new BufferedWriter(
+                new FileWriter(filename), BUFFER_SIZE), true);
+        } catch(IOException e) {
+            couldNotCreate(e);
+            return null;
+        }
+    }
+
+    private static void couldNotCreate(IOException e) {
+        System.out.println("Couldn't create file");
+        e.printStackTrace();
+        System.exit(1);
+    }
+}
@@ -0,0 +1,137 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import sim.engine.*;
+
+
+/**
+ * The machinery shared by the phases that step every agent of one kind at
+ * once, in parallel, in place of each agent scheduling and stepping itself
+ * (see {@link PersonPhase} and {@link GroupPhase}).
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Own a fixed pool of worker threads, and run a task for each index in
+ * a range across them, in chunks.</li>
+ * <li>Reschedule the phase the way the agents would have rescheduled
+ * themselves, and shut the pool down after the last year.</li>
+ * </ul>
+ */
+public abstract class ParallelPhase implements Steppable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Something to do for each index in a range, on whatever worker thread
+     * gets to it.
+     */
+    interface IndexedTask {
+        void run(int index);
+    }
+
+    // How many chunks to split the indices into per thread, so a thread
+    // that finishes early can pick up another.
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final int numThreads;
+    private final String threadName;
+
+    // (Not part of a checkpoint; a restored phase starts a new one.)
+    private transient ExecutorService pool;
+
+    /**
+     * Constructs a phase that uses the number of threads passed, which are
+     * named as passed.
+     */
+    protected ParallelPhase(int numThreads, String threadName) {
+        this.numThreads = numThreads;
+        this.threadName = threadName;
+        startPool();
+    }
+
+    /** Returns the number of threads the phase uses. */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    private void startPool() {
+        pool = Executors.newFixedThreadPool(numThreads,
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, threadName);
+                    // Don't keep the JVM alive once the simulation is over.
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+        ClassNotFoundException {
+        in.defaultReadObject();
+        startPool();
+    }
+
+    /**
+     * Runs the task passed for every index from 0 to n-1, in parallel, and
+     * returns when they're all done. The task must not write anything that
+     * the task for another index reads or writes.
+     */
+    void runInParallel(int n, final IndexedTask task) {
+        int numChunks = Math.min(n, numThreads * CHUNKS_PER_THREAD);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int c = 0; c < numChunks; c++) {
+            final int from = (int) ((long) n * c / numChunks);
+            final int to = (int) ((long) n * (c+1) / numChunks);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for (int i = from; i < to; i++) {
+                        task.run(i);
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Reschedules this phase for next month (or August, if it's coming up
+     * on summertime), or, if the simulation is over, shuts down the pool.
+     */
+    void reschedule(SimState state) {
+        Sim sim = (Sim) state;
+        if (sim.nextMonthInAcademicYear()) {
+            // It's not the end of the academic year yet. Run again
+            // next month.
+            state.schedule.scheduleOnceIn(1, this);
+        } else {
+            if (!sim.isLastYearOfSim()) {
+                // It's summer break! Sleep for the summer.
+                state.schedule.scheduleOnceIn(Sim.NUM_MONTHS_IN_SUMMER + 1,
+                    this);
+            } else {
+                pool.shutdown();
+            }
+        }
+    }
+}
@@ -2,11 +2,10 @@ package edu.umw.cpsc.collegesim;
 import java.io.IOException;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Hashtable;
-import java.util.Enumeration;
 
 import sim.util.distribution.Normal;
 
@@ -15,7 +14,6 @@ import java.lang.Math;
 import sim.engine.*;
 import sim.util.*;
 import ec.util.*;
-import sim.field.network.*;
 
 /**
  * A student in the CollegeSim model.
@@ -36,13 +34,15 @@ import sim.field.network.*;
  *          all weighted differently.</li> 
  *          <li>Based on the similarity, determine whether they become
  *          friends. (This is random, but based in part on {@link
- *          #FRIENDSHIP_COEFFICIENT} and {@link #FRIENDSHIP_INTERCEPT}.)</li>
+ *          SimParameters#FRIENDSHIP_COEFFICIENT} and {@link
+ *          SimParameters#FRIENDSHIP_INTERCEPT}.)</li>
  *          </ol>
  *      </li>
  *      </ul>
  * </li>
  * <li>Every month, decay friendships. Any friend who has not tickled / been
- * tickled since {@link #DECAY_THRESHOLD} becomes a non-friend.</li>
+ * tickled since {@link SimParameters#DECAY_THRESHOLD} becomes a
+ * non-friend.</li>
  * <li>This class can also compute how alienated the person feels based on her
  * number of friends (and your extroversion, currently constant). This is used
  * by {@link Sim} to drop students out.</li>
@@ -53,28 +53,16 @@ import sim.field.network.*;
  */
 public class Person implements Steppable {
 
+    private static final long serialVersionUID = 1L;
+
     public enum Race { WHITE, MINORITY };
     public enum Gender { MALE, FEMALE };
 
-    /**
-     * Baseline prior probability that a newly generated student will be of
-     * race "WHITE". */
-    public static double PROBABILITY_WHITE;
-
     /**
      * Baseline prior probability that a newly generated student will be of
      * gender "FEMALE". */
     public static final double PROBABILITY_FEMALE = 1;
     
-    /** A number reflecting the relative importance that race has in
-     * determining perceived similarity. The "units" of this constant are
-     * in "equivalent number of attributes"; <i>i.e.</i>, if the
-     * RACE_WEIGHT is 4, this means that if another person is the same race
-     * as you, this will impact your perceived similarity to them (and
-     * theirs to you) to the same degree that four of your individual
-     * attributes being the same would. */
-    public static double RACE_WEIGHT;
-
     /** A number reflecting the relative importance that gender has in
      * determining perceived similarity. The "units" of this constant are
      * in "equivalent number of attributes"; <i>i.e.</i>, if the
@@ -104,277 +92,237 @@ public class Person implements Steppable {
      * biking has an effect on the amount of time you spend reading graphic
      * novels, because time is constant. */
     public static final double HOBBY_WEIGHT = 2.5;
-    
-    /** The coefficient (see also {@link #FRIENDSHIP_INTERCEPT}) of a linear
-     * equation to transform perceived similarity to probability of
-     * friendship. If x is the perceived similarity, then y=mx+b, where m
-     * is the FRIENDSHIP_COEFFICIENT, b the FRIENDSHIP_INTERCEPT, and y gives
-     * the probability of becoming friends. */
-    public static double FRIENDSHIP_COEFFICIENT;
-
-    /** See {@link #FRIENDSHIP_COEFFICIENT}. */
-    public static double FRIENDSHIP_INTERCEPT;
-  
-    /** Each time step (= 1 month), how many other people from a person's 
-     * groups that person will encounter. Note that this number is only
-     * unidirectional; <i>i.e.</i>, this person may well "be met by" 
-     * numerous other people when their step() methods run. */
-    public static int NUM_TO_MEET_GROUP;
-
-    /** Each time step (= 1 month), how many other people from the overall
-     * student body a person will encounter. Note that this number is only
-     * unidirectional; <i>i.e.</i>, this person may well "be met by" 
-     * numerous other people when their step() methods run. */
-    public static int NUM_TO_MEET_POP;
-
-    /** The number of consecutive months that two friends can <i>not</i>
-     * tickle each other and yet remain friends. */
-    public static int DECAY_THRESHOLD;
-
-    /** When a new Student is created, the number of automatic friends of the
-     *  opposite race that they will get. */
-    public static int INITIAL_NUM_FORCED_OPPOSITE_RACE_FRIENDS;
-    
-    /** Each time step, the probability that a student will change one of
-     * their attribute values in response to their peers as a whole. */
-    public static double LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE;
 
-    /** Each time a student changes one of her attribute values in response to
-     * their peers (see {@link #LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE}),
-     * the fraction towards their peer's mean value for that attribute that
-     * student will drift. */
-    public static double DRIFT_DISTANCE;
+    // Computes the attribute distances in similarityTo(), vectorized if
+    // the JVM allows.
+    private static final SimilarityKernel SIMILARITY_KERNEL =
+        SimilarityKernel.create();
+
+    // The simulation this person is part of, and its parameters.
+    private final Sim sim;
+    private final SimParameters params;
 
-    // Hand out consecutive unique numbers to new people.
-    private static int nextPersonId = 0; private int id;
+    private int id;
 
     private int year;
+
+    // False once this person has graduated or dropped out.
+    private boolean enrolled = true;
+
+    // What actually goes on the schedule on our behalf, so that when we
+    // leave, our pending step can be cancelled rather than left to run.
+    private TentativeStep scheduleHandle = new TentativeStep(this);
 /*
  *  Take out extroversion for now. Everyone is at .5.
     private Normal extroversionDistro = 
-        new Normal(.5, .15, Sim.instance( ).random);
+        new Normal(.5, .15, sim.random);
 */
     
     private Race race;
     private Gender gender;
     
     private double extroversion;
-    private ArrayList<Group> groups;
-  
-    /** The total number of "constant" attributes in the system. (See {@link
-     * #CONST_WEIGHT}.) Each person will have a value from 0 to 1 for each,
-     * indicating the extent to which they possess the attribute. */
-    public static int CONSTANT_ATTRIBUTE_POOL_SIZE = 0;  // 100;
-    private ArrayList<Double> constantAttrs     //Constant attributes
-        = new ArrayList<Double>(
-            Collections.nCopies(CONSTANT_ATTRIBUTE_POOL_SIZE, 0.0));
-  
-    /** The number of preferences each person has. (See {@link
-     * #PREF_WEIGHT}.) */
-    public static int NUM_PREFERENCES;
-
-    /** The total number of "preferences" in the system. (See 
-     * {@link #PREF_WEIGHT}.) Each person will either have the attribute or
-     * not; and if they do, they will have a double value assigned
-     * indicating its strength. (Morgan: is this still accurate?) */
-    public static int PREFERENCE_POOL_SIZE;
-
-    //A person's preferences, which can change but do not affect each other
-    private ArrayList<Double> preferences
-      = new ArrayList<Double>(Collections.nCopies(
-            PREFERENCE_POOL_SIZE, 0.0));
-  
-    /** The number of "hobbies" attributes each person has. (See {@link
-     * #HOBBY_WEIGHT}.) */
-    public static int NUM_HOBBIES;
-
-    /** The total number of "hobbies" in the system. (See 
-     * {@link #HOBBY_WEIGHT}.) Each person will either have the attribute or
-     * not; and if they do, they will have a double value assigned
-     * indicating its strength. */
-    public static int HOBBY_POOL_SIZE;
-
-    //hobbies, which can change but you only have 1 unit to 
-    //split among them
-    //in other words, if one increases, then another decreases
-    private ArrayList<Double> hobbies
-      = new ArrayList<Double>(Collections.nCopies(HOBBY_POOL_SIZE, 0.0));
+    // (These two lead to other Persons and Groups, so a checkpoint stores
+    // them separately; see writeLinks().)
+    private transient ArrayList<Group> groups;
+    // Each of our groups' positions in groups, keyed by group ID. (Group
+    // maintains both this and its own member list; see Group.addStudent().)
+    private IntIntHashMap groupIndex;
+    // Everyone who shares at least one of our groups (also maintained by
+    // Group).
+    private transient GroupmateSet groupmates;
+
+    //This person's row in sim.attributes, which holds their constant
+    //attributes, their preferences (which can change but do not affect each
+    //other), and their hobbies (which can change but you only have 1 unit to 
+    //split among them; in other words, if one increases, then another
+    //decreases)
+    private int slot;
+
+    //A view onto our hobbies in sim.attributes which keeps their normalized
+    //values up to date
+    private HobbyVector hobbies;
 
     /**
-    * The following ArrayLists are used to store each student's influencible
+    * The following arrays are used to store each student's influencible
     * preferences at the beginning and end of each year. The end of the 
-    * student's last year will be the preferences and hobbies 
-    * variables
+    * student's last year will be their current preferences and hobbies.
     */
-    private ArrayList<Double> preferencesYear0;
-    private ArrayList<Double> hobbiesYear0;
-    private ArrayList<Double> preferencesYear1;
-    private ArrayList<Double> hobbiesYear1; 
-    private ArrayList<Double> preferencesYear2;
-    private ArrayList<Double> hobbiesYear2; 
-    private ArrayList<Double> preferencesYear3;
-    private ArrayList<Double> hobbiesYear3;
-
-    //A list that will house the absolute sim time that this person first met,
-    //or last tickled, each other person
-    private Hashtable<Integer,Double> lastTickleTime
-      = new Hashtable<Integer,Double>();
+    private double[] preferencesYear0;
+    private double[] hobbiesYear0;
+    private double[] preferencesYear1;
+    private double[] hobbiesYear1; 
+    private double[] preferencesYear2;
+    private double[] hobbiesYear2; 
+    private double[] preferencesYear3;
+    private double[] hobbiesYear3;
 
     /*
-     * Personality drift for being affected by a Person's friends.
+     * Personality drift for being affected by a Person's friends: work out,
+     * in the proposal passed, the average attributes of the friends passed,
+     * and draw the random numbers for which attributes drift and by how
+     * much. (Nothing changes until commitDrift().)
      */
-    private void personalityDrift( ){
-    	//Get a bag of the edges to the person's friends
-    	Bag b = Sim.peopleGraph.getEdgesIn(this);
-   	    
+    private void proposeDrift(Bag b, StepProposal prop,
+        MersenneTwisterFast rng){
     	//should we add something short for if n=1 or just let it go through
    	    //the loop even though that's kind of a waste
    	    int n = b.size( );
    	    //If we have at least a single friend
    	    if(n > 0){
-   	    	ArrayList<Double> preferenceAverage = new ArrayList<Double>();
-   	    	ArrayList<Double> hobbyAverage = new ArrayList<Double>();
+   	    	prop.prepareDrift(params.PREFERENCE_POOL_SIZE, params.HOBBY_POOL_SIZE);
+   	    	double[] preferenceAverage = prop.preferenceAverage;
+   	    	double[] hobbyAverage = prop.hobbyAverage;
    	    	double tempTotal;
    	    	//For each attribute
-   	    	for (int x = 0; x < PREFERENCE_POOL_SIZE; x++){
+   	    	for (int x = 0; x < params.PREFERENCE_POOL_SIZE; x++){
    	    		//Temporary total for attribute at index x
    	    		tempTotal = 0;
    	    		//For each friend
    	    		for (int y = 0; y < n; y++){
    	    			//add the value for this attribute to the temporary total
-   	    			tempTotal+=((Person)
-                        ((Edge) b.get(y)).getOtherNode(this)).getPreferences( ).get(x);
+   	    			tempTotal+=((Person) b.get(y)).getPreferenceValue(x);
    	    		}
    	    		//Set the average value for this attribute
-   	    		preferenceAverage.add(tempTotal/n);
+   	    		preferenceAverage[x] = tempTotal/n;
    	    	}
    	    	//Do the same for hobbies
-   	    	for (int x = 0; x < HOBBY_POOL_SIZE; x++){
+   	    	for (int x = 0; x < params.HOBBY_POOL_SIZE; x++){
    	    		tempTotal = 0;
    	    		for (int y = 0; y < n; y++){
-   	    			tempTotal+=((Person)
-                        ((Edge) b.get(y)).getOtherNode(this)).getHobbies( ).get(x);
+   	    			tempTotal+=((Person) b.get(y)).getHobbyValue(x);
    	    		}
-   	    		hobbyAverage.add(tempTotal/n);
+   	    		hobbyAverage[x] = tempTotal/n;
    	    	}
         
-   	    	double distanceI;
-   	    	double distanceD;
-   	    	double increment;
-   	    	
-   	    	//For each preference 
-   	    	for(int y = 0; y < PREFERENCE_POOL_SIZE; y++){
-   	   			//Calculate the distance between the average attribute and this person's attribute
-   	   			distanceI = preferenceAverage.get(y) - getPreferences( ).get(y);
-   	   			//If we randomly decide to change the attribute
-   	    		if(Sim.instance( ).random.nextDouble(true, true) < LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE){
-   	    			//Calculate an increment by which to change using the distance and a random factor
-   	    			increment = (Sim.instance( ).random.nextDouble(true,true)*DRIFT_DISTANCE) * distanceI;
-   	    			//Set the new preference value to whatever it was before plus the increment
-   	    			setPreferenceValue(y, getPreferences( ).get(y) + increment);
+   	    	//For each preference, and then each hobby, decide whether we
+   	    	//will change it, and if so, pick a random factor by which to
+   	    	//scale the change
+   	    	for(int y = 0; y < params.PREFERENCE_POOL_SIZE; y++){
+   	    		prop.preferenceFactor[y] = Double.NaN;
+   	    		if(rng.nextDouble(true, true) < params.LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE){
+   	    			prop.preferenceFactor[y] = rng.nextDouble(true,true);
    	    		}
    	    	}
-   	    	
-   	    	//The same process for hobbies
-   	    	for(int y = 0; y < HOBBY_POOL_SIZE; y++){
-   	    		distanceD = hobbyAverage.get(y) - getHobbies( ).get(y);
-   	    		if(Sim.instance().random.nextDouble(true, true) < LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE){  
-   	    			increment = (Sim.instance( ).random.nextDouble(true, true)*DRIFT_DISTANCE)*distanceD;
-   	    			setHobbyValue(y, getHobbies( ).get(y) + increment);
+   	    	for(int y = 0; y < params.HOBBY_POOL_SIZE; y++){
+   	    		prop.hobbyFactor[y] = Double.NaN;
+   	    		if(rng.nextDouble(true, true) < params.LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE){  
+   	    			prop.hobbyFactor[y] = rng.nextDouble(true, true);
    	    		}
    	    	}
       	}
    	}
 
+    /*
+     * Apply the personality drift worked out by proposeDrift().
+     */
+    void commitDrift(StepProposal prop){
+        if(!prop.drifts){
+            return;
+        }
+        double distanceI;
+        double distanceD;
+        double increment;
+
+        //For each preference 
+        for(int y = 0; y < params.PREFERENCE_POOL_SIZE; y++){
+            //If we randomly decided to change the attribute
+            if(!Double.isNaN(prop.preferenceFactor[y])){
+                //Calculate the distance between the average attribute and this person's attribute
+                distanceI = prop.preferenceAverage[y] - getPreferenceValue(y);
+                //Calculate an increment by which to change using the distance and a random factor
+                increment = (prop.preferenceFactor[y]*params.DRIFT_DISTANCE) * distanceI;
+                //Set the new preference value to whatever it was before plus the increment
+                setPreferenceValue(y, getPreferenceValue(y) + increment);
+            }
+        }
+
+        //The same process for hobbies
+        for(int y = 0; y < params.HOBBY_POOL_SIZE; y++){
+            if(!Double.isNaN(prop.hobbyFactor[y])){
+                distanceD = prop.hobbyAverage[y] - getHobbyValue(y);
+                increment = (prop.hobbyFactor[y]*params.DRIFT_DISTANCE)*distanceD;
+                setHobbyValue(y, getHobbyValue(y) + increment);
+            }
+        }
+    }
+
 
     /** Removes this student from the university, forcing them to leave all 
-     * groups. */
+     * groups, and cancelling their next scheduled step. */
     public void leaveUniversity( ){
-    	//This removes this person from all of their groups
-    	for(int i=0; i<groups.size( ); i++){
-    		Group group = groups.get(i);
-    		group.removeStudent(this);
+    	enrolled = false;
+    	scheduleHandle.stop( );
+    	//This removes this person from all of their groups (each removal
+    	//shrinks our list, so take from the end)
+    	while(groups.size( ) > 0){
+    		groups.get(groups.size( )-1).removeStudent(this);
     	}
+    	//Give our row of attributes back for some future freshman
+    	sim.decayWheel.forget(slot);
+    	sim.attributes.release(slot);
     }
     
     
     /**
-     * The person whose id (index) is passed has now been tickled, so this
-     * sets the last tickle time for this person to the current time.
+     * The person passed, who is already a friend, has now been tickled, so
+     * this sets the last tickle time for our friendship to the current
+     * time.
      */
-    public void refreshLastTickleTime(int index){
-        lastTickleTime.put(index,Sim.instance().schedule.getTime());
+    public void refreshLastTickleTime(Person friend){
+        double now = sim.schedule.getTime();
+        sim.peopleGraph.setLastTickleTime(this, friend, now);
+        sim.decayWheel.arm(slot, friend.slot, now);
     }
     
+    void decay( ){
+        decay(sim.schedule.getTime());
+    }
+
     /**
-     * Blah, I'm no longer friends with this person, so this completely
-     * removes them from my hashtable (and life.)
+     * Decay this person's friendships as though it were the time passed
+     * (which is normally now; the benchmarks pass a later time, to decay
+     * without stepping everything else).
      */
-    public void resetLastTickleTime(int index){
-        lastTickleTime.remove(index);
-    }
-    
-    private void decay( ){
-        Enumeration<Integer> friendIDs = lastTickleTime.keys();
-        while (friendIDs.hasMoreElements()) {
-            int friendID = friendIDs.nextElement();
-            Edge toRemoveIn = null;
-            Edge toRemoveOut = null;
-            double val = lastTickleTime.get(friendID);
+    void decay(double now){
+        //Only the friendships that could have expired by now are on our
+        //due list (see DecayWheel)
+        sim.decayWheel.advanceTo(now);
+        DecayWheel.EntryList dueList = sim.decayWheel.takeDue(slot);
+        for(int i=0; i<dueList.size; i++){
+            int slotA = dueList.slotA[i];
+            int slotB = dueList.slotB[i];
+            double expiry = dueList.expiry[i];
+            double val = sim.peopleGraph.getLastTickleTime(slotA, slotB);
+            //if they're no longer friends, or have tickled since this entry
+            //was filed, there's nothing to do
+            if(Double.isNaN(val) || val + params.DECAY_THRESHOLD != expiry){
+                continue;
+            }
             //if the people last met longer than the threshold ago
-            if(Sim.instance().schedule.getTime() - val >= DECAY_THRESHOLD){
-                Sim.instance().encounterWriter.println(
-                    Sim.instance().getCurrYearNum()+","+id+","+friendID+
-                        ",decay");
-                Sim.instance().encounterWriter.flush();
-              //Get a bag of all the edges into this person
-              Bag bIn = Sim.peopleGraph.getEdgesIn(this);
-              //for each of these edges
-              for(int j=0; j<bIn.size( ); j++){
-                //look for the person whose id matches the id of the 
-                //person we want to decay
-                Edge edgeIn = (Edge)bIn.get(j);
-                Person otherPerson = (Person) edgeIn.getOtherNode(this);
-                int otherID = otherPerson.getID( );
-                if(otherID == friendID){
-                  //when we find the person, make their edge the one we 
-                  //want to remove
-                  toRemoveIn = edgeIn;
-                  j = bIn.size( );
-                }
-              }
-              //Do the same with the other edges
-              Bag bOut = Sim.peopleGraph.getEdgesOut(this);
-              Person otherPerson = null;
-              //for each of these edges
-              for(int j=0; j<bOut.size( ); j++){
-                //look for the person whose id matches the id of the person 
-                //we want to decay
-                Edge edgeOut = (Edge)bOut.get(j);
-                otherPerson = (Person) edgeOut.getOtherNode(this);
-                int otherID = otherPerson.getID( );
-                if(otherID == friendID){
-                  //when we find the person, make their edge the one we 
-                  //want to remove
-                  toRemoveOut = edgeOut;
-                  otherPerson.resetLastTickleTime(id);
-                  j = bOut.size( );
-                }
-              }
-              //Do we have to do this? Remove the edge in and the edge out?
-              Sim.peopleGraph.removeEdge(toRemoveIn);
-              Sim.peopleGraph.removeEdge(toRemoveOut);
-              resetLastTickleTime(friendID);
+            if(now - val >= params.DECAY_THRESHOLD){
+                Person otherPerson = sim.peopleGraph.getPerson(
+                    slotA == slot ? slotB : slotA);
+                sim.encounters.putInt(sim.getCurrYearNum())
+                    .putInt(id).putInt(otherPerson.id).putSymbol("decay")
+                    .endRow();
+                sim.metrics.count(SimMetrics.Counter.DECAYS);
+                sim.peopleGraph.removeFriend(slotA, slotB);
+            }else{
+                //not quite yet; look again later
+                sim.decayWheel.arm(slotA, slotB, val);
             }
-          }
+        }
+        dueList.clear();
     }
     
-    private void assignAttribute(int numAttr, ArrayList<Double> attr){
+    private void assignAttribute(int numAttr, double[] attr,
+        MersenneTwisterFast rng){
       //boolean okay;
     	System.out.println(numAttr);
       for(int i=0; i<numAttr; i++){
      /*   //pick an attribute to change
-        int index = Sim.instance( ).random.nextInt(poolSize);
+        int index = sim.random.nextInt(poolSize);
         okay = false;
         //while we have not chosen an appropriate index
         while(!okay){
@@ -384,19 +332,20 @@ public class Person implements Steppable {
             okay = true;
           //otherwise, we have to pick a new attribute
           }else{
-            index = Sim.instance( ).random.nextInt(poolSize);
+            index = sim.random.nextInt(poolSize);
           }
         }*/
         //pick a degree to which the person will have this attribute
         //we generate a number between 0 and 1, including 1 but not including 0
-        double degree = Sim.instance( ).random.nextDouble(false, true);
+        double degree = rng.nextDouble(false, true);
         //then we set the attribute at index i to be degree
-        attr.set(i, degree);
+        attr[i] = degree;
       }
     }
     
-    private boolean assignRaceGender(double probability){
-      double gen = Sim.instance( ).random.nextDouble();
+    private boolean assignRaceGender(double probability,
+        MersenneTwisterFast rng){
+      double gen = rng.nextDouble();
       if(gen <= probability){
         return true;
       }else{
@@ -404,29 +353,46 @@ public class Person implements Steppable {
       }
     }
     
-    Person() {
-        this.id = nextPersonId++;
+    Person(Sim sim) {
+        this.sim = sim;
+        this.params = sim.params;
+        this.id = sim.nextPersonId++;
         groups = new ArrayList<Group>( );
+        groupIndex = new IntIntHashMap( );
+        groupmates = new GroupmateSet( );
+        slot = sim.attributes.allocate();
+        hobbies = new HobbyVector(sim.attributes, slot);
+        MersenneTwisterFast rng = sim.streams.get(
+            RandomStreams.Purpose.PERSON_INIT, id,
+            sim.getCurrMonthNum( ));
 
         //Assigning constant attributes
-        for(int i=0; i<CONSTANT_ATTRIBUTE_POOL_SIZE; i++){
-            double rand = Sim.instance( ).random.nextDouble( );
-            constantAttrs.set(i, rand);
+        for(int i=0; i<params.CONSTANT_ATTRIBUTE_POOL_SIZE; i++){
+            double rand = rng.nextDouble( );
+            sim.attributes.setConstant(slot, i, rand);
         }
         //Assigning preferences
-        assignAttribute(NUM_PREFERENCES, preferences);
+        double[] initial = new double[params.NUM_PREFERENCES];
+        assignAttribute(params.NUM_PREFERENCES, initial, rng);
+        for(int i=0; i<params.NUM_PREFERENCES; i++){
+            sim.attributes.setPreference(slot, i, initial[i]);
+        }
         //Assigning hobbies
-        assignAttribute(NUM_HOBBIES, hobbies);
+        initial = new double[params.NUM_HOBBIES];
+        assignAttribute(params.NUM_HOBBIES, initial, rng);
+        for(int i=0; i<params.NUM_HOBBIES; i++){
+            hobbies.setRaw(i, initial[i]);
+        }
         //
         //Assign a race   
-        boolean white = assignRaceGender(PROBABILITY_WHITE);
+        boolean white = assignRaceGender(params.PROBABILITY_WHITE, rng);
         if(white){
             race = Race.WHITE;
         }else{
             race = Race.MINORITY;
         }
         //Assign a gender
-        boolean female = assignRaceGender(PROBABILITY_FEMALE);
+        boolean female = assignRaceGender(PROBABILITY_FEMALE, rng);
         if(female){
             gender = Gender.FEMALE;
         }else{
@@ -443,34 +409,37 @@ public class Person implements Steppable {
    * already be friends with that person. Determine whether these two will
    * become friends, and if so, make them so. */
   public void meet(Person personToMeet){
-    double similarity;
-    boolean friends = false;
-    int personToMeetID = personToMeet.getID( );
     //Calculate their similarity rating, and then see if they should become 
     //friends
-    similarity = similarityTo(personToMeet);
-    friends = becomeFriends(similarity);
-    if (race==personToMeet.race) {
-      Sim.instance().similarityWriter.println(
-          Sim.instance().getCurrYearNum()+","+race+","+similarity+","+friends);
-    } else {
-      Sim.instance().similarityWriter.println(
-          Sim.instance().getCurrYearNum()+",MIXED,"+similarity+","+friends);
-    }
-    Sim.instance().similarityWriter.flush();
+    double similarity = similarityTo(personToMeet);
+    // (A separate stream for each person met, since there may be several
+    // such meetings in a month.)
+    MersenneTwisterFast rng = sim.streams.get(RandomStreams.Purpose.MEET,
+        id, sim.getCurrMonthNum( ), personToMeet.id);
+    boolean friends = becomeFriends(similarity, rng);
+    commitMeet(personToMeet, similarity, friends);
+  }
+
+  // Record a meeting whose outcome has already been decided, and if they
+  // become friends, make them so.
+  private void commitMeet(Person personToMeet, double similarity,
+      boolean friends){
+    int yearNum = sim.getCurrYearNum();
+    sim.metrics.count(SimMetrics.Counter.MEETS);
+    sim.similarity.putInt(yearNum)
+        .putSymbol(race==personToMeet.race ? race.name() : "MIXED")
+        .putDouble(similarity).putBoolean(friends).endRow();
     //if they become friends, add their edge to the network
     //and reset when they met
     if(friends){
         makeFriends(personToMeet);
-        Sim.instance().encounterWriter.println(
-            Sim.instance().getCurrYearNum()+","+id+","+personToMeet.id+
-                ",meetFriends");
+        sim.metrics.count(SimMetrics.Counter.FRIENDSHIPS_FORMED);
+        sim.encounters.putInt(yearNum).putInt(id).putInt(personToMeet.id)
+            .putSymbol("meetFriends").endRow();
     } else {
-        Sim.instance().encounterWriter.println(
-            Sim.instance().getCurrYearNum()+","+id+","+personToMeet.id+
-                ",meetNoFriends");
+        sim.encounters.putInt(yearNum).putInt(id).putInt(personToMeet.id)
+            .putSymbol("meetNoFriends").endRow();
     }
-    Sim.instance().encounterWriter.flush();
   }
 
   /**
@@ -478,75 +447,148 @@ public class Person implements Steppable {
    * presumed to <i>already</i> be friends with the person. ("Tickle"
    * essentially means "refresh their friendship.") */
   public void tickle(Person person){
-    Sim.instance().encounterWriter.println(
-        Sim.instance().getCurrYearNum()+","+id+","+person.id+",tickle");
-    Sim.instance().encounterWriter.flush();
+    sim.metrics.count(SimMetrics.Counter.TICKLES);
+    sim.encounters.putInt(sim.getCurrYearNum()).putInt(id)
+        .putInt(person.id).putSymbol("tickle").endRow();
 
     //reset when the two last encountered each other
-    int tickleID = person.getID( );
-    refreshLastTickleTime(tickleID);
-    person.refreshLastTickleTime(id);
+    refreshLastTickleTime(person);
   }
   
   /**
    * Make this person encounter some number of other people from the given
    * pool. Note that the pool could be group membership, the entire campus,
    * and so on. Choose a person from the pool at random. If the two are
-   * already friends, tickle the friendship. Otherwise, meet this person. Do
-   * this until we have encountered the appropriate number of friends.*/
-  private void encounter(int number, Bag pool){
+   * already friends (or are about to be, thanks to an earlier encounter in
+   * this proposal), tickle the friendship. Otherwise, meet this person. Do
+   * this until we have encountered the appropriate number of friends.
+   * (Nothing changes until commitEncounters().) */
+  private void encounter(int number, Bag pool, StepProposal prop,
+      MersenneTwisterFast rng){
     if(pool.size( ) < number){
       number = pool.size( );
     }
     for(int i=0; i<number; i++){
       Person personToMeet;
       do{
-        personToMeet = (Person) 
-            pool.get(Sim.instance( ).random.nextInt(pool.size( )));
+        personToMeet = (Person) pool.get(rng.nextInt(pool.size( )));
       }while(personToMeet.id == id);
-      if(friendsWith(personToMeet)){
-        tickle(personToMeet);
+      if(friendsWith(personToMeet) || prop.befriends(personToMeet)){
+        prop.addTickle(personToMeet);
+      }else{
+        double similarity = similarityTo(personToMeet);
+        prop.addMeet(personToMeet, similarity,
+            becomeFriends(similarity, rng));
+      }
+    }
+  }
+
+  /**
+   * Work out this month's encounters (see {@link #step(SimState)}) in the
+   * proposal passed, drawing random numbers from the generator passed, but
+   * without changing anything.
+   */
+  void proposeEncounters(StepProposal prop, MersenneTwisterFast rng){
+    Bag peopleBag = sim.peopleGraph.getAllNodes( );
+    //Get a bag of all the people in the groups
+    Bag groupBag = getPeopleInGroups( );
+    if(groupBag.size( ) > 1){
+        encounter(params.NUM_TO_MEET_GROUP, groupBag, prop, rng);
+    }
+    //Get a bag of all the people and then encounter some number of those 
+    //people
+    if(peopleBag.size( ) > 1){
+        encounter(params.NUM_TO_MEET_POP, peopleBag, prop, rng);
+    }
+  }
+
+  /**
+   * Work out this month's personality drift (see {@link #step(SimState)})
+   * in the proposal passed, as though its encounters had already been
+   * committed, but without changing anything.
+   */
+  void proposeDriftAfter(StepProposal prop, MersenneTwisterFast rng){
+    Bag b = sim.peopleGraph.getFriends(this);
+    for(int i=0; i<prop.numEvents; i++){
+      if(prop.kinds[i] == StepProposal.MEET_FRIENDS  &&
+          !friendsWith(prop.others[i])){
+        b.add(prop.others[i]);
+      }
+    }
+    proposeDrift(b, prop, rng);
+  }
+
+  /**
+   * Apply the encounters worked out by proposeEncounters(): log them, make
+   * new friends, and tickle old ones.
+   */
+  void commitEncounters(StepProposal prop){
+    for(int i=0; i<prop.numEvents; i++){
+      // (When the phase runs in parallel, someone we proposed to meet may
+      // have become our friend since, by their own commit; if so, it's a
+      // tickle, just as it would have been had we stepped after them.)
+      if(prop.kinds[i] == StepProposal.TICKLE ||
+          friendsWith(prop.others[i])){
+        tickle(prop.others[i]);
       }else{
-        meet(personToMeet);
+        commitMeet(prop.others[i], prop.similarities[i],
+            prop.kinds[i] == StepProposal.MEET_FRIENDS);
       }
     }
   }
+
+  /**
+   * Make sure that everything other people might read about this person
+   * while proposing in parallel is already computed, so that reading it
+   * doesn't write anything.
+   */
+  void prepareForParallelReads( ){
+    hobbies.normalizedData( );
+  }
   
     /**
      * Make this person perform one month's actions. These include:
      * <ol>
-     * <li>Encounter {@link #NUM_TO_MEET_GROUP} other people who are members
-     * of one or more of their current groups.</li>
-     * <li>Encounter {@link #NUM_TO_MEET_POP} other people from the student
-     * body at large (who may or may not be members of their current
-     * groups.)</li>
+     * <li>Encounter {@link SimParameters#NUM_TO_MEET_GROUP} other people who
+     * are members of one or more of their current groups.</li>
+     * <li>Encounter {@link SimParameters#NUM_TO_MEET_POP} other people from
+     * the student body at large (who may or may not be members of their
+     * current groups.)</li>
      * <li>Personality drift.</li>
      * <li>Decay this user's existing friendships to reflect the passage of
      * time.</li>
      * </ol>
      * After this, the Person reschedules itself for the next month (or
      * August, if it's coming up on summertime.)
-     * <p>Note that Persons only step during academic months.</p>
+     * <p>Note that Persons only step during academic months, and that when
+     * the Person phase runs in parallel (see {@link PersonPhase}), this
+     * method isn't used at all.</p>
      */
     public void step(SimState state){
         System.out.println("#### PERSON " + id + " (" +
              state.schedule.getTime() + ")");
-        Bag peopleBag = Sim.peopleGraph.getAllNodes( );
-        if(!peopleBag.contains(this)){
+        if(!enrolled){
             return;
         }
-        //Get a bag of all the people in the groups
-        Bag groupBag = getPeopleInGroups( );
-        if(groupBag.size( ) > 1){
-            encounter(NUM_TO_MEET_GROUP, groupBag);
-        }
-        //Get a bag of all the people and then encounter some number of those 
-        //people
-        if(peopleBag.size( ) > 1){
-            encounter(NUM_TO_MEET_POP, peopleBag);
+        long start = SimMetrics.startTimer();
+        SimEvents.PersonStep event = null;
+        if (id % params.JFR_SAMPLE_EVERY == 0) {
+            event = new SimEvents.PersonStep();
+            event.begin();
         }
+        //We're stepping on our own, so make each proposal and then commit
+        //it straight away
+        StepProposal prop = sim.sequentialProposal;
+        prop.clear( );
+        long month = sim.getCurrMonthNum( );
+        sim.startingMonth(month);
+        proposeEncounters(prop, sim.streams.get(
+            RandomStreams.Purpose.ENCOUNTER, id, month));
+        commitEncounters(prop);
 
-        personalityDrift( );
+        proposeDrift(sim.peopleGraph.getFriends(this), prop, sim.streams.get(
+            RandomStreams.Purpose.DRIFT, id, month));
+        commitDrift(prop);
         
         //NOTE: Decay only matters if the people are friends- you can't decay a
         //friendship that doesn't exist. So, the time they last met only
@@ -557,117 +599,93 @@ public class Person implements Steppable {
         //become friends by brute force)
         //Now we want to see if any of the friendships have decayed
         decay( );
+        sim.metrics.stopTimer(SimMetrics.Timer.PERSON_STEP, start);
+        if (event != null  &&  event.shouldCommit()) {
+            event.person = id;
+            event.month = month;
+            event.encounters = prop.numEvents;
+            event.friends = sim.peopleGraph.getDegree(this);
+            event.commit();
+        }
 
-        if (Sim.instance().nextMonthInAcademicYear()) {
+        if (sim.nextMonthInAcademicYear()) {
             // It's not the end of the academic year yet. Run again
             // next month.
-            Sim.instance( ).schedule.scheduleOnceIn(1, this);
+            scheduleOnceIn(1);
         } else {
-            if (!Sim.instance().isLastYearOfSim()) {
+            if (!sim.isLastYearOfSim()) {
                 // It's summer break! Sleep for the summer.
-                Sim.instance( ).schedule.scheduleOnceIn(
-                        Sim.NUM_MONTHS_IN_SUMMER + 1, this);
+                scheduleOnceIn(Sim.NUM_MONTHS_IN_SUMMER + 1);
             }
         }
     }
 
-    public static void printHeaderToFile(BufferedWriter writer) {
-        try {
-            writer.write("period,id,numFriends,numGroups,race,gender,alienation,yearInSchool\n");
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    /**
+     * Schedule this person to step once, the number of months passed from
+     * now. (If they leave the university in the meantime, the step is
+     * cancelled.)
+     */
+    void scheduleOnceIn(double delta){
+        sim.schedule.scheduleOnceIn(delta, scheduleHandle);
     }
+
+    /** Returns true if this person is still a student (<i>i.e.</i>, has not
+     * graduated or dropped out). */
+    public boolean isEnrolled( ){
+        return enrolled;
+    }
+
     /**
      * Output diagnostic and statistical information about this Person to
-     * the writer passed.
+     * the table passed (laid out like {@link TableSchema#PEOPLE}).
      */
-    public void printToFile(BufferedWriter writer) {
-        String message = Sim.instance().getCurrYearNum() + "," + 
-            Integer.toString(id) + ",";
-        Bag b = Sim.peopleGraph.getEdgesIn(this);
-        int numFriends = b.size( );
-        message = message + Integer.toString(numFriends) + ","
-            + Integer.toString(groups.size( )) + "," + race + "," + gender + ","
-            + this.getAlienation( ) +  "," + year + "\n";
-        try {
-            writer.write(message);
-            writer.flush();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    public void printToFile(TableWriter table) {
+        int numFriends = sim.peopleGraph.getDegree(this);
+        table.putInt(sim.getCurrYearNum()).putInt(id)
+            .putInt(numFriends).putInt(groups.size( ))
+            .putSymbol(race.name()).putSymbol(gender.name())
+            .putDouble(this.getAlienation( )).putInt(year).endRow();
     }
     
     /**
-     * Output friendship information.
+     * Output friendship information (to a table laid out like {@link
+     * TableSchema#FRIENDSHIPS}).
      */
-    public void printFriendsToFile(BufferedWriter writer) {
-        String message = "";
-        Bag b = Sim.peopleGraph.getEdgesIn(this);
-        for (int i=0; i<b.size( ); i++) {
-        	Person friend = (Person) ((Edge)b.get(i)).getOtherNode(this);
-        	//We only document the friendship if the other person's id is greater
-        	//otherwise, the friendship edge was already documented
-        	message = message + Sim.instance().getCurrYearNum() + "," +
-                this.getID( ) + "," + friend.getID( ) + "\n";
-        }
-        //We'll only try to write if there are actually friends
-        if(b.size( ) > 0){
-        	try {
-        		writer.write(message);
-        	} catch (Exception e) {
-        		e.printStackTrace();
+    public void printFriendsToFile(TableWriter table) {
+        int yearNum = sim.getCurrYearNum();
+        int n = sim.peopleGraph.getFriendTableLength(this);
+        for (int i=0; i<n; i++) {
+        	Person friend = sim.peopleGraph.getFriendAt(this, i);
+        	if (friend != null) {
+        	    table.putInt(yearNum).putInt(this.getID( ))
+        	        .putInt(friend.getID( )).endRow();
         	}
         }
     }
 
     private boolean friendsWith(Person other) {
-      Bag b = Sim.peopleGraph.getEdgesIn(this);
-        for (int i=0; i<b.size(); i++) {
-            Person otherSideOfThisEdge = 
-                (Person) ((Edge)b.get(i)).getOtherNode(this);
-            if (other.id == otherSideOfThisEdge.id) {
-                return true;
-            }
-        }
-        return false;
+        return sim.peopleGraph.friendsWith(this, other);
     }
     
-    private boolean met(Person other){
-      int otherID = other.getID( );
-      if(lastTickleTime.get(otherID) == -1){
-        return false;
-      }else{
-        return true;
-      }
-    }
-
-    public void printPreferencesToFile(BufferedWriter writer) {
-        String message = Sim.instance().getCurrYearNum() + "," + 
-            this.getID( ) + ",";
-        Bag b = Sim.peopleGraph.getEdgesIn(this);
-        int numFriends = b.size( );
-        message = message + numFriends + "," + race + "," + this.getAlienation() + "," + year + "\n";
-        try {
-          writer.write(message);
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
+    public void printPreferencesToFile(TableWriter table) {
+        table.putInt(sim.getCurrYearNum()).putInt(getID())
+            .putInt(sim.peopleGraph.getDegree(this)).putSymbol(race.name())
+            .putDouble(getAlienation()).putInt(year).endRow();
     }
 
     public void printChangeToFile(BufferedWriter writer) {
         double prefAverage=0;
         double hobbyAverage=0;
         String message = "";
-        for(int x = 0; x < NUM_PREFERENCES; x++){
-          prefAverage += Math.abs(preferences.get(x) - preferencesYear0.get(x));
+        for(int x = 0; x < params.NUM_PREFERENCES; x++){
+          prefAverage += Math.abs(getPreferenceValue(x) - preferencesYear0[x]);
         }
-        prefAverage=prefAverage/NUM_PREFERENCES;
-        for(int x = 0; x < NUM_HOBBIES; x++){
-          hobbyAverage += Math.abs(hobbies.get(x) - hobbiesYear0.get(x));
+        prefAverage=prefAverage/params.NUM_PREFERENCES;
+        for(int x = 0; x < params.NUM_HOBBIES; x++){
+          hobbyAverage += Math.abs(hobbies.getRaw(x) - hobbiesYear0[x]);
         }
-        hobbyAverage=hobbyAverage/NUM_HOBBIES;
-        message = message + getID() + " " + extroversion + " " + Sim.peopleGraph.getEdgesIn(this).size() + " " + groups.size() + " " + hobbyAverage + " " + prefAverage + "\n";
+        hobbyAverage=hobbyAverage/params.NUM_HOBBIES;
+        message = message + getID() + " " + extroversion + " " + sim.peopleGraph.getDegree(this) + " " + groups.size() + " " + hobbyAverage + " " + prefAverage + "\n";
         try {
           writer.write(message);
         } catch (Exception e) {
@@ -676,13 +694,13 @@ public class Person implements Steppable {
     }
 
     public String toString() {
-        Bag b = Sim.peopleGraph.getEdgesIn(this);
+        Bag b = sim.peopleGraph.getFriends(this);
         if (b.size() == 0) {
             return "Person " + id + " (lonely with no friends)";
         }
         String retval = "Person " + id + " (friends with ";
         for (int i=0; i<b.size(); i++) {
-            retval += ((Person)(((Edge)b.get(i)).getOtherNode(this))).id;
+            retval += ((Person) b.get(i)).id;
             if (i == b.size()-1) {
                 retval += ")";
             } else {
@@ -695,6 +713,12 @@ public class Person implements Steppable {
     public int getID( ){
       return id;
     }
+
+    // This person's row in sim.attributes, which also keys them in
+    // sim.peopleGraph.
+    int getSlot( ){
+      return slot;
+    }
   
   public Race getRace( ){
 	  return race;
@@ -708,17 +732,44 @@ public class Person implements Steppable {
     return extroversion;
   }
   
+  /** Makes this Person a member of the Group passed. (Same as {@link
+   * edu.umw.cpsc.collegesim.Group#addStudent(Person)}.) */
   void joinGroup(Group group){
-    groups.add(group);
+    group.addStudent(this);
   }
   
   boolean isStudentInGroup(Group group){
-    for(int x = 0; x<groups.size( ); x++){
-      if(groups.get(x).getID( ) == group.getID( )){
-        return true;
-      }
+    return groupIndex.containsKey(group.getID( ));
+  }
+
+  // The number of groups we're in, and each in turn (in no particular
+  // order), for GroupPhase.
+  int getNumGroups( ){
+    return groups.size( );
+  }
+
+  Group getGroup(int x){
+    return groups.get(x);
+  }
+
+  // Our half of Group.addStudent(). Don't call from anywhere else.
+  void addedToGroup(Group group){
+    groupIndex.put(group.getID( ), groups.size( ));
+    groups.add(group);
+  }
+
+  // Our half of Group.removeStudent(). Don't call from anywhere else.
+  void removedFromGroup(Group group){
+    int x = groupIndex.get(group.getID( ), -1);
+    if(x == -1){
+      return;
     }
-    return false;
+    Group last = groups.remove(groups.size( )-1);
+    if(last != group){
+      groups.set(x, last);
+      groupIndex.put(last.getID( ), x);
+    }
+    groupIndex.remove(group.getID( ));
   }
     
     /**
@@ -731,15 +782,13 @@ public class Person implements Steppable {
         // even it out by removing one.
     }
 
-    // for doubles
-    private double attrCounter(int num, ArrayList<Double> attr1, 
-        ArrayList<Double> attr2){
-    	
-    	double dissimilarity = 0.0;
+    // for doubles; each attr array is a row-major matrix of rows num long,
+    // and off1/off2 are the starting indices of the two rows to compare
+    private double attrCounter(int num, double[] attr1, int off1,
+        double[] attr2, int off2){
     	
-    	for(int i = 0; i < num; i++){
-    		dissimilarity += Math.abs(attr1.get(i)-attr2.get(i));
-    	}
+    	double dissimilarity = SIMILARITY_KERNEL.l1Distance(attr1, off1,
+    	    attr2, off2, num);
 
     	//return the similarity rating
     	return (num - dissimilarity);
@@ -752,18 +801,23 @@ public class Person implements Steppable {
       double similarity = 0.0;
       
       //Kind 1: Constant
-      double constantCount = attrCounter(CONSTANT_ATTRIBUTE_POOL_SIZE,
-        constantAttrs, other.constantAttrs);
+      double[] constants = sim.attributes.constantData();
+      double constantCount = attrCounter(params.CONSTANT_ATTRIBUTE_POOL_SIZE,
+        constants, slot * params.CONSTANT_ATTRIBUTE_POOL_SIZE,
+        constants, other.slot * params.CONSTANT_ATTRIBUTE_POOL_SIZE);
       
       //Kind 2: Preferences
-      double prefCount = attrCounter(PREFERENCE_POOL_SIZE, preferences, 
-        other.preferences);
+      double[] prefs = sim.attributes.preferenceData();
+      double prefCount = attrCounter(params.PREFERENCE_POOL_SIZE,
+        prefs, slot * params.PREFERENCE_POOL_SIZE,
+        prefs, other.slot * params.PREFERENCE_POOL_SIZE);
       
       //Kind 3: Hobbies
-      ArrayList<Double> normalK3This = normalize(hobbies);
-      ArrayList<Double> normalK3Other = normalize(other.hobbies);
-      double hobbyCount = attrCounter(HOBBY_POOL_SIZE, normalK3This, 
-        normalK3Other);
+      double[] normalK3This = hobbies.normalizedData();
+      double[] normalK3Other = other.hobbies.normalizedData();
+      double hobbyCount = attrCounter(params.HOBBY_POOL_SIZE,
+        normalK3This, hobbies.offset(),
+        normalK3Other, other.hobbies.offset());
       
         //Do they have the same race?
         int raceCount = 0;
@@ -778,19 +832,19 @@ public class Person implements Steppable {
         //Calculate their similarity rating, taking importance of each 
         //category (the weight) into account
       similarity = (constantCount * CONST_WEIGHT) + (prefCount * PREF_WEIGHT)
-          + (hobbyCount * HOBBY_WEIGHT) + (raceCount * RACE_WEIGHT) 
+          + (hobbyCount * HOBBY_WEIGHT) + (raceCount * params.RACE_WEIGHT) 
           + (genCount * GEN_WEIGHT);
-      double maxRating = (CONSTANT_ATTRIBUTE_POOL_SIZE * CONST_WEIGHT) 
-          + (PREFERENCE_POOL_SIZE * PREF_WEIGHT)
-          + (HOBBY_POOL_SIZE * HOBBY_WEIGHT) + RACE_WEIGHT + GEN_WEIGHT;
+      double maxRating = (params.CONSTANT_ATTRIBUTE_POOL_SIZE * CONST_WEIGHT) 
+          + (params.PREFERENCE_POOL_SIZE * PREF_WEIGHT)
+          + (params.HOBBY_POOL_SIZE * HOBBY_WEIGHT) + params.RACE_WEIGHT + GEN_WEIGHT;
       return similarity / maxRating;
     
     }
     
-  private boolean becomeFriends(double similarity){
+  private boolean becomeFriends(double similarity, MersenneTwisterFast rng){
     double acceptProb = 
-        FRIENDSHIP_COEFFICIENT * similarity + FRIENDSHIP_INTERCEPT;
-    double friendProb = Sim.instance( ).random.nextDouble( );
+        params.FRIENDSHIP_COEFFICIENT * similarity + params.FRIENDSHIP_INTERCEPT;
+    double friendProb = rng.nextDouble( );
     if(friendProb <= acceptProb){
       return true;
     }else{
@@ -798,25 +852,12 @@ public class Person implements Steppable {
     }
   }
   
-  private ArrayList<Double> normalize(ArrayList<Double> attr){
-    ArrayList<Double> normal = new ArrayList<Double>(
-        Collections.nCopies(HOBBY_POOL_SIZE, 0.0));
-    double sum = 0.0;
-    for(int i=0; i<HOBBY_POOL_SIZE; i++){
-        sum = sum + attr.get(i);
-      }
-    for(int i=0; i<HOBBY_POOL_SIZE; i++){
-        double valThis = attr.get(i)/sum;
-        normal.set(i,valThis);
-      }
-    return normal;
-  }
+
   
   
   public double getAlienation( ){
 	  //Get the number of friends this person has
-	  Bag bIn = Sim.peopleGraph.getEdgesIn(this);
-	  int numFriends = bIn.size( );
+	  int numFriends = sim.peopleGraph.getDegree(this);
 	  //Find the percent of the population with which this person is friends
 	  //int totalPeople = Sim.getNumPeople( );
 	  double requiredNumFriends = 3.0;
@@ -833,23 +874,45 @@ public class Person implements Steppable {
   
   
   /** Returns a list of doubles, one for each of the {@link
-   * #HOBBY_POOL_SIZE} possible hobbies. This will indicate
+   * SimParameters#HOBBY_POOL_SIZE} possible hobbies. This will indicate
    * the degree to which the person possesses each of those attributes (0.0
    * = does not have that attribute at all.) */
   public ArrayList<Double> getHobbies(){
-    return normalize(hobbies);
+    ArrayList<Double> normal = new ArrayList<Double>(params.HOBBY_POOL_SIZE);
+    for(int i=0; i<params.HOBBY_POOL_SIZE; i++){
+        normal.add(hobbies.get(i));
+    }
+    return normal;
+  }
+
+  /** Returns the (normalized) value of the hobby whose index is passed.
+   * (Equivalent to <code>getHobbies().get(index)</code>, without building
+   * the list.) */
+  public double getHobbyValue(int index){
+    return hobbies.get(index);
   }
   
   /** Returns a list of doubles, one for each of the {@link
-   * #PREFERENCE_POOL_SIZE} possible preferences. */
+   * SimParameters#PREFERENCE_POOL_SIZE} possible preferences. */
   public ArrayList<Double> getPreferences(){
-    return preferences;
+    ArrayList<Double> prefs = new ArrayList<Double>(params.PREFERENCE_POOL_SIZE);
+    for(int i=0; i<params.PREFERENCE_POOL_SIZE; i++){
+        prefs.add(sim.attributes.getPreference(slot, i));
+    }
+    return prefs;
+  }
+
+  /** Returns the value of the preference whose index is passed. (Equivalent
+   * to <code>getPreferences().get(index)</code>, without building the
+   * list.) */
+  public double getPreferenceValue(int index){
+    return sim.attributes.getPreference(slot, index);
   }
 
   /** Sets the value of the preference whose index is passed to the value
    * passed. */
   public void setPreferenceValue(int index, double val){
-      preferences.set(index, val); 
+      sim.attributes.setPreference(slot, index, val); 
   }
 
   /** Sets the value of the hobby whose index is passed to the value passed.
@@ -858,49 +921,50 @@ public class Person implements Steppable {
   public void setHobbyValue(int index, double val){
     //this functions says I want the normalized value of attribute index to be
     //val
-    double sum = 0.0;
-    //Take the sum of all of the other non-normalized values
-    for(int i=0; i<HOBBY_POOL_SIZE; i++){ if(index != i){ sum = sum +
-    hobbies.get(i); } } double newNonNormalVal = (val * sum)/(1-val);
-    hobbies.set(index, newNonNormalVal); }
+    hobbies.setNormalized(index, val);
+  }
 
 
     /**
      * Returns the union of all the students who are in at least one of
-     * this student's groups.
+     * this student's groups. (This is kept up to date as groups change, 
+     * rather than computed, so don't modify it.)
      */
   public Bag getPeopleInGroups( ){
-    boolean repeat = false;
-    Bag groupmates = new Bag();
-    for(int x = 0; x < groups.size( ); x++){
-      for(int y = 0; y < groups.get(x).getSize(); y++){
-        for(int z = 0; z < groupmates.size(); z++){
-          if(groups.get(x).getPersonAtIndex(y).id == ((Person) groupmates.get(z)).id){
-            repeat = true;    //student is already in this bag, don't add again
-          }
-        }
-        if(!repeat){
-          groupmates.add(groups.get(x).getPersonAtIndex(y));
-        }
-        repeat = false;
-      }
-    }
+    return groupmates.asBag( );
+  }
+
+  // The set behind getPeopleInGroups(), for Group to maintain.
+  GroupmateSet getGroupmates( ){
     return groupmates;
   }
 
-    /** Marks this Person as no longer being a member of the Group passed.
-     * Should <i>not</i> be called in isolation, else the Group object will
-     * still think the Person is a member! See {@link
-     * edu.umw.cpsc.collegesim.Group#removeEveryoneFromGroup()}.
+  /*
+   * Writes our groups and groupmates, which aren't written along with the
+   * rest of us: if they were, writing one Person would write their
+   * groupmates, and theirs, and so on, as deep as the whole student body.
+   * Instead, the Sim writes every Person and Group first, and then all
+   * their links, which by then just refer back to them.
+   */
+  void writeLinks(ObjectOutputStream out) throws IOException {
+    out.writeObject(groups);
+    out.writeObject(groupmates);
+  }
+
+  // Reads what writeLinks() wrote.
+  @SuppressWarnings("unchecked")
+  void readLinks(ObjectInputStream in) throws IOException,
+      ClassNotFoundException {
+    groups = (ArrayList<Group>) in.readObject();
+    groupmates = (GroupmateSet) in.readObject();
+  }
+
+    /** Marks this Person as no longer being a member of the Group passed,
+     * and vice versa. (Same as {@link
+     * edu.umw.cpsc.collegesim.Group#removeStudent(Person)}.)
      */
     public void leaveGroup(Group g){
-        for(int x = 0; x<groups.size(); x++){
-          if(groups.get(x).getID( ) == g.getID( )){
-              //MONTY PYTHON'S HOLY GRAIL RIGHT HERE
-              groups.get(x).removeStudent(this);
-            groups.remove(x);
-          }
-        }
+        g.removeStudent(this);
       }
 
     /** Sets the school year (1=freshman, 2=sophomore, etc.) of this
@@ -909,17 +973,17 @@ public class Person implements Steppable {
     year = x;
     //store initial attributes
     if(year==1){
-      preferencesYear0=new ArrayList<Double>(preferences);
-      hobbiesYear0=new ArrayList<Double>(hobbies);
+      preferencesYear0=sim.attributes.copyPreferences(slot);
+      hobbiesYear0=sim.attributes.copyHobbies(slot);
     }else if(year==2){
-      preferencesYear1=new ArrayList<Double>(preferences);
-      hobbiesYear1=new ArrayList<Double>(hobbies);
+      preferencesYear1=sim.attributes.copyPreferences(slot);
+      hobbiesYear1=sim.attributes.copyHobbies(slot);
     }else if(year==3){
-      preferencesYear2=new ArrayList<Double>(preferences);
-      hobbiesYear2=new ArrayList<Double>(hobbies);
+      preferencesYear2=sim.attributes.copyPreferences(slot);
+      hobbiesYear2=sim.attributes.copyHobbies(slot);
     }else if(year==4){
-      preferencesYear3=new ArrayList<Double>(preferences);
-      hobbiesYear3=new ArrayList<Double>(hobbies);
+      preferencesYear3=sim.attributes.copyPreferences(slot);
+      hobbiesYear3=sim.attributes.copyHobbies(slot);
     }
   }
 
@@ -934,20 +998,20 @@ public class Person implements Steppable {
      * performed). */
   public void incrementYear(){
     if(year==1){
-      preferencesYear1=new ArrayList<Double>(preferences);
-      hobbiesYear1=new ArrayList<Double>(hobbies);
+      preferencesYear1=sim.attributes.copyPreferences(slot);
+      hobbiesYear1=sim.attributes.copyHobbies(slot);
     }else if(year==2){
-      preferencesYear2=new ArrayList<Double>(preferences);
-      hobbiesYear2=new ArrayList<Double>(hobbies);
+      preferencesYear2=sim.attributes.copyPreferences(slot);
+      hobbiesYear2=sim.attributes.copyHobbies(slot);
     }else if(year==3){
-      preferencesYear3=new ArrayList<Double>(preferences);
-      hobbiesYear3=new ArrayList<Double>(hobbies);
+      preferencesYear3=sim.attributes.copyPreferences(slot);
+      hobbiesYear3=sim.attributes.copyHobbies(slot);
     }
     year++;
   }
 
   public boolean hasFullData(){
-    if(preferencesYear0!=null&&preferencesYear1!=null&&preferencesYear3!=null&&preferences!=null&&hobbiesYear0!=null&&hobbiesYear1!=null&&hobbiesYear3!=null&&hobbies!=null){
+    if(preferencesYear0!=null&&preferencesYear1!=null&&preferencesYear3!=null&&hobbiesYear0!=null&&hobbiesYear1!=null&&hobbiesYear3!=null){
       return true;
     }else{
       return false;
@@ -955,17 +1019,21 @@ public class Person implements Steppable {
   }
 
     private void makeFriends(Person newFriend) {
-        Sim.peopleGraph.addEdge(this, newFriend, 1);
-        refreshLastTickleTime(newFriend.id);
-        newFriend.refreshLastTickleTime(id);
+        double now = sim.schedule.getTime();
+        sim.peopleGraph.addFriend(this, newFriend, now);
+        sim.decayWheel.arm(slot, newFriend.slot, now);
     }
 
-    void forceAddRandomOppRaceFriend() {
-        Bag peopleBag = Sim.peopleGraph.getAllNodes( );
+    /**
+     * Make this person friends with a random student of the other race,
+     * chosen using the generator passed.
+     */
+    void forceAddRandomOppRaceFriend(MersenneTwisterFast rng) {
+        Bag peopleBag = sim.peopleGraph.getAllNodes( );
         Person forcedFriend;
         do{
           forcedFriend = (Person) 
-              peopleBag.get(Sim.instance( ).random.nextInt(peopleBag.size( )));
+              peopleBag.get(rng.nextInt(peopleBag.size( )));
         }while(forcedFriend.id == id  || 
             forcedFriend.race == race  ||
             friendsWith(forcedFriend));
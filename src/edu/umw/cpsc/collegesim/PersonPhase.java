@@ -0,0 +1,124 @@
+package edu.umw.cpsc.collegesim;
+
+import java.util.ArrayList;
+
+import sim.engine.*;
+
+
+/**
+ * Steps every student at once, in parallel, in place of each {@link Person}
+ * scheduling and stepping themselves. Used only when {@link
+ * SimParameters#PERSON_THREADS} is positive.
+ * <p></p>
+ * Each month, at the time the Persons would have stepped:
+ * <ol>
+ * <li><b>Propose</b>, in parallel: every student works out their
+ * encounters and personality drift in a {@link StepProposal}, reading the
+ * simulation as it stood at the start of the month and writing nothing
+ * shared. Each student draws from their own {@link RandomStreams}, so
+ * what they draw doesn't depend on which thread proposed for them.</li>
+ * <li><b>Commit</b>, one at a time, in the order of {@link Sim#getPeople()}:
+ * first everyone's encounters (new friendships and tickles), then
+ * everyone's drift, then everyone's friendship decay.</li>
+ * </ol>
+ * Since nothing a proposal depends on is affected by which thread made it,
+ * or when, the results for a given seed are the same however many threads
+ * are used. (They are <i>not</i> the same as when Persons step one at a
+ * time, since nobody sees anybody else's encounters from the same month
+ * until the commit.)
+ */
+public class PersonPhase extends ParallelPhase {
+
+    private static final long serialVersionUID = 1L;
+
+    // Indexed like this month's list of students; reused from month to
+    // month.
+    private StepProposal[] proposals = new StepProposal[0];
+
+    /**
+     * Constructs a Person phase that uses the number of threads passed.
+     */
+    public PersonPhase(int numThreads) {
+        super(numThreads, "PersonPhase");
+    }
+
+    /**
+     * Step every enrolled student once, as described above, and then
+     * reschedule for the next month (or August, if it's coming up on
+     * summertime).
+     */
+    public void step(SimState state) {
+        final Sim sim = (Sim) state;
+        double now = state.schedule.getTime();
+        System.out.println("#### PERSON PHASE (" + now + ")");
+        long start = SimMetrics.startTimer();
+        SimEvents.Phase event = new SimEvents.Phase();
+        event.begin();
+        final ArrayList<Person> people =
+            new ArrayList<Person>(sim.getPeople());
+        final long month = (long) Math.floor(now);
+        final int sampleEvery = sim.params.JFR_SAMPLE_EVERY;
+        sim.startingMonth(month);
+
+        if (proposals.length < people.size()) {
+            StepProposal[] bigger = new StepProposal[people.size() * 2];
+            System.arraycopy(proposals, 0, bigger, 0, proposals.length);
+            for (int i = proposals.length; i < bigger.length; i++) {
+                bigger[i] = new StepProposal();
+            }
+            proposals = bigger;
+        }
+
+        // Anything computed lazily must be computed now, before it's read
+        // from several threads at once.
+        for (int i = 0; i < people.size(); i++) {
+            people.get(i).prepareForParallelReads();
+        }
+
+        // Propose.
+        runInParallel(people.size(), new IndexedTask() {
+            public void run(int i) {
+                Person p = people.get(i);
+                SimEvents.PersonStep stepEvent = null;
+                if (p.getID() % sampleEvery == 0) {
+                    stepEvent = new SimEvents.PersonStep();
+                    stepEvent.begin();
+                }
+                StepProposal prop = proposals[i];
+                prop.clear();
+                p.proposeEncounters(prop, sim.streams.get(
+                    RandomStreams.Purpose.ENCOUNTER, p.getID(), month));
+                p.proposeDriftAfter(prop, sim.streams.get(
+                    RandomStreams.Purpose.DRIFT, p.getID(), month));
+                if (stepEvent != null  &&  stepEvent.shouldCommit()) {
+                    stepEvent.person = p.getID();
+                    stepEvent.month = month;
+                    stepEvent.encounters = prop.numEvents;
+                    stepEvent.friends = sim.peopleGraph.getDegree(p);
+                    stepEvent.commit();
+                }
+            }
+        });
+
+        // Commit.
+        for (int i = 0; i < people.size(); i++) {
+            people.get(i).commitEncounters(proposals[i]);
+        }
+        for (int i = 0; i < people.size(); i++) {
+            people.get(i).commitDrift(proposals[i]);
+        }
+        for (int i = 0; i < people.size(); i++) {
+            people.get(i).decay();
+        }
+        sim.metrics.stopTimer(SimMetrics.Timer.PERSON_STEP, start);
+        if (event.shouldCommit()) {
+            event.phase = "person";
+            event.month = month;
+            event.agents = people.size();
+            event.threads = getNumThreads();
+            event.commit();
+        }
+
+        reschedule(state);
+    }
+}
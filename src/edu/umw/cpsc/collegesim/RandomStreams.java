@@ -0,0 +1,340 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+
+import ec.util.MersenneTwisterFast;
+
+
+/**
+ * Hands out the random numbers that students, groups, and the Sim draw,
+ * so that what each agent draws depends only on who it is, when it is, and
+ * what it's for, rather than on how many numbers everyone else happened to
+ * draw before it from one shared generator.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>For each combination of simulation seed, {@link Purpose}, agent ID,
+ * and month, provide a stream of random numbers that is the same however
+ * the agents are ordered or threaded. Each stream is counter-based
+ * (SplitMix64): its <i>i</i>th number is a hash of its key and
+ * <i>i</i>, so starting one costs nothing.</li>
+ * <li>Present each stream as a {@link MersenneTwisterFast}, so that code
+ * (and MASON distributions) written against the shared generator needn't
+ * change.</li>
+ * </ul>
+ * {@link #get(Purpose,int,long)} returns the calling thread's own
+ * generator for that purpose, reset to the start of the stream asked for.
+ * It's good until the same thread asks for the same purpose again, so
+ * nothing that uses one should, while using it, ask for another of the
+ * same purpose. (The Sim's own {@link sim.engine.SimState#random} is left
+ * to MASON, which uses it to shuffle the agents it steps at the same
+ * time.)
+ */
+public class RandomStreams implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * What the random numbers are for. Each agent gets a separate stream
+     * for each purpose, so that changing how many numbers are drawn for
+     * one thing doesn't change what's drawn for another.
+     */
+    public enum Purpose {
+        /** A student's initial attributes, race, and gender. */
+        PERSON_INIT,
+        /** A student's year, when they're part of the initial population. */
+        ENROLLMENT,
+        /** A student's forced opposite-race friends. */
+        FORCED_FRIENDS,
+        /** Whom a student meets each month, and whether they click. */
+        ENCOUNTER,
+        /** A student's personality drift towards their friends. */
+        DRIFT,
+        /** A one-off meeting (see {@link Person#meet(Person)}). */
+        MEET,
+        /** Whether a student drops out at the end of the year. */
+        DROPOUT,
+        /** A group's recruitment factor and starting members. */
+        GROUP_INIT,
+        /** A group's influence on its members. */
+        INFLUENCE,
+        /** Whom a group recruits, and who leaves it. */
+        MEMBERSHIP
+    }
+
+    private final long seed;
+
+    // Each thread's generators, indexed by purpose. (Not part of a
+    // checkpoint: see readResolve().)
+    private transient final ThreadLocal<CounterGenerator[]> generators =
+        new ThreadLocal<CounterGenerator[]>() {
+            protected CounterGenerator[] initialValue() {
+                CounterGenerator[] g =
+                    new CounterGenerator[Purpose.values().length];
+                for (int i = 0; i < g.length; i++) {
+                    g[i] = new CounterGenerator();
+                }
+                return g;
+            }
+        };
+
+    /**
+     * Constructs the streams for the simulation seed passed.
+     */
+    public RandomStreams(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns a generator at the start of the stream for the purpose, agent
+     * ID (a student's or group's, depending on the purpose) and month
+     * passed. See above for how long it's good for.
+     */
+    public MersenneTwisterFast get(Purpose purpose, int agentID,
+        long month) {
+        return get(purpose, agentID, month, 0);
+    }
+
+    /**
+     * As {@link #get(Purpose,int,long)}, for when one agent needs several
+     * separate streams for the same purpose in the same month; each
+     * different value of <code>sub</code> gives a different one.
+     */
+    public MersenneTwisterFast get(Purpose purpose, int agentID, long month,
+        long sub) {
+        CounterGenerator g = generators.get()[purpose.ordinal()];
+        g.setSeed(keyFor(seed, purpose, agentID, month, sub));
+        return g;
+    }
+
+    /**
+     * Returns the seed of substream <i>n</i> (from 1) of these streams: a
+     * whole separate set of streams (say, for one of several forks of a
+     * simulation), unrelated to these and to every other substream.
+     */
+    public long substreamSeed(int n) {
+        return mix(mix(seed) + GOLDEN * n);
+    }
+
+    // A stream depends only on the seed and its key, so restoring these
+    // from a checkpoint just means starting afresh with the same seed.
+    private Object readResolve() {
+        return new RandomStreams(seed);
+    }
+
+    static long keyFor(long seed, Purpose purpose, int agentID, long month,
+        long sub) {
+        long z = mix(seed + GOLDEN * (purpose.ordinal() + 1));
+        z = mix(z + GOLDEN * (agentID + 1L));
+        z = mix(z + GOLDEN * (month + 2));
+        z = mix(z + GOLDEN * (sub + 1));
+        return z;
+    }
+
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    // The SplitMix64 finalizer.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * A SplitMix64 generator behind MersenneTwisterFast's interface: the
+     * <i>i</i>th long it returns is the mix of (key + <i>i</i> &times; the
+     * golden gamma). The Mersenne Twister's own state is never allocated
+     * or used, so every method that would touch it is overridden.
+     */
+    static class CounterGenerator extends MersenneTwisterFast {
+
+        private static final long serialVersionUID = 1L;
+
+        private long key;
+        private long counter;
+        private double nextNextGaussian;
+        private boolean haveNextNextGaussian;
+
+        CounterGenerator() {
+            super(0L);
+        }
+
+        /** Restarts the stream whose key is passed. */
+        public void setSeed(long key) {
+            this.key = key;
+            counter = 0;
+            haveNextNextGaussian = false;
+        }
+
+        public void setSeed(int[] array) {
+            long k = 0;
+            for (int i = 0; i < array.length; i++) {
+                k = mix(k + GOLDEN * (array[i] + 1L));
+            }
+            setSeed(k);
+        }
+
+        public long nextLong() {
+            return mix(key + GOLDEN * ++counter);
+        }
+
+        public int nextInt() {
+            return (int) (nextLong() >>> 32);
+        }
+
+        public short nextShort() {
+            return (short) (nextLong() >>> 48);
+        }
+
+        public char nextChar() {
+            return (char) (nextLong() >>> 48);
+        }
+
+        public byte nextByte() {
+            return (byte) (nextLong() >>> 56);
+        }
+
+        public void nextBytes(byte[] bytes) {
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = nextByte();
+            }
+        }
+
+        public boolean nextBoolean() {
+            return nextLong() < 0;
+        }
+
+        public boolean nextBoolean(float probability) {
+            return nextBoolean((double) probability);
+        }
+
+        public boolean nextBoolean(double probability) {
+            if (probability < 0.0 || probability > 1.0) {
+                throw new IllegalArgumentException(
+                    "probability must be between 0.0 and 1.0 inclusive.");
+            }
+            if (probability == 0.0) return false;
+            if (probability == 1.0) return true;
+            return nextDouble() < probability;
+        }
+
+        public int nextInt(int n) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("n must be positive, got: "
+                    + n);
+            }
+            // Reject the top sliver that would make some values likelier.
+            int bits, val;
+            do {
+                bits = (int) (nextLong() >>> 33);
+                val = bits % n;
+            } while (bits - val + (n-1) < 0);
+            return val;
+        }
+
+        public long nextLong(long n) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("n must be positive, got: "
+                    + n);
+            }
+            long bits, val;
+            do {
+                bits = nextLong() >>> 1;
+                val = bits % n;
+            } while (bits - val + (n-1) < 0);
+            return val;
+        }
+
+        /** Returns a double in [0, 1). */
+        public double nextDouble() {
+            return (nextLong() >>> 11) * 0x1.0p-53;
+        }
+
+        /** Returns a double between 0 and 1, each end included or not as
+         * passed. (As MersenneTwisterFast does it.) */
+        public double nextDouble(boolean includeZero, boolean includeOne) {
+            double d;
+            do {
+                d = nextDouble();
+                if (includeOne && nextBoolean()) {
+                    d += 1.0;
+                }
+            } while ((d > 1.0) || (!includeZero && d == 0.0));
+            return d;
+        }
+
+        public float nextFloat() {
+            return (nextLong() >>> 40) * 0x1.0p-24f;
+        }
+
+        public float nextFloat(boolean includeZero, boolean includeOne) {
+            float f;
+            do {
+                f = nextFloat();
+                if (includeOne && nextBoolean()) {
+                    f += 1.0f;
+                }
+            } while ((f > 1.0f) || (!includeZero && f == 0.0f));
+            return f;
+        }
+
+        public void clearGaussian() {
+            haveNextNextGaussian = false;
+        }
+
+        // The polar method, as MersenneTwisterFast does it.
+        public double nextGaussian() {
+            if (haveNextNextGaussian) {
+                haveNextNextGaussian = false;
+                return nextNextGaussian;
+            }
+            double v1, v2, s;
+            do {
+                v1 = 2 * nextDouble() - 1;
+                v2 = 2 * nextDouble() - 1;
+                s = v1 * v1 + v2 * v2;
+            } while (s >= 1 || s == 0);
+            double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s)/s);
+            nextNextGaussian = v2 * multiplier;
+            haveNextNextGaussian = true;
+            return v1 * multiplier;
+        }
+
+        public Object clone() {
+            CounterGenerator g = new CounterGenerator();
+            g.key = key;
+            g.counter = counter;
+            g.nextNextGaussian = nextNextGaussian;
+            g.haveNextNextGaussian = haveNextNextGaussian;
+            return g;
+        }
+
+        public boolean stateEquals(MersenneTwisterFast other) {
+            if (!(other instanceof CounterGenerator)) {
+                return false;
+            }
+            CounterGenerator g = (CounterGenerator) other;
+            return key == g.key  &&  counter == g.counter  &&
+                haveNextNextGaussian == g.haveNextNextGaussian  &&
+                (!haveNextNextGaussian ||
+                    nextNextGaussian == g.nextNextGaussian);
+        }
+
+        public void writeState(DataOutputStream stream) throws IOException {
+            stream.writeLong(key);
+            stream.writeLong(counter);
+            stream.writeDouble(nextNextGaussian);
+            stream.writeBoolean(haveNextNextGaussian);
+        }
+
+        public void readState(DataInputStream stream) throws IOException {
+            key = stream.readLong();
+            counter = stream.readLong();
+            nextNextGaussian = stream.readDouble();
+            haveNextNextGaussian = stream.readBoolean();
+        }
+    }
+}
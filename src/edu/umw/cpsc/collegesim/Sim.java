@@ -1,22 +1,34 @@
 package edu.umw.cpsc.collegesim;
 import sim.engine.*;
 import sim.util.*;
-import sim.field.network.*;
+import ec.util.MersenneTwisterFast;
 
-import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.PrintWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 
-/** The top-level singleton simulation class, with main(). 
+/** The top-level simulation class, with main(). Each Sim is one run, with
+ * its own {@link SimParameters}, students, groups, and output files.
  * <p></p>
  * Purpose in life:
  * <ol>
- * <li>At start of simulation, create {@link #INIT_NUM_PEOPLE} people and
- * {@link #INIT_NUM_GROUPS} groups. Schedule them all to run, and
+ * <li>At start of simulation, create {@link
+ * SimParameters#INIT_NUM_PEOPLE} people and {@link
+ * SimParameters#INIT_NUM_GROUPS} groups. Schedule them all to run, and
  * ourselves.</li>
  * <li>Each August, increment everyone's year, enroll the new freshman class,
  * create new groups, and schedule all these.</li>
@@ -26,83 +38,88 @@ import java.util.ArrayList;
  */
 public class Sim extends SimState implements Steppable{
 
-    /** 
-     * The random number seed for this simulation.
-     */
-    public static long SEED;
-
-    /**
-     * A graph where each node is a student and each edge is a friendship 
-     * between those students. It is undirected. */
-    public static Network peopleGraph = new Network(false);
+    private static final long serialVersionUID = 1L;
 
-    /**
-     * A hashtag identifying the current run of the simulation.
-     */
-    public static long SIMTAG;
+    /** This run's parameters. Every Person and Group consults its Sim's,
+     * so any number of Sims, each with its own, can run in one JVM (see
+     * {@link #runToEnd()}). */
+    public final SimParameters params;
 
     /**
-     * The number of people, of random year-in-college (fresh, soph, etc.)
-     * that the simulation will begin with. */
-    public static int INIT_NUM_PEOPLE;
-
+     * A graph where each node is a student and each edge is a friendship 
+     * between those students. It is undirected. (For a MASON Network view
+     * of it, see {@link FriendshipGraph#toNetwork()}.) */
+    public final FriendshipGraph peopleGraph = new FriendshipGraph();
 
     /**
-     * The number of groups, with random initial membership, that the
-     * simulation will begin with. */
-    public static int INIT_NUM_GROUPS;
-
+     * The constant attributes, preferences, and hobbies of every student,
+     * stored densely (see {@link AttributeStore}), sized by the run's
+     * parameters. */
+    final AttributeStore attributes;
 
     /**
-     * The number of newly enrolling freshmen each year.     */
-    public static int NUM_FRESHMEN_ENROLLING_PER_YEAR;
-
+     * Keeps track of which friendships are due to decay when (see {@link
+     * DecayWheel}). */
+    final DecayWheel decayWheel;
 
     /**
-     * The number of new groups to be added each year.
-     */
-    public static int NUM_NEW_GROUPS_PER_YEAR;
-    
-    /** The coefficient (see also {@link #DROPOUT_INTERCEPT}) of a linear
-     * equation to transform alienation to probability of
-     * dropping out. If x is based on the alienation level,
-     * then y=mx+b, where m is the DROPOUT_RATE and b the
-     * DROPOUT_INTERCEPT, gives the probability of dropping out. */
-    public static double DROPOUT_RATE;
-    
-    /** See {@link #DROPOUT_RATE}. */
-    public static double DROPOUT_INTERCEPT;
+     * Where students, groups, and the Sim itself get their random numbers
+     * (see {@link RandomStreams}), so that they don't depend on the order
+     * in which agents are stepped. Created from the Sim's seed (or, in a
+     * fork, from one of its parent's substreams; see {@link
+     * #fork(String[][], boolean)}). ({@link #random} is left for MASON's
+     * own use.) */
+    RandomStreams streams;
 
     public static final int NUM_MONTHS_IN_ACADEMIC_YEAR = 9;
     public static final int NUM_MONTHS_IN_SUMMER = 3;
     public static final int NUM_MONTHS_IN_YEAR = NUM_MONTHS_IN_ACADEMIC_YEAR +
         NUM_MONTHS_IN_SUMMER;
-    
-    /** The length of the simulation in years, settable via command-line. */
-    public static int NUM_SIMULATION_YEARS;
 
+    // The ids the next new Person and Group will get.
+    int nextPersonId;
+    int nextGroupId;
+
+    // The proposal students fill in when they step themselves one at a
+    // time (see Person.step()).
+    final StepProposal sequentialProposal = new StepProposal();
 
     // The list of every group in the entire simulation. 
-    private static ArrayList<Group> allGroups = new ArrayList<Group>();
+    private final ArrayList<Group> allGroups = new ArrayList<Group>();
     
     // The list of every student in the entire simulation. (Maintained in
     // addition to the Network for convenience.)
-    private static ArrayList<Person> peopleList = new ArrayList<Person>();
+    private final ArrayList<Person> peopleList = new ArrayList<Person>();
     
-    // Singleton pattern.
-    private static Sim theInstance;
-
-
-    private static File outF;
-    private static BufferedWriter outWriter;
-    private static File FoutF;
-    private static BufferedWriter FoutWriter;
-    private static File PrefoutF;
-    private static BufferedWriter PrefoutWriter;
-    private static File groupF;
-    private static PrintWriter groupWriter;
-    static PrintWriter encounterWriter;
-    static PrintWriter similarityWriter;
+    // The month startingMonth() was last called for.
+    private long lastLoggedMonth = Long.MIN_VALUE;
+
+    /** What's happened, and how long it took, month by month (see {@link
+     * SimMetrics}). */
+    final SimMetrics metrics = new SimMetrics();
+
+    // The month the metrics are being counted for (the one the last step
+    // was in, or, before the first, Long.MIN_VALUE).
+    private long metricsMonth = Long.MIN_VALUE;
+
+    // The flight recorder's event for that month (see SimEvents), once
+    // it's begun.
+    private transient SimEvents.Month monthEvent;
+
+    // Every table the run writes. (None of them are part of a checkpoint;
+    // a restored run opens its own.)
+    private transient OutputSinks sinks;
+    private transient FriendshipDeltaWriter friendshipDeltas;
+    transient TableWriter encounters;
+    transient TableWriter similarity;
+
+    // The file to write a checkpoint to once the current step is over.
+    private transient String pendingCheckpoint;
+
+    // Whether to fork once the current step is over, and the forks
+    // running, if so.
+    private transient boolean forkDue;
+    private transient ExecutorService forks;
     
     // Here is the schedule!
     // Persons run at clock time 0.5, 1.5, 2.5, ..., 8.5, ..summer.., 12.5...
@@ -112,7 +129,7 @@ public class Sim extends SimState implements Steppable{
     // the first time that academic year and after they all run for the last
     // time that academic year.
     boolean nextMonthInAcademicYear() {
-        double curTime = Sim.instance().schedule.getTime();
+        double curTime = schedule.getTime();
         int curTimeInt = (int) Math.ceil(curTime);
         // if curTimeInt is 1, that means we are at the first month.
         int monthsWithinYear = curTimeInt % NUM_MONTHS_IN_YEAR;
@@ -122,54 +139,45 @@ public class Sim extends SimState implements Steppable{
     /**
      * Return the total number of students currently in the simulation.
      */
-    public static int getNumPeople( ){
+    public int getNumPeople( ){
         return peopleList.size();
     }
 
     /**
      * Return the total number of groups currently in the simulation.
      */
-    public static int getNumGroups(){
+    public int getNumGroups(){
         return allGroups.size();
     }
 
-    /* creating the instance */
-    public static synchronized Sim instance(long seed){
-        if (theInstance == null){
-            theInstance = new Sim(seed);
-        }
-        return theInstance;
-    }
-
-    /* getting the instance */
-    static synchronized Sim instance()
-    {
-        if (theInstance == null) throw new AssertionError();
-
-        return theInstance;
+    /** Return the list of all groups in the simulation. */
+    public ArrayList<Group> getGroups(){
+        return allGroups;
     }
 
-
     /** Return the list of all students in the simulation. */
-    public static ArrayList<Person> getPeople(){
+    public ArrayList<Person> getPeople(){
         return peopleList;
     }
     
-    public Sim(long seed){
-        super(seed);
-        this.SEED = seed;
-
-        try {
-            encounterWriter = new PrintWriter(
-                new FileWriter("encounters"+Sim.SIMTAG+".csv"));
-            encounterWriter.println("year,id1,id2,type");
-            encounterWriter.flush();
+    /** Constructs a run with the seed and parameters passed. (The seed is
+     * normally params.SEED, but MASON's doLoop() passes its own.) */
+    public Sim(long seed, SimParameters params){
+        super(seed, new CheckpointingSchedule());
+        this.params = params;
+        attributes = new AttributeStore(params.CONSTANT_ATTRIBUTE_POOL_SIZE,
+            params.PREFERENCE_POOL_SIZE, params.HOBBY_POOL_SIZE);
+        decayWheel = new DecayWheel(params.DECAY_THRESHOLD);
+        streams = new RandomStreams(seed);
+        openOutput();
+    }
 
-            similarityWriter = new PrintWriter(
-                new FileWriter("similarity"+Sim.SIMTAG+".csv"));
-            similarityWriter.println("year,races,similarity,becameFriends");
-            similarityWriter.flush();
-        } catch (IOException e) { e.printStackTrace(); }
+    private void openOutput() {
+        sinks = new OutputSinks(params);
+        friendshipDeltas = null;
+        encounters = sinks.getEvents(TableSchema.ENCOUNTERS);
+        similarity = sinks.getEvents(TableSchema.SIMILARITY);
+        metrics.register(params.SIMTAG);
     }
     
     public void start( ){
@@ -180,34 +188,56 @@ public class Sim extends SimState implements Steppable{
         // from now, and groups at time 2.0 from now: so they run at times 0.5
         // and 1.0, respectively.
 
-        for(int i=0; i<INIT_NUM_PEOPLE; i++){
+        for(int i=0; i<params.INIT_NUM_PEOPLE; i++){
             //Create a person of random year, add and schedule them.
-            Person person = new Person();
-            person.setYear(random.nextInt(4)+1);
+            Person person = new Person(this);
+            person.setYear(streams.get(RandomStreams.Purpose.ENROLLMENT,
+                person.getID(), getCurrMonthNum()).nextInt(4)+1);
             peopleList.add(person);
             peopleGraph.addNode(person);
-            schedule.scheduleOnceIn(1.5, person);
+            if (params.PERSON_THREADS == 0) {
+                person.scheduleOnceIn(1.5);
+            }
+        }
+
+        if (params.PERSON_THREADS > 0) {
+            // One phase steps everyone, at the times they would have
+            // stepped themselves.
+            schedule.scheduleOnceIn(1.5, new PersonPhase(params.PERSON_THREADS));
         }
 
         // Initialize with some "plain ol' groups."
-        for(int x = 0; x<INIT_NUM_GROUPS; x++){
+        for(int x = 0; x<params.INIT_NUM_GROUPS; x++){
             //Create a new group, add and schedule it.
-            Group group = new Group();
+            Group group = new Group(this);
             allGroups.add(group);
-            schedule.scheduleOnceIn(2.0, group);
+            if (params.GROUP_THREADS == 0) {
+                schedule.scheduleOnceIn(2.0, group);
+            }
         }
 
         // Initialize with forced-mixed-race orientation groups (if any).
-        for(int x = 0; x<Group.INITIAL_NUM_MIXED_RACE_GROUPS; x++){
-            Group group = new Group(Group.MIXED_RACE_GROUP_FRACTION);
+        for(int x = 0; x<params.INITIAL_NUM_MIXED_RACE_GROUPS; x++){
+            Group group = new Group(this, params.MIXED_RACE_GROUP_FRACTION);
             allGroups.add(group);
-            schedule.scheduleOnceIn(2.0, group);
+            if (params.GROUP_THREADS == 0) {
+                schedule.scheduleOnceIn(2.0, group);
+            }
+        }
+
+        if (params.GROUP_THREADS > 0) {
+            // Likewise for the groups.
+            schedule.scheduleOnceIn(2.0, new GroupPhase(params.GROUP_THREADS));
         }
 
         for(int i = 0; i<peopleList.size(); i++){
-            for (int j=0; j<Person.INITIAL_NUM_FORCED_OPPOSITE_RACE_FRIENDS;
+            Person person = peopleList.get(i);
+            MersenneTwisterFast rng = streams.get(
+                RandomStreams.Purpose.FORCED_FRIENDS, person.getID(),
+                getCurrMonthNum());
+            for (int j=0; j<params.INITIAL_NUM_FORCED_OPPOSITE_RACE_FRIENDS;
                                                                         j++){
-                peopleList.get(i).forceAddRandomOppRaceFriend();
+                person.forceAddRandomOppRaceFriend(rng);
             }
         }
 
@@ -222,121 +252,51 @@ public class Sim extends SimState implements Steppable{
      */
     public static void main(String[] args) throws IOException {
 
-        // Mandatory command-line values.
-        NUM_SIMULATION_YEARS = -1;
-        SIMTAG = -1;
-
-        // Optional values with defaults.
-        Person.RACE_WEIGHT = 5;
-        Person.PROBABILITY_WHITE = .8;
-        INIT_NUM_PEOPLE = 4000;
-        NUM_FRESHMEN_ENROLLING_PER_YEAR = 1000;
-        INIT_NUM_GROUPS = 200;
-        NUM_NEW_GROUPS_PER_YEAR = 10;
-        Person.NUM_TO_MEET_POP = 5;
-        Person.NUM_TO_MEET_GROUP = 10;
-        Person.DECAY_THRESHOLD = 2;
-        Person.FRIENDSHIP_COEFFICIENT = .22;
-        Person.FRIENDSHIP_INTERCEPT = .05;
-        Person.NUM_PREFERENCES = Person.PREFERENCE_POOL_SIZE = 20;
-        Person.NUM_HOBBIES = Person.HOBBY_POOL_SIZE = 20;
-        Person.INITIAL_NUM_FORCED_OPPOSITE_RACE_FRIENDS = 0;
-        Group.INITIAL_NUM_MIXED_RACE_GROUPS = 0;
-        Group.MIXED_RACE_GROUP_FRACTION = .5;
-        Group.RECRUITMENT_REQUIRED = .6;
-        Group.LIKELIHOOD_OF_RANDOMLY_LEAVING_GROUP = .1;
-        Group.LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE = .1;
-        Group.DRIFT_DISTANCE = .2;
-        Person.LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE = .1;
-        Person.DRIFT_DISTANCE = .2;
-        SEED = System.currentTimeMillis();
-
+        int replications = 1;
+        int replicationThreads = 1;
+        String restoreFrom = null;
+        boolean simtagGiven = false;
         for (int i=0; i<args.length; i++) {
-            if (args[i].equals("-maxTime")) {
-                NUM_SIMULATION_YEARS = Integer.valueOf(args[++i]);
+            if (args[i].equals("-replications")) {
+                replications = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-replicationThreads")) {
+                replicationThreads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-restore")) {
+                restoreFrom = args[++i];
             } else if (args[i].equals("-simtag")) {
-                SIMTAG = Long.valueOf(args[++i]);
-            } else if (args[i].equals("-raceWeight")) {
-                Person.RACE_WEIGHT = Integer.valueOf(args[++i]);
-            } else if (args[i].equals("-probWhite")) {
-                Person.PROBABILITY_WHITE = Double.valueOf(args[++i]);
-            } else if (args[i].equals("-seed")) {
-                SEED = Long.parseLong(args[++i]);
-            } else if (args[i].equals("-initNumPeople")) {
-                INIT_NUM_PEOPLE = Integer.parseInt(args[++i]);
-            } else if (args[i].equals("-numFreshmenPerYear")) {
-                NUM_FRESHMEN_ENROLLING_PER_YEAR = Integer.parseInt(args[++i]);
-            } else if (args[i].equals("-initNumGroups")) {
-                INIT_NUM_GROUPS = Integer.parseInt(args[++i]);
-            } else if (args[i].equals("-numNewGroupsPerYear")) {
-                NUM_NEW_GROUPS_PER_YEAR = Integer.parseInt(args[++i]);
-            } else if (args[i].equals("-groupDriftRate")) {
-                Group.LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE =
-                    Double.parseDouble(args[++i]);
-            } else if (args[i].equals("-groupDriftDistance")) {
-                Group.DRIFT_DISTANCE = Double.parseDouble(args[++i]);
-            } else if (args[i].equals("-peerDriftRate")) {
-                Person.LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE =
-                    Double.parseDouble(args[++i]);
-            } else if (args[i].equals("-peerDriftDistance")) {
-                Person.DRIFT_DISTANCE = Double.parseDouble(args[++i]);
-            } else if (args[i].equals("-dropoutRate")) {
-                DROPOUT_RATE = Double.parseDouble(args[++i]);
-            } else if (args[i].equals("-dropoutIntercept")) {
-                DROPOUT_INTERCEPT = Double.parseDouble(args[++i]);
-            } else if (args[i].equals("-numToMeetPop")) {
-                Person.NUM_TO_MEET_POP = Integer.parseInt(args[++i]);
-            } else if (args[i].equals("-numToMeetGroup")) {
-                Person.NUM_TO_MEET_GROUP = Integer.parseInt(args[++i]);
-            } else if (args[i].equals("-decayThreshold")) {
-                Person.DECAY_THRESHOLD = Integer.parseInt(args[++i]);
-            } else if (args[i].equals("-friendshipCoefficient")) {
-                Person.FRIENDSHIP_COEFFICIENT = Double.parseDouble(args[++i]);
-            } else if (args[i].equals("-friendshipIntercept")) {
-                Person.FRIENDSHIP_INTERCEPT = Double.parseDouble(args[++i]);
-            } else if (args[i].equals("-numPreferences")) {
-                Person.NUM_PREFERENCES = Person.PREFERENCE_POOL_SIZE =
-                    Integer.parseInt(args[++i]);
-            } else if (args[i].equals("-numHobbies")) {
-                Person.NUM_HOBBIES = Person.HOBBY_POOL_SIZE =
-                    Integer.parseInt(args[++i]);
-            } else if (args[i].equals("-initNumForcedOppRaceFriends")) {
-                Person.INITIAL_NUM_FORCED_OPPOSITE_RACE_FRIENDS = 
-                    Integer.parseInt(args[++i]);
-            } else if (args[i].equals("-initNumMixedRaceGroups")) {
-                Group.INITIAL_NUM_MIXED_RACE_GROUPS = 
-                    Integer.parseInt(args[++i]);
-            } else if (args[i].equals("-mixedRaceGroupFraction")) {
-                Group.MIXED_RACE_GROUP_FRACTION = Double.parseDouble(args[++i]);
-            } else if (args[i].equals("-recruitmentRequired")) {
-                Group.RECRUITMENT_REQUIRED = Double.parseDouble(args[++i]);
-            } else if (args[i].equals("-likelihoodOfLeavingGroup")) {
-                Group.LIKELIHOOD_OF_RANDOMLY_LEAVING_GROUP = 
-                    Double.parseDouble(args[++i]);
+                simtagGiven = true;
+            }
+        }
+        if (restoreFrom != null) {
+            // The other parameters default to the checkpoint's, so only a
+            // new SIMTAG (for the restored run's output) is required.
+            if (!simtagGiven) {
+                printUsageAndQuit();
             }
+            Sim sim = restore(restoreFrom, args);
+            try {
+                sim.params.writeParamsFile();
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(2);
+            }
+            checkForkFile(sim.params);
+            sim.intervene(args);
+            sim.continueToEnd();
+            return;
         }
 
-        if (NUM_SIMULATION_YEARS == -1  ||
-            SIMTAG == -1) {
-            printUsageAndQuit();
+        final SimParameters params = SimParameters.parse(args);
+        checkForkFile(params);
+        if (replications > 1) {
+            runReplications(params, replications, replicationThreads);
+            return;
         }
 
         // Write the parameters file to a SIMTAG-annotated filename in the 
         // current directory.
         try {
-            PrintWriter paramsFile = new PrintWriter(new BufferedWriter(
-                new FileWriter("./sim_params" + SIMTAG + ".txt")));
-            paramsFile.println("seed="+SEED);
-            paramsFile.println("maxTime="+NUM_SIMULATION_YEARS);
-            paramsFile.println("simtag="+SIMTAG);
-            paramsFile.println("raceWeight="+Person.RACE_WEIGHT);
-            paramsFile.println("initNumPeople="+INIT_NUM_PEOPLE);
-            paramsFile.println("numFreshmenPerYear="+
-                NUM_FRESHMEN_ENROLLING_PER_YEAR);
-            paramsFile.println("initNumGroups="+INIT_NUM_GROUPS);
-            paramsFile.println("numNewGroupsPerYear="+
-                NUM_NEW_GROUPS_PER_YEAR);
-            paramsFile.close();
+            params.writeParamsFile();
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(2);
@@ -349,12 +309,12 @@ public class Sim extends SimState implements Steppable{
             newargs[i] = args[i];
         }
         newargs[newargs.length-2] = "-seed";
-        newargs[newargs.length-1] = "" + SEED;
+        newargs[newargs.length-1] = "" + params.SEED;
         args = newargs;
 
         doLoop(new MakesSimState() { 
             public SimState newInstance(long seed, String[] args) {
-                return instance(seed);
+                return new Sim(seed, params);
             }
             public Class simulationClass() {
                 return Sim.class;
@@ -362,173 +322,507 @@ public class Sim extends SimState implements Steppable{
         }, args);
     }
 
-    private boolean isEndOfSim() {
-        return (schedule.getTime()/NUM_MONTHS_IN_YEAR) > NUM_SIMULATION_YEARS;
+    // If the run the parameters passed describe is to fork, check now,
+    // rather than when it does, that its forks won't overwrite its output
+    // files or each other's.
+    private static void checkForkFile(SimParameters params)
+        throws IOException {
+        if (params.FORK_AT == null) {
+            return;
+        }
+        try {
+            checkForkSimtags(params, Sweep.readSweepFile(params.FORK_FILE));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage() + " in " + params.FORK_FILE);
+            printUsageAndQuit();
+        }
     }
 
-    boolean isLastYearOfSim() {
-        return (schedule.getTime()/NUM_MONTHS_IN_YEAR) >= 
-            NUM_SIMULATION_YEARS - 1;
+    /**
+     * Run the number of replications passed of the run the parameters
+     * passed describe, on the number of threads passed. Replication i has
+     * SIMTAG+i and seed+i, and writes its own files (so replication 0 is
+     * the run the parameters describe).
+     */
+    public static void runReplications(SimParameters params,
+        int replications, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> runs = new ArrayList<Future<?>>();
+        for (int i=0; i<replications; i++) {
+            final SimParameters replication = params.copy();
+            replication.SIMTAG += i;
+            replication.SEED += i;
+            runs.add(pool.submit(new Runnable() {
+                public void run() {
+                    try {
+                        replication.writeParamsFile();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                    new Sim(replication.SEED, replication).runToEnd();
+                }
+            }));
+        }
+        pool.shutdown();
+        try {
+            for (int i=0; i<runs.size(); i++) {
+                runs.get(i).get();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(2);
+        }
     }
 
-    int getCurrYearNum() {
-        return (int) schedule.getTime()/NUM_MONTHS_IN_YEAR;
+    /** Run this simulation from start to finish in the calling thread. */
+    public void runToEnd() {
+        start();
+        continueToEnd();
     }
 
-    private void dumpToFiles() {
+    /** Run this simulation (say, one just restored from a checkpoint) from
+     * wherever it is to the end, in the calling thread. */
+    public void continueToEnd() {
+        while (schedule.step(this)) {
+        }
+        finish();
+    }
+
+    /**
+     * Returns the simulation in the checkpoint file passed (see {@link
+     * SimParameters#CHECKPOINT_AT}), ready to continue from where it was.
+     * Its parameters are the original run's, changed by the command-line
+     * arguments passed (see {@link SimParameters#parse(String[],
+     * SimParameters)}), which must include a new -simtag for its output
+     * files. Other than the seed, attribute pool sizes, decay threshold,
+     * and thread counts, which are fixed in the checkpoint (see {@link
+     * SimParameters#continueWith(SimParameters)}), any of them can be
+     * changed; if none are, the restored run continues exactly as the
+     * original did.
+     */
+    public static Sim restore(String filename, String[] args)
+        throws IOException {
+        InputStream in = new FileInputStream(filename);
+        Sim sim;
+        try {
+            sim = (Sim) readFromCheckpoint(in);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(filename + " is not a checkpoint", e);
+        } finally {
+            in.close();
+        }
+        sim.resumeWith(args);
+        return sim;
+    }
 
-        if(outWriter!=null){
-            try{
-                outWriter.close();
-            }catch(IOException e){
-                System.out.println("Could not close file");
+    // Change our parameters as the command-line arguments passed call for,
+    // and open our output files, for a restored or forked run.
+    private void resumeWith(String[] args) {
+        if (!params.continueWith(SimParameters.parse(args, params))) {
+            System.out.println("Note: the seed, attribute pool sizes, " +
+                "decay threshold, and thread counts are those of the " +
+                "original run.");
+        }
+        openOutput();
+    }
+
+    /**
+     * Returns copies of this simulation as it is now, between steps, one
+     * for each set of command-line arguments passed, which change the
+     * copy's parameters as for {@link #restore(String, String[])} (and so
+     * must each include a -simtag, different from this simulation's and
+     * every other copy's, or an IllegalArgumentException is thrown, since
+     * the copy would overwrite their output files). If ownStreams, copy <i>i</i> draws
+     * its random numbers from substream <i>i</i>+1 of this simulation's
+     * (see {@link RandomStreams#substreamSeed(int)}), so that the copies'
+     * futures differ by chance as well as by their parameters; otherwise,
+     * a copy whose parameters are unchanged continues exactly as this
+     * one will.
+     * <p></p>
+     * The simulation is serialized just as for a checkpoint, but only once,
+     * into memory rather than to a file, and each copy is deserialized from
+     * that; so forking saves re-running the years so far, but not the cost
+     * of a checkpoint.
+     */
+    public Sim[] fork(String[][] childArgs, boolean ownStreams)
+        throws IOException {
+        checkForkSimtags(params, childArgs);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(this);
+        out.close();
+        byte[] state = bytes.toByteArray();
+
+        Sim[] children = new Sim[childArgs.length];
+        for (int i = 0; i < children.length; i++) {
+            ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(state));
+            try {
+                children[i] = (Sim) in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new AssertionError(e);
+            }
+            in.close();
+            if (ownStreams) {
+                long seed = streams.substreamSeed(i + 1);
+                children[i].streams = new RandomStreams(seed);
+                children[i].random = new MersenneTwisterFast(seed);
             }
+            children[i].resumeWith(childArgs[i]);
+            children[i].intervene(childArgs[i]);
         }
-        if(FoutWriter!=null){
-            try{
-                FoutWriter.close();
-            }catch(IOException e){
-                System.out.println("Could not close file");
+        return children;
+    }
+
+    // Throw an IllegalArgumentException unless each set of fork arguments
+    // passed gives a SIMTAG of its own, different from the parent's (whose
+    // parameters are passed) and every other fork's.
+    static void checkForkSimtags(SimParameters parent, String[][] childArgs) {
+        HashSet<Long> simtags = new HashSet<Long>();
+        simtags.add(parent.SIMTAG);
+        for (int i = 0; i < childArgs.length; i++) {
+            long simtag = SimParameters.parse(childArgs[i], parent).SIMTAG;
+            if (!simtags.add(simtag)) {
+                throw new IllegalArgumentException("Fork " + (i+1) +
+                    " needs a -simtag of its own (not " + simtag + ")");
             }
         }
-        if(groupWriter!=null){
-            groupWriter.close();
+    }
+
+    // Fork as SimParameters.FORK_AT calls for, and start the forks
+    // running alongside us.
+    private void forkNow() {
+        Sim[] children;
+        try {
+            children = fork(Sweep.readSweepFile(params.FORK_FILE),
+                !params.FORK_SHARED_STREAMS);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Couldn't fork");
+            e.printStackTrace();
+            return;
         }
+        System.out.println("Forked " + children.length + " runs");
+        forks = Executors.newFixedThreadPool(params.FORK_THREADS);
+        for (int i = 0; i < children.length; i++) {
+            final Sim child = children[i];
+            forks.submit(new Runnable() {
+                public void run() {
+                    try {
+                        child.params.writeParamsFile();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    child.continueToEnd();
+                }
+            });
+        }
+        forks.shutdown();
+    }
 
-        if(!isEndOfSim()){
-            String f="people"+SIMTAG+".csv";
-            try{
-                outF = new File(f);
-                outF.createNewFile( );
-                outWriter = new BufferedWriter(new FileWriter(outF,true));
-            }catch(IOException e){
-                System.out.println("Couldn't create file");
-                e.printStackTrace();
-                System.exit(1);
+    /** Ends the simulation, after waiting for any forks of it to end. */
+    public void finish() {
+        super.finish();
+        metrics.unregister();
+        if (forks != null) {
+            try {
+                forks.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Adds the number of forced-mixed-race groups passed (see {@link
+     * SimParameters#MIXED_RACE_GROUP_FRACTION}), and gives every student
+     * the number of forced opposite-race friends passed, now, partway
+     * through the simulation (say, just after restoring it). The new
+     * groups first meet next month (or in the fall, if it's May).
+     */
+    public void intervene(int numMixedRaceGroups, int numForcedFriends) {
+        if (numMixedRaceGroups == 0  &&  numForcedFriends == 0) {
+            return;
+        }
+        double firstMeeting = nextMonthInAcademicYear() ? 1.9 :
+            NUM_MONTHS_IN_SUMMER + 1.9;
+        for(int x = 0; x<numMixedRaceGroups; x++){
+            Group group = new Group(this, params.MIXED_RACE_GROUP_FRACTION);
+            allGroups.add(group);
+            if (params.GROUP_THREADS == 0) {
+                schedule.scheduleOnceIn(firstMeeting, group);
+            }
+        }
+        for(int i = 0; i<peopleList.size(); i++){
+            Person person = peopleList.get(i);
+            MersenneTwisterFast rng = streams.get(
+                RandomStreams.Purpose.FORCED_FRIENDS, person.getID(),
+                getCurrMonthNum());
+            for (int j=0; j<numForcedFriends; j++){
+                person.forceAddRandomOppRaceFriend(rng);
             }
+        }
+    }
 
-            if (Sim.instance().getCurrYearNum() == 0) {
-                Person.printHeaderToFile(outWriter);
+    // As intervene(int, int), as the command-line arguments passed call
+    // for (with -addMixedRaceGroups and -addForcedOppRaceFriends).
+    private void intervene(String[] args) {
+        int addMixedRaceGroups = 0;
+        int addForcedFriends = 0;
+        for (int i=0; i<args.length; i++) {
+            if (args[i].equals("-addMixedRaceGroups")) {
+                addMixedRaceGroups = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-addForcedOppRaceFriends")) {
+                addForcedFriends = Integer.parseInt(args[++i]);
             }
-            for(int x = 0; x<peopleList.size(); x++){
-                peopleList.get(x).printToFile(outWriter);
+        }
+        intervene(addMixedRaceGroups, addForcedFriends);
+    }
+
+    // If a checkpoint or a fork is called for at this boundary ("may" or
+    // "august"), arrange for it once this step is over.
+    private void atBoundary(String boundary) {
+        String label = getCurrYearNum() + boundary;
+        for (int i = 0; i < params.CHECKPOINT_AT.length; i++) {
+            if (params.CHECKPOINT_AT[i].equals(label)) {
+                pendingCheckpoint = "checkpoint" + params.SIMTAG + "_" +
+                    label + ".ckpt";
             }
-            
-            //FILE OF FRIENDSHIPS
-            String ff="friendships"+SIMTAG+".csv";
-            try{
-                // append to current file, if exists
-                FoutF = new File(ff);
-                FoutWriter = new BufferedWriter(new FileWriter(FoutF, true));
-                if (Sim.instance().getCurrYearNum() == 0) {
-                    printHeaderToFriendshipsFile(FoutWriter);
-                }
-                for(int x = 0; x<peopleList.size(); x++){
-                    peopleList.get(x).printFriendsToFile(FoutWriter);
-                }
-                FoutWriter.flush();
-            }catch(IOException e){
-                System.out.println("Couldn't create file");
-                e.printStackTrace();
-                System.exit(1);
+        }
+        if (label.equals(params.FORK_AT)) {
+            forkDue = true;
+        }
+    }
+
+    // If the step about to be taken, at the time passed, is in a new month,
+    // end the months since the last step's (in the metrics and the flight
+    // recording). (Like startingMonth(), this is done here so as not to
+    // add anything to the schedule.)
+    private void beforeStep(double time) {
+        long month = (long) Math.floor(time);
+        if (metricsMonth == Long.MIN_VALUE) {
+            metricsMonth = month;
+        }
+        endMonthsBefore(month);
+        if (monthEvent == null) {
+            // The first step (since the start, or a restore).
+            monthEvent = new SimEvents.Month();
+            monthEvent.begin();
+        }
+    }
+
+    // End every month from the one being counted up to the one passed.
+    private void endMonthsBefore(long month) {
+        if (metricsMonth == Long.MIN_VALUE) {
+            return;
+        }
+        TableWriter table = null;
+        for (; metricsMonth < month; metricsMonth++) {
+            if (table == null) {
+                table = sinks.get(TableSchema.METRICS);
             }
-            
-            //FILE OF GROUPS
-            String gf="groups"+SIMTAG+".csv";
-            try{
-                // append to current file, if exists
-                groupF = new File(gf);
-                groupWriter = new PrintWriter(new FileWriter(groupF, true));
-                if (Sim.instance().getCurrYearNum() == 0) {
-                    Group.printHeaderToGroupsFile(groupWriter);
-                }
-                for(int x = 0; x<allGroups.size(); x++){
-                    allGroups.get(x).printToFile(groupWriter);
-                }
-                groupWriter.flush();
-            }catch(IOException e){
-                System.out.println("Couldn't create file");
-                e.printStackTrace();
-                System.exit(1);
+            int year = (int) metricsMonth/NUM_MONTHS_IN_YEAR;
+            metrics.endMonth(metricsMonth, year, table);
+            if (monthEvent != null  &&  monthEvent.shouldCommit()) {
+                monthEvent.month = metricsMonth;
+                monthEvent.year = year;
+                monthEvent.people = peopleList.size();
+                monthEvent.groups = allGroups.size();
+                monthEvent.commit();
             }
+            monthEvent = new SimEvents.Month();
+            monthEvent.begin();
         }
     }
 
-    static void printHeaderToFriendshipsFile(BufferedWriter writer) {
+    // Do what atBoundary() called for, if anything.
+    private void afterStep() {
+        if (forkDue) {
+            forkDue = false;
+            forkNow();
+        }
+        if (pendingCheckpoint == null) {
+            return;
+        }
+        SimEvents.Checkpoint event = new SimEvents.Checkpoint();
+        event.begin();
         try {
-            writer.write("period,id,friendId\n");
-        } catch (Exception e) {
+            OutputStream out = new FileOutputStream(pendingCheckpoint);
+            writeToCheckpoint(out);
+            out.close();
+            System.out.println("Wrote checkpoint " + pendingCheckpoint);
+            if (event.shouldCommit()) {
+                event.file = pendingCheckpoint;
+                event.bytes = new File(pendingCheckpoint).length();
+                event.commit();
+            }
+        } catch (IOException e) {
+            System.out.println("Couldn't write checkpoint " +
+                pendingCheckpoint);
             e.printStackTrace();
         }
+        pendingCheckpoint = null;
     }
-    private void dumpToDropoutFile(Person p) {
-        String f="dropout"+SIMTAG+".csv";
-        BufferedWriter outWriter = null;
-        try{
-            File outputFile = new File(f);
-            if (!outputFile.exists()) {
-                outputFile.createNewFile( );
-                outWriter = new BufferedWriter(new FileWriter(outputFile));
-                Person.printHeaderToFile(outWriter);
-            } else {
-                outWriter = new BufferedWriter(new FileWriter(outputFile,true));
-            }
-        }catch(IOException e){
-            System.out.println("Couldn't create file");
-            e.printStackTrace();
-            System.exit(1);
+
+    /*
+     * A checkpoint is this Sim, and everything it leads to, serialized.
+     * Left to itself, serialization would recurse from each Person to
+     * their groupmates, and so on through the whole student body; so
+     * instead, the Persons and Groups are written without their links to
+     * each other (which are transient), and then all the links at once.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        for(int x = 0; x<peopleList.size(); x++){
+            peopleList.get(x).writeLinks(out);
+        }
+        for(int x = 0; x<allGroups.size(); x++){
+            allGroups.get(x).writeLinks(out);
         }
-        p.printToFile(outWriter);
     }
 
-    public void dumpPreferencesOfGraduatedStudent(Person x){
-        if(PrefoutWriter!=null){
-            try{
-                PrefoutWriter.close();
-            }catch(IOException e){
-                System.out.println("Could not close file");
-            }
+    private void readObject(ObjectInputStream in) throws IOException,
+        ClassNotFoundException {
+        in.defaultReadObject();
+        for(int x = 0; x<peopleList.size(); x++){
+            peopleList.get(x).readLinks(in);
         }
+        for(int x = 0; x<allGroups.size(); x++){
+            allGroups.get(x).readLinks(in);
+        }
+    }
 
-        if(PrefoutWriter!=null){
-            try{
-                PrefoutWriter.close();
-            }catch(IOException e){
-                System.out.println("Could not close file");
+    /*
+     * The Schedule can't be written in the middle of one of its steps
+     * (it would be restored as still being in it), so a checkpoint or fork
+     * called for during a step is done by this, right after it.
+     */
+    private static class CheckpointingSchedule extends Schedule {
+        private static final long serialVersionUID = 1L;
+
+        public synchronized boolean step(SimState state) {
+            Key next = (Key) queue.getMinKey();
+            if (next != null) {
+                ((Sim) state).beforeStep(next.getTime());
             }
+            boolean result = super.step(state);
+            ((Sim) state).afterStep();
+            return result;
         }
     }
 
-    public void dumpPreferencesOfDropoutStudent(Person x){
-        if(PrefoutWriter!=null){
-            try{
-                PrefoutWriter.close();
-            }catch(IOException e){
-                System.out.println("Could not close file");
+    private boolean isEndOfSim() {
+        return (schedule.getTime()/NUM_MONTHS_IN_YEAR) > params.NUM_SIMULATION_YEARS;
+    }
+
+    boolean isLastYearOfSim() {
+        return (schedule.getTime()/NUM_MONTHS_IN_YEAR) >= 
+            params.NUM_SIMULATION_YEARS - 1;
+    }
+
+    /**
+     * If the event logs are flushed monthly, flush them the first time this
+     * is called in a new month. Persons call this as they step, since they
+     * are the ones who log events; so this month's first Person flushes
+     * last month's events. (This is done here, rather than by scheduling
+     * something to flush at the end of every month, because any extra
+     * item on MASON's schedule changes the order in which it shuffles the
+     * agents that step at the same time as each other.)
+     */
+    void startingMonth(long month) {
+        if (month != lastLoggedMonth) {
+            lastLoggedMonth = month;
+            if (params.EVENT_FLUSH_POLICY == EventLog.FlushPolicy.MONTH) {
+                encounters.flush();
+                similarity.flush();
             }
         }
-        try{
-        String string = "dropout" + SIMTAG + ".csv";
-                PrefoutF = new File(string);
-                if(!PrefoutF.exists()){
-                    PrefoutF.createNewFile();
-                    PrefoutWriter = 
-                        new BufferedWriter(new FileWriter(PrefoutF));
-                    PrefoutWriter.write(
-                        "period,ID,numFriends,race,alienation,year");
+    }
+
+    int getCurrYearNum() {
+        return (int) schedule.getTime()/NUM_MONTHS_IN_YEAR;
+    }
+
+    /** Returns the number of the current month, counting from 0 at the
+     * start of the simulation (and -1 before it). */
+    long getCurrMonthNum() {
+        return (long) Math.floor(schedule.getTime());
+    }
+
+    private void dumpToFiles() {
+        long start = SimMetrics.startTimer();
+        SimEvents.YearEndDump event = new SimEvents.YearEndDump();
+        event.begin();
+        long bytesBefore = event.isEnabled() ? sinks.getBytesOnDisk() : 0;
+
+        // This year's events are all in, so their summaries (if that's how
+        // they're being written) can be.
+        sinks.endYear();
+
+        if(!isEndOfSim()){
+            //FILE OF PEOPLE
+            TableWriter people = sinks.get(TableSchema.PEOPLE);
+            for(int x = 0; x<peopleList.size(); x++){
+                peopleList.get(x).printToFile(people);
+            }
+            people.flush();
+            
+            //FILE OF FRIENDSHIPS
+            if (params.FRIENDSHIP_KEYFRAME_YEARS > 0) {
+                TableWriter changes =
+                    sinks.get(TableSchema.FRIENDSHIP_CHANGES);
+                if (friendshipDeltas == null) {
+                    friendshipDeltas = new FriendshipDeltaWriter(changes,
+                        params.FRIENDSHIP_KEYFRAME_YEARS);
                 }
-            }catch(IOException e){
-                System.out.println("Couldn't create file");
-                e.printStackTrace();
-                System.exit(1);
+                friendshipDeltas.writeSnapshot(getCurrYearNum(), peopleList,
+                    peopleGraph);
+                changes.flush();
+            } else {
+                TableWriter friendships = sinks.get(TableSchema.FRIENDSHIPS);
+                for(int x = 0; x<peopleList.size(); x++){
+                    peopleList.get(x).printFriendsToFile(friendships);
+                }
+                friendships.flush();
+            }
+            
+            //FILE OF GROUPS
+            TableWriter groups = sinks.get(TableSchema.GROUPS);
+            for(int x = 0; x<allGroups.size(); x++){
+                allGroups.get(x).printToFile(groups);
             }
-            x.printPreferencesToFile(PrefoutWriter);
+            groups.flush();
+        }
+        if (params.EVENT_FLUSH_POLICY != EventLog.FlushPolicy.SIZE) {
+            encounters.flush();
+            similarity.flush();
+        }
+        metrics.stopTimer(SimMetrics.Timer.FILE_DUMPS, start);
+        if (event.shouldCommit()) {
+            event.year = getCurrYearNum();
+            event.people = peopleList.size();
+            event.groups = allGroups.size();
+            event.bytes = sinks.getBytesOnDisk() - bytesBefore;
+            event.commit();
+        }
+    }
+
+    private void dumpToDropoutFile(Person p) {
+        long start = SimMetrics.startTimer();
+        TableWriter dropouts = sinks.get(TableSchema.DROPOUTS);
+        p.printToFile(dropouts);
+        metrics.stopTimer(SimMetrics.Timer.FILE_DUMPS, start);
+    }
+
+    public void dumpPreferencesOfDropoutStudent(Person x){
+        x.printPreferencesToFile(
+            sinks.get(TableSchema.DROPOUT_PREFERENCES));
     }
 
 
     public void step(SimState state){
 
         System.out.println("#### SIM (" + schedule.getTime() + ")");
+        long start = SimMetrics.startTimer();
         if(!isEndOfSim()) {
 
             if(nextMonthInAcademicYear()){
@@ -542,32 +836,40 @@ public class Sim extends SimState implements Steppable{
                 for(int x = 0; x<peopleList.size(); x++){
                     peopleList.get(x).incrementYear();
                 }
-                for(int x = 0; x<NUM_FRESHMEN_ENROLLING_PER_YEAR; x++){
+                for(int x = 0; x<params.NUM_FRESHMEN_ENROLLING_PER_YEAR; x++){
                     //Create and add a new freshman
-                    Person person = new Person();
+                    Person person = new Person(this);
                     person.setYear(1);
                     peopleList.add(person);
                     peopleGraph.addNode(person);
-                    //Schedule the person.
+                    //Schedule the person (unless the PersonPhase will step
+                    //them).
                     //Why 1.4 from now? Because (1) we the Sim are running at 
                     //int.1, and (2) students each run at int.5.
-                    schedule.scheduleOnceIn(1.4, person);
+                    if (params.PERSON_THREADS == 0) {
+                        person.scheduleOnceIn(1.4);
+                    }
                 }
-                for(int x = 0; x<NUM_NEW_GROUPS_PER_YEAR; x++){
+                for(int x = 0; x<params.NUM_NEW_GROUPS_PER_YEAR; x++){
                     //Create a new group with the list of people
-                    Group group = new Group();
+                    Group group = new Group(this);
                     //Add the group
                     allGroups.add(group);
-                    //Schedule the group.
+                    //Schedule the group (unless the GroupPhase will step
+                    //it).
                     //Why 1.9 from now? Because (1) we the Sim are running at 
                     //int.1, and (2) groups each run at integer times.
-                    schedule.scheduleOnceIn(1.9,group);
+                    if (params.GROUP_THREADS == 0) {
+                        schedule.scheduleOnceIn(1.9,group);
+                    }
                 }
                 /*
                  * The new academic year is now ready to begin! Schedule
                  * myself to wake up in May.
                  */
                 schedule.scheduleOnceIn(NUM_MONTHS_IN_ACADEMIC_YEAR, this);
+                metrics.stopTimer(SimMetrics.Timer.AUGUST, start);
+                atBoundary("august");
 
             }else{
 
@@ -582,25 +884,43 @@ public class Sim extends SimState implements Steppable{
 
                 dumpToFiles();
                 if(!isEndOfSim()) {
+                    SimEvents.YearEndDepartures event =
+                        new SimEvents.YearEndDepartures();
+                    event.begin();
+                    int numPeople = peopleList.size();
+                    int graduations = 0;
                     //For all of the people
                     for(int x = 0; x<peopleList.size(); x++){
                         Person student = peopleList.get(x);
                         //If they have more than four years, they graduate
                         if(student.getYear( ) >= 4){
-                            dumpPreferencesOfGraduatedStudent(student);
                             toRemove.add(student);
+                            metrics.count(SimMetrics.Counter.GRADUATIONS);
+                            graduations++;
                         //Otherwise
                         }else{
                             double alienationLevel = student.getAlienation( );
-                            double alienation = DROPOUT_RATE * alienationLevel 
-                                + DROPOUT_INTERCEPT; 
-                            double dropChance = random.nextDouble( );
+                            double alienation = params.DROPOUT_RATE *
+                                alienationLevel + params.DROPOUT_INTERCEPT;
+                            double dropChance = streams.get(
+                                RandomStreams.Purpose.DROPOUT,
+                                student.getID(), getCurrMonthNum())
+                                .nextDouble( );
                             if(dropChance <= alienation){
                                 dumpToDropoutFile(student);
                                 toRemove.add(student);
+                                metrics.count(SimMetrics.Counter.DROPOUTS);
                             }
                         }
                     }
+                    // (Once for all of this year's dropouts, if there were
+                    // any, rather than after each.)
+                    if(toRemove.size() > graduations){
+                        long dumpStart = SimMetrics.startTimer();
+                        sinks.get(TableSchema.DROPOUTS).flush();
+                        metrics.stopTimer(SimMetrics.Timer.FILE_DUMPS,
+                            dumpStart);
+                    }
 /*
  * Nuke groups randomly...do we want to do this?
                     for(int x = 0; x<allGroups.size(); x++){
@@ -614,11 +934,20 @@ public class Sim extends SimState implements Steppable{
                     }
 */
                     for(int x = 0; x<toRemove.size(); x++){
-                        //Let the person leave their groups
+                        //Let the person leave their groups (and cancel
+                        //their schedule)
                         toRemove.get(x).leaveUniversity();
-                        peopleList.remove(toRemove.get(x));
                         peopleGraph.removeNode(toRemove.get(x));
                     }
+                    //Squeeze the leavers out of peopleList in one pass
+                    peopleList.removeIf(p -> !p.isEnrolled());
+                    if (event.shouldCommit()) {
+                        event.year = getCurrYearNum();
+                        event.people = numPeople;
+                        event.graduations = graduations;
+                        event.dropouts = toRemove.size() - graduations;
+                        event.commit();
+                    }
                     // toRemoveGroups.clear();
                     toRemove.clear();
                 }
@@ -627,10 +956,16 @@ public class Sim extends SimState implements Steppable{
                  * Schedule myself to wake up in August, unless this is truly
                  * the end.
                  */
+                metrics.stopTimer(SimMetrics.Timer.MAY, start);
                 if (!isLastYearOfSim()) {
                     schedule.scheduleOnceIn(NUM_MONTHS_IN_SUMMER, this);
+                    atBoundary("may");
                 } else {
                     schedule.seal();
+                    // Nothing more will happen, so make sure everything
+                    // that did is on disk.
+                    endMonthsBefore(getCurrMonthNum() + 1);
+                    sinks.close();
                 }
             }
         }
@@ -667,6 +1002,25 @@ public class Sim extends SimState implements Steppable{
         "  [-mixedRaceGroupFraction fracMin]    # Double; default .5\n" +
         "  [-recruitmentRequired frac]          # Double; default .6\n" +
         "  [-likelihoodOfLeavingGroup frac]     # Double; default .1\n" +
+        "  [-personThreads num]                 # Integer; default 0 (serial)\n" +
+        "  [-groupThreads num]                  # Integer; default 0 (serial)\n" +
+        "  [-eventFlush size|month|year]        # default month\n" +
+        "  [-outputFormat csv|binary]           # default csv\n" +
+        "  [-eventOutput rows|summary]          # default rows\n" +
+        "  [-eventSample numRowsPerYear]        # Integer; default 0\n" +
+        "  [-similarityBins numBins]            # Integer; default 20\n" +
+        "  [-friendshipKeyframeYears years]     # Integer; default 0 (full)\n" +
+        "  [-replications num]                  # Integer; default 1\n" +
+        "  [-replicationThreads num]            # Integer; default 1\n" +
+        "  [-checkpointAt yearMonth,...]        # e.g. 2may,3august\n" +
+        "  [-restore checkpointFile]            # then only -simtag is required\n" +
+        "  [-addMixedRaceGroups num]            # on restoring; default 0\n" +
+        "  [-addForcedOppRaceFriends num]       # on restoring; default 0\n" +
+        "  [-forkAt yearMonth]                  # e.g. 5may\n" +
+        "  [-forkFile file]                     # a fork's args (with -simtag) a line\n" +
+        "  [-forkThreads num]                   # Integer; default 1\n" +
+        "  [-forkStreams own|shared]            # default own\n" +
+        "  [-jfrSampleEvery num]                # Integer >= 1; default 100\n" +
         "  [-seed seed].                        # Long; default rand");
         System.exit(1);
     }
@@ -0,0 +1,172 @@
+package edu.umw.cpsc.collegesim;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * The JDK Flight Recorder events the simulation records, so that a
+ * recording shows its months, phases, and output alongside the GC pauses
+ * and I/O in it. They're all in the "CollegeSim" category, named
+ * edu.umw.cpsc.collegesim.<i>Event</i>.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>One event per month, phase, year-end task, checkpoint, and batch of
+ * events written: few enough to leave on in any recording (and, like any
+ * JFR event, next to free when not recording).</li>
+ * <li>One event per student or group step ({@link PersonStep}, {@link
+ * GroupStep}), but only for the agents whose ID is a multiple of {@link
+ * SimParameters#JFR_SAMPLE_EVERY}, and only if enabled in the recording's
+ * settings, since they're off by default. (To enable them, record with
+ * <code>-XX:StartFlightRecording:settings=</code><i>file</i>, where
+ * <i>file</i> is a copy of the JDK's default.jfc with, say, an
+ * <code>&lt;event name="edu.umw.cpsc.collegesim.PersonStep"&gt;</code>
+ * whose "enabled" setting is true.)</li>
+ * </ul>
+ * When the students or groups step in a parallel phase, their events cover
+ * only the parallel part of their step (working out what they'll do), and
+ * are recorded on the phase's worker threads.
+ */
+public final class SimEvents {
+
+    private SimEvents() {
+    }
+
+    @Name("edu.umw.cpsc.collegesim.Month")
+    @Label("Simulated Month")
+    @Category("CollegeSim")
+    @Description("Everything the simulation did in one month")
+    @StackTrace(false)
+    public static class Month extends Event {
+        @Label("Month")
+        long month;
+        @Label("Year")
+        int year;
+        @Label("Students")
+        int people;
+        @Label("Groups")
+        int groups;
+    }
+
+    @Name("edu.umw.cpsc.collegesim.Phase")
+    @Label("Parallel Phase")
+    @Category("CollegeSim")
+    @Description("A PersonPhase or GroupPhase stepping every agent at once")
+    @StackTrace(false)
+    public static class Phase extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Month")
+        long month;
+        @Label("Agents")
+        int agents;
+        @Label("Threads")
+        int threads;
+    }
+
+    @Name("edu.umw.cpsc.collegesim.PersonStep")
+    @Label("Student Step")
+    @Category("CollegeSim")
+    @Description("One (sampled) student's step")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class PersonStep extends Event {
+        @Label("Student")
+        int person;
+        @Label("Month")
+        long month;
+        @Label("Encounters")
+        int encounters;
+        @Label("Friends")
+        int friends;
+    }
+
+    @Name("edu.umw.cpsc.collegesim.GroupStep")
+    @Label("Group Step")
+    @Category("CollegeSim")
+    @Description("One (sampled) group's step")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class GroupStep extends Event {
+        @Label("Group")
+        int group;
+        @Label("Month")
+        long month;
+        @Label("Members")
+        int size;
+        @Label("Recruits")
+        int recruits;
+        @Label("Leavers")
+        int leavers;
+    }
+
+    @Name("edu.umw.cpsc.collegesim.YearEndDump")
+    @Label("Year-End Dump")
+    @Category("CollegeSim")
+    @Description("Writing the yearly tables and flushing the event logs")
+    @StackTrace(false)
+    public static class YearEndDump extends Event {
+        @Label("Year")
+        int year;
+        @Label("Students")
+        int people;
+        @Label("Groups")
+        int groups;
+        @Label("Bytes Written")
+        @Description("The growth of the run's output files, as far as it " +
+            "has reached the disk")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("edu.umw.cpsc.collegesim.YearEndDepartures")
+    @Label("Graduations and Dropouts")
+    @Category("CollegeSim")
+    @Description("Deciding who graduates and drops out, and removing them")
+    @StackTrace(false)
+    public static class YearEndDepartures extends Event {
+        @Label("Year")
+        int year;
+        @Label("Students")
+        @Description("The number of students beforehand")
+        int people;
+        @Label("Graduations")
+        int graduations;
+        @Label("Dropouts")
+        int dropouts;
+    }
+
+    @Name("edu.umw.cpsc.collegesim.Checkpoint")
+    @Label("Checkpoint")
+    @Category("CollegeSim")
+    @Description("Writing a checkpoint of the whole simulation")
+    @StackTrace(false)
+    public static class Checkpoint extends Event {
+        @Label("File")
+        String file;
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("edu.umw.cpsc.collegesim.EventLogWrite")
+    @Label("Event Log Write")
+    @Category("CollegeSim")
+    @Description("An EventLog's writer thread writing one batch of events")
+    @StackTrace(false)
+    public static class EventLogWrite extends Event {
+        @Label("File")
+        String file;
+        @Label("Characters")
+        int chars;
+        @Label("Flushed")
+        boolean flush;
+    }
+}
@@ -0,0 +1,248 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * A run's counters of what happened (meetings, friendships, recruits,
+ * dropouts, and so on) and timers of how long each phase of the simulation
+ * took, month by month.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Count and time, as the simulation goes, cheaply enough to be left on
+ * in every run: a count is an array increment, and a timing is two calls
+ * to {@link System#nanoTime()} around a whole step or phase.</li>
+ * <li>At the end of each simulated month, write the month's counts and
+ * times as a row of the {@link TableSchema#METRICS} table (so, in CSV, to
+ * metrics&lt;SIMTAG&gt;.csv), add them to the running totals, and publish
+ * those to JMX (see {@link SimMetricsMBean}).</li>
+ * </ul>
+ * Only the simulation's own thread counts and times (the parallel phases
+ * only count in their one-at-a-time commit parts), so the counts are plain
+ * longs. JMX reads the totals from another thread, so they're published
+ * as a fresh array each month, rather than updated in place.
+ * <p></p>
+ * The timers nest where the phases do: {@link Timer#MAY} includes {@link
+ * Timer#FILE_DUMPS}. When the students or groups step themselves (rather
+ * than in a parallel phase), each one's step is timed separately, and the
+ * times added up.
+ */
+public class SimMetrics implements SimMetricsMBean, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The things counted. */
+    public enum Counter {
+        /** Students meeting someone they weren't friends with. */
+        MEETS,
+        /** Meetings that made friends. */
+        FRIENDSHIPS_FORMED,
+        /** Friends meeting again (see {@link Person#tickle(Person)}). */
+        TICKLES,
+        /** Friendships that lapsed. */
+        DECAYS,
+        /** Students a group considered recruiting. */
+        RECRUITS_ATTEMPTED,
+        /** Students who joined a group they were recruited to. */
+        RECRUITS_ACCEPTED,
+        /** Students who left a group (other than by leaving the
+         * university). */
+        GROUP_LEAVES,
+        DROPOUTS,
+        GRADUATIONS
+    }
+
+    /** The phases timed. */
+    public enum Timer {
+        /** Students' steps (or the {@link PersonPhase}). */
+        PERSON_STEP,
+        /** Groups' steps (or the {@link GroupPhase}). */
+        GROUP_STEP,
+        /** The Sim's start-of-year work. */
+        AUGUST,
+        /** The Sim's end-of-year work. */
+        MAY,
+        /** Writing the yearly tables and flushing the event logs. */
+        FILE_DUMPS
+    }
+
+    private static final int NUM_COUNTERS = Counter.values().length;
+    private static final int NUM_TIMERS = Timer.values().length;
+
+    // The SIMTAG of the run we're registered for (which, for a restored or
+    // forked run, isn't the one we started counting for).
+    private long simtag;
+
+    // This month's counts and times (in nanoseconds).
+    private final long[] counts = new long[NUM_COUNTERS];
+    private final long[] nanos = new long[NUM_TIMERS];
+
+    // The totals, as of the end of the last month finished: the counts,
+    // then the times. (Replaced, never changed.)
+    private volatile long[] totals = new long[NUM_COUNTERS + NUM_TIMERS];
+    private volatile long month = -1;
+
+    // The name we're registered under, if we are.
+    private transient ObjectName name;
+
+    /** Counts one of the thing passed. */
+    public void count(Counter counter) {
+        counts[counter.ordinal()]++;
+    }
+
+    /** Counts n of the thing passed. */
+    public void count(Counter counter, int n) {
+        counts[counter.ordinal()] += n;
+    }
+
+    /** Returns the number of the thing passed counted so far, this month's
+     * included. */
+    long getCount(Counter counter) {
+        return totals[counter.ordinal()] + counts[counter.ordinal()];
+    }
+
+    /** Returns the time to pass to {@link #stopTimer(Timer, long)} at the
+     * end of whatever is being timed. */
+    public static long startTimer() {
+        return System.nanoTime();
+    }
+
+    /** Adds the time since start (from {@link #startTimer()}) to the
+     * timer passed. */
+    public void stopTimer(Timer timer, long start) {
+        nanos[timer.ordinal()] += System.nanoTime() - start;
+    }
+
+    /**
+     * Ends the month passed: writes its row to the table passed, adds it to
+     * the totals, publishes them, and starts the next month at zero.
+     */
+    void endMonth(long month, int year, TableWriter table) {
+        table.putInt(year).putInt((int) month);
+        long[] newTotals = totals.clone();
+        for (int i = 0; i < NUM_COUNTERS; i++) {
+            table.putInt((int) counts[i]);
+            newTotals[i] += counts[i];
+            counts[i] = 0;
+        }
+        for (int i = 0; i < NUM_TIMERS; i++) {
+            table.putDouble(nanos[i] / 1e6);
+            newTotals[NUM_COUNTERS + i] += nanos[i];
+            nanos[i] = 0;
+        }
+        table.endRow();
+        table.flush();
+        totals = newTotals;
+        this.month = month;
+    }
+
+    /** Registers these metrics with the platform's MBean server, as the
+     * run with the SIMTAG passed (unless a run with that SIMTAG already
+     * has been). */
+    void register(long simtag) {
+        this.simtag = simtag;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName n = new ObjectName(
+                "edu.umw.cpsc.collegesim:type=SimMetrics,simtag=" + simtag);
+            if (!server.isRegistered(n)) {
+                server.registerMBean(this, n);
+                name = n;
+            }
+        } catch (JMException e) {
+            System.out.println("Couldn't register metrics with JMX");
+            e.printStackTrace();
+        }
+    }
+
+    /** Unregisters these metrics, if they were registered. */
+    void unregister() {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        name = null;
+    }
+
+    public long getSimtag() {
+        return simtag;
+    }
+
+    public long getMonth() {
+        return month;
+    }
+
+    private long total(Counter counter) {
+        return totals[counter.ordinal()];
+    }
+
+    private double totalMillis(Timer timer) {
+        return totals[NUM_COUNTERS + timer.ordinal()] / 1e6;
+    }
+
+    public long getMeets() {
+        return total(Counter.MEETS);
+    }
+
+    public long getFriendshipsFormed() {
+        return total(Counter.FRIENDSHIPS_FORMED);
+    }
+
+    public long getTickles() {
+        return total(Counter.TICKLES);
+    }
+
+    public long getDecays() {
+        return total(Counter.DECAYS);
+    }
+
+    public long getRecruitsAttempted() {
+        return total(Counter.RECRUITS_ATTEMPTED);
+    }
+
+    public long getRecruitsAccepted() {
+        return total(Counter.RECRUITS_ACCEPTED);
+    }
+
+    public long getGroupLeaves() {
+        return total(Counter.GROUP_LEAVES);
+    }
+
+    public long getDropouts() {
+        return total(Counter.DROPOUTS);
+    }
+
+    public long getGraduations() {
+        return total(Counter.GRADUATIONS);
+    }
+
+    public double getPersonStepMillis() {
+        return totalMillis(Timer.PERSON_STEP);
+    }
+
+    public double getGroupStepMillis() {
+        return totalMillis(Timer.GROUP_STEP);
+    }
+
+    public double getAugustMillis() {
+        return totalMillis(Timer.AUGUST);
+    }
+
+    public double getMayMillis() {
+        return totalMillis(Timer.MAY);
+    }
+
+    public double getFileDumpMillis() {
+        return totalMillis(Timer.FILE_DUMPS);
+    }
+}
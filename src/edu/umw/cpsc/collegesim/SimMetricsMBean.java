@@ -0,0 +1,45 @@
+package edu.umw.cpsc.collegesim;
+
+
+/**
+ * The JMX view of a run's {@link SimMetrics}: its running totals, as of the
+ * end of the last month it finished. Each run is registered as
+ * <code>edu.umw.cpsc.collegesim:type=SimMetrics,simtag=</code><i>SIMTAG</i>.
+ */
+public interface SimMetricsMBean {
+
+    /** Returns the run's SIMTAG. */
+    long getSimtag();
+
+    /** Returns the number of the last month finished (counting from 0 at
+     * the start of the simulation), or -1 if none has been. */
+    long getMonth();
+
+    long getMeets();
+
+    long getFriendshipsFormed();
+
+    long getTickles();
+
+    long getDecays();
+
+    long getRecruitsAttempted();
+
+    long getRecruitsAccepted();
+
+    long getGroupLeaves();
+
+    long getDropouts();
+
+    long getGraduations();
+
+    double getPersonStepMillis();
+
+    double getGroupStepMillis();
+
+    double getAugustMillis();
+
+    double getMayMillis();
+
+    double getFileDumpMillis();
+}
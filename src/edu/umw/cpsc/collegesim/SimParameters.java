@@ -0,0 +1,502 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Serializable;
+
+
+/**
+ * The parameters of one run of the simulation: the model's parameters, and
+ * where and how the run writes its output. Each {@link Sim} has its own
+ * (see {@link Sim#params}), which its {@link Person}s and {@link Group}s
+ * consult, so that several runs, with different parameters, can be in
+ * one JVM at once.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Hold every parameter, with its default.</li>
+ * <li>Set them from the command line (see {@link #parse(String[])} and
+ * {@link Sim#printUsageAndQuit()}), and record the main ones in the run's
+ * sim_params file.</li>
+ * </ul>
+ * A run's parameters shouldn't change once its Sim has been created.
+ */
+public class SimParameters implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The random number seed for this simulation.
+     */
+    public long SEED;
+
+    /**
+     * A hashtag identifying the current run of the simulation.
+     */
+    public long SIMTAG = -1;
+
+    /** The length of the simulation in years, settable via command-line. */
+    public int NUM_SIMULATION_YEARS = -1;
+
+    /**
+     * The number of people, of random year-in-college (fresh, soph, etc.)
+     * that the simulation will begin with. */
+    public int INIT_NUM_PEOPLE = 4000;
+
+    /**
+     * The number of groups, with random initial membership, that the
+     * simulation will begin with. */
+    public int INIT_NUM_GROUPS = 200;
+
+    /**
+     * The number of newly enrolling freshmen each year.     */
+    public int NUM_FRESHMEN_ENROLLING_PER_YEAR = 1000;
+
+    /**
+     * The number of new groups to be added each year.
+     */
+    public int NUM_NEW_GROUPS_PER_YEAR = 10;
+
+    /** The coefficient (see also {@link #DROPOUT_INTERCEPT}) of a linear
+     * equation to transform alienation to probability of
+     * dropping out. If x is based on the alienation level,
+     * then y=mx+b, where m is the DROPOUT_RATE and b the
+     * DROPOUT_INTERCEPT, gives the probability of dropping out. */
+    public double DROPOUT_RATE;
+
+    /** See {@link #DROPOUT_RATE}. */
+    public double DROPOUT_INTERCEPT;
+
+    /**
+     * Baseline prior probability that a newly generated student will be of
+     * race "WHITE". */
+    public double PROBABILITY_WHITE = .8;
+
+    /** A number reflecting the relative importance that race has in
+     * determining perceived similarity. The "units" of this constant are
+     * in "equivalent number of attributes"; <i>i.e.</i>, if the
+     * RACE_WEIGHT is 4, this means that if another person is the same race
+     * as you, this will impact your perceived similarity to them (and
+     * theirs to you) to the same degree that four of your individual
+     * attributes being the same would. */
+    public double RACE_WEIGHT = 5;
+
+    /** The coefficient (see also {@link #FRIENDSHIP_INTERCEPT}) of a linear
+     * equation to transform perceived similarity to probability of
+     * friendship. If x is the perceived similarity, then y=mx+b, where m
+     * is the FRIENDSHIP_COEFFICIENT, b the FRIENDSHIP_INTERCEPT, and y gives
+     * the probability of becoming friends. */
+    public double FRIENDSHIP_COEFFICIENT = .22;
+
+    /** See {@link #FRIENDSHIP_COEFFICIENT}. */
+    public double FRIENDSHIP_INTERCEPT = .05;
+
+    /** Each time step (= 1 month), how many other people from a person's
+     * groups that person will encounter. Note that this number is only
+     * unidirectional; <i>i.e.</i>, this person may well "be met by"
+     * numerous other people when their step() methods run. */
+    public int NUM_TO_MEET_GROUP = 10;
+
+    /** Each time step (= 1 month), how many other people from the overall
+     * student body a person will encounter. Note that this number is only
+     * unidirectional; <i>i.e.</i>, this person may well "be met by"
+     * numerous other people when their step() methods run. */
+    public int NUM_TO_MEET_POP = 5;
+
+    /** The number of consecutive months that two friends can <i>not</i>
+     * tickle each other and yet remain friends. */
+    public int DECAY_THRESHOLD = 2;
+
+    /** When a new Student is created, the number of automatic friends of the
+     *  opposite race that they will get. */
+    public int INITIAL_NUM_FORCED_OPPOSITE_RACE_FRIENDS;
+
+    /** Each time step, the probability that a student will change one of
+     * their attribute values in response to their peers as a whole. */
+    public double LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE = .1;
+
+    /** Each time a student changes one of her attribute values in response to
+     * their peers (see {@link #LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE}),
+     * the fraction towards their peer's mean value for that attribute that
+     * student will drift. */
+    public double DRIFT_DISTANCE = .2;
+
+    /** The total number of "constant" attributes in the system. (See {@link
+     * Person#CONST_WEIGHT}.) Each person will have a value from 0 to 1 for
+     * each, indicating the extent to which they possess the attribute. */
+    public int CONSTANT_ATTRIBUTE_POOL_SIZE = 0;  // 100;
+
+    /** The number of preferences each person has. (See {@link
+     * Person#PREF_WEIGHT}.) */
+    public int NUM_PREFERENCES = 20;
+
+    /** The total number of "preferences" in the system. (See
+     * {@link Person#PREF_WEIGHT}.) Each person will either have the
+     * attribute or not; and if they do, they will have a double value
+     * assigned indicating its strength. (Morgan: is this still accurate?) */
+    public int PREFERENCE_POOL_SIZE = 20;
+
+    /** The number of "hobbies" attributes each person has. (See {@link
+     * Person#HOBBY_WEIGHT}.) */
+    public int NUM_HOBBIES = 20;
+
+    /** The total number of "hobbies" in the system. (See
+     * {@link Person#HOBBY_WEIGHT}.) Each person will either have the
+     * attribute or not; and if they do, they will have a double value
+     * assigned indicating its strength. */
+    public int HOBBY_POOL_SIZE = 20;
+
+    /**
+     * A threshold that determines the likelihood of whether a student will
+     * join a group. Higher numbers means less acceptance into groups. The
+     * number itself is difficult to interpret, since a complex conflagration
+     * of factors will be put together to compare to it. */
+    public double RECRUITMENT_REQUIRED = .6;
+
+    /**
+     * Each time step, the probability that each student will leave each of
+     * their groups, provided that leaving said group would not push the
+     * group size below the minimum. */
+    public double LIKELIHOOD_OF_RANDOMLY_LEAVING_GROUP = .1;
+
+    /** Each time step, the probability that a student will change one of
+     * their attribute values <i>provided</i> that said attribute is "different
+     * enough" from their influencing peers in a group to warrant change. */
+    public double GROUP_LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE = .1;
+
+    /** Each time a student changes one of her attribute values in response to
+     * a group (see {@link #GROUP_LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE}),
+     * the fraction towards the group's mean value for that attribute that
+     * student will drift. */
+    public double GROUP_DRIFT_DISTANCE = .2;
+
+    /**
+     * The number of forced-mixed-race orientation groups to start with.
+     */
+    public int INITIAL_NUM_MIXED_RACE_GROUPS;
+
+    /**
+     * For the forced-mixed-race orientation groups, what fraction should be
+     * composed of minorities?
+     */
+    public double MIXED_RACE_GROUP_FRACTION = .5;
+
+    /** The number of threads with which to step the students each month.
+     * If 0 (the default), each {@link Person} schedules and steps itself,
+     * one at a time; otherwise, a {@link PersonPhase} steps them all in
+     * parallel. */
+    public int PERSON_THREADS;
+
+    /** The number of threads with which to step the groups each month.
+     * If 0 (the default), each {@link Group} schedules and steps itself,
+     * one at a time; otherwise, a {@link GroupPhase} steps them all in
+     * parallel. */
+    public int GROUP_THREADS;
+
+    /** When to flush the encounters and similarity files, besides when
+     * their buffers fill (see {@link EventLog}): monthly (the default),
+     * when the next month's Persons start stepping and in May; yearly, in
+     * May; or never. */
+    public EventLog.FlushPolicy EVENT_FLUSH_POLICY =
+        EventLog.FlushPolicy.MONTH;
+
+    /** The format of the output tables (see {@link TableWriter}): CSV (the
+     * default), or a compact binary one, which {@link ColumnarToCsv} can
+     * turn back into CSV. */
+    public TableWriter.Format OUTPUT_FORMAT = TableWriter.Format.CSV;
+
+    /** If true, the encounters and similarity tables are written as yearly
+     * summaries (see {@link AggregatingTableWriter}) rather than a row per
+     * event. */
+    public boolean SUMMARIZE_EVENTS = false;
+
+    /** When summarizing events, how many of each year's raw events (chosen
+     * at random) to write as well. */
+    public int EVENT_SAMPLE_SIZE = 0;
+
+    /** When summarizing events, the number of bins in the histogram of
+     * similarities. */
+    public int SIMILARITY_BINS = 20;
+
+    /** If positive, the friendships are written each year as the changes
+     * since the year before, with every friendship listed every this many
+     * years (see {@link FriendshipDeltaWriter}); if 0 (the default), every
+     * student's friends are listed every year. */
+    public int FRIENDSHIP_KEYFRAME_YEARS = 0;
+
+    /** The boundaries at which to write a checkpoint of the whole
+     * simulation (see {@link Sim#restore(String, String[])}), each the
+     * year number followed by "may" (after that year's end-of-year
+     * activities) or "august" (after its start-of-year ones); for example,
+     * "2may". None, by default. */
+    public String[] CHECKPOINT_AT = new String[0];
+
+    /** The boundary (in the form of {@link #CHECKPOINT_AT}'s) at which to
+     * fork the simulation into the runs listed in the {@link #FORK_FILE}
+     * (see {@link Sim#fork(String[][], boolean)}), which then run
+     * alongside it; or null (the default) for none. */
+    public String FORK_AT = null;
+
+    /** The file listing the runs to fork, one a line, each as the
+     * command-line arguments that change the parameters of that run
+     * (including its -simtag). */
+    public String FORK_FILE = null;
+
+    /** The number of threads on which to run the forks. */
+    public int FORK_THREADS = 1;
+
+    /** If true, the forks all draw the same random numbers as the
+     * simulation they were forked from would have; if false (the
+     * default), each draws its own. */
+    public boolean FORK_SHARED_STREAMS = false;
+
+    /** Which students' and groups' steps are recorded as JDK Flight
+     * Recorder events, when those are enabled (see {@link SimEvents}):
+     * those whose ID is a multiple of this (at least 1). */
+    public int JFR_SAMPLE_EVERY = 100;
+
+    /** Constructs a set of parameters, each with its default (and a seed
+     * taken from the clock). */
+    public SimParameters() {
+        SEED = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the parameters the command-line arguments passed call for
+     * (see {@link Sim#printUsageAndQuit()}), which quits if the mandatory
+     * ones are missing. Arguments it doesn't know are ignored (they may be
+     * MASON's).
+     */
+    public static SimParameters parse(String[] args) {
+        return parse(args, new SimParameters());
+    }
+
+    /**
+     * As {@link #parse(String[])}, but the parameters the arguments don't
+     * mention are left as they are in the ones passed (which aren't
+     * themselves changed).
+     */
+    public static SimParameters parse(String[] args, SimParameters base) {
+        SimParameters p = base.copy();
+        for (int i=0; i<args.length; i++) {
+            if (args[i].equals("-maxTime")) {
+                p.NUM_SIMULATION_YEARS = Integer.valueOf(args[++i]);
+            } else if (args[i].equals("-simtag")) {
+                p.SIMTAG = Long.valueOf(args[++i]);
+            } else if (args[i].equals("-raceWeight")) {
+                p.RACE_WEIGHT = Integer.valueOf(args[++i]);
+            } else if (args[i].equals("-probWhite")) {
+                p.PROBABILITY_WHITE = Double.valueOf(args[++i]);
+            } else if (args[i].equals("-seed")) {
+                p.SEED = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-initNumPeople")) {
+                p.INIT_NUM_PEOPLE = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-numFreshmenPerYear")) {
+                p.NUM_FRESHMEN_ENROLLING_PER_YEAR = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-initNumGroups")) {
+                p.INIT_NUM_GROUPS = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-numNewGroupsPerYear")) {
+                p.NUM_NEW_GROUPS_PER_YEAR = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-groupDriftRate")) {
+                p.GROUP_LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE =
+                    Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-groupDriftDistance")) {
+                p.GROUP_DRIFT_DISTANCE = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-peerDriftRate")) {
+                p.LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE =
+                    Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-peerDriftDistance")) {
+                p.DRIFT_DISTANCE = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-dropoutRate")) {
+                p.DROPOUT_RATE = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-dropoutIntercept")) {
+                p.DROPOUT_INTERCEPT = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-numToMeetPop")) {
+                p.NUM_TO_MEET_POP = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-numToMeetGroup")) {
+                p.NUM_TO_MEET_GROUP = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-decayThreshold")) {
+                p.DECAY_THRESHOLD = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-friendshipCoefficient")) {
+                p.FRIENDSHIP_COEFFICIENT = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-friendshipIntercept")) {
+                p.FRIENDSHIP_INTERCEPT = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-numPreferences")) {
+                p.NUM_PREFERENCES = p.PREFERENCE_POOL_SIZE =
+                    Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-numHobbies")) {
+                p.NUM_HOBBIES = p.HOBBY_POOL_SIZE =
+                    Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-initNumForcedOppRaceFriends")) {
+                p.INITIAL_NUM_FORCED_OPPOSITE_RACE_FRIENDS =
+                    Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-initNumMixedRaceGroups")) {
+                p.INITIAL_NUM_MIXED_RACE_GROUPS =
+                    Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-mixedRaceGroupFraction")) {
+                p.MIXED_RACE_GROUP_FRACTION = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-recruitmentRequired")) {
+                p.RECRUITMENT_REQUIRED = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-likelihoodOfLeavingGroup")) {
+                p.LIKELIHOOD_OF_RANDOMLY_LEAVING_GROUP =
+                    Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-personThreads")) {
+                p.PERSON_THREADS = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-groupThreads")) {
+                p.GROUP_THREADS = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-outputFormat")) {
+                p.OUTPUT_FORMAT = TableWriter.Format.valueOf(
+                    args[++i].toUpperCase());
+            } else if (args[i].equals("-eventOutput")) {
+                String mode = args[++i];
+                if (mode.equals("summary")) {
+                    p.SUMMARIZE_EVENTS = true;
+                } else if (mode.equals("rows")) {
+                    p.SUMMARIZE_EVENTS = false;
+                } else {
+                    Sim.printUsageAndQuit();
+                }
+            } else if (args[i].equals("-eventSample")) {
+                p.EVENT_SAMPLE_SIZE = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-similarityBins")) {
+                p.SIMILARITY_BINS = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-friendshipKeyframeYears")) {
+                p.FRIENDSHIP_KEYFRAME_YEARS = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-checkpointAt")) {
+                p.CHECKPOINT_AT = args[++i].toLowerCase().split(",");
+                for (int j = 0; j < p.CHECKPOINT_AT.length; j++) {
+                    if (!p.CHECKPOINT_AT[j].matches("[0-9]+(may|august)")) {
+                        Sim.printUsageAndQuit();
+                    }
+                }
+            } else if (args[i].equals("-forkAt")) {
+                p.FORK_AT = args[++i].toLowerCase();
+                if (!p.FORK_AT.matches("[0-9]+(may|august)")) {
+                    Sim.printUsageAndQuit();
+                }
+            } else if (args[i].equals("-forkFile")) {
+                p.FORK_FILE = args[++i];
+            } else if (args[i].equals("-forkThreads")) {
+                p.FORK_THREADS = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-forkStreams")) {
+                String streams = args[++i];
+                if (streams.equals("shared")) {
+                    p.FORK_SHARED_STREAMS = true;
+                } else if (streams.equals("own")) {
+                    p.FORK_SHARED_STREAMS = false;
+                } else {
+                    Sim.printUsageAndQuit();
+                }
+            } else if (args[i].equals("-jfrSampleEvery")) {
+                p.JFR_SAMPLE_EVERY = Integer.parseInt(args[++i]);
+                if (p.JFR_SAMPLE_EVERY < 1) {
+                    Sim.printUsageAndQuit();
+                }
+            } else if (args[i].equals("-eventFlush")) {
+                p.EVENT_FLUSH_POLICY = EventLog.FlushPolicy.valueOf(
+                    args[++i].toUpperCase());
+            }
+        }
+
+        if (p.NUM_SIMULATION_YEARS == -1  ||
+            p.SIMTAG == -1  ||
+            (p.FORK_AT != null  &&  p.FORK_FILE == null)) {
+            Sim.printUsageAndQuit();
+        }
+        return p;
+    }
+
+    /** Returns a copy of these parameters, to be changed (say, to give a
+     * replication its own SIMTAG and seed) without affecting these. */
+    public SimParameters copy() {
+        try {
+            return (SimParameters) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Changes these parameters (those of a simulation restored from a
+     * checkpoint) to the ones passed, for the rest of the run. The seed,
+     * the sizes of the attribute pools, the decay threshold, and the
+     * numbers of threads are built into the restored state, so they're
+     * left as they are; returns false if the ones passed differ.
+     */
+    public boolean continueWith(SimParameters changed) {
+        boolean same = SEED == changed.SEED  &&
+            CONSTANT_ATTRIBUTE_POOL_SIZE ==
+                changed.CONSTANT_ATTRIBUTE_POOL_SIZE  &&
+            NUM_PREFERENCES == changed.NUM_PREFERENCES  &&
+            PREFERENCE_POOL_SIZE == changed.PREFERENCE_POOL_SIZE  &&
+            NUM_HOBBIES == changed.NUM_HOBBIES  &&
+            HOBBY_POOL_SIZE == changed.HOBBY_POOL_SIZE  &&
+            DECAY_THRESHOLD == changed.DECAY_THRESHOLD  &&
+            PERSON_THREADS == changed.PERSON_THREADS  &&
+            GROUP_THREADS == changed.GROUP_THREADS;
+
+        SIMTAG = changed.SIMTAG;
+        NUM_SIMULATION_YEARS = changed.NUM_SIMULATION_YEARS;
+        INIT_NUM_PEOPLE = changed.INIT_NUM_PEOPLE;
+        INIT_NUM_GROUPS = changed.INIT_NUM_GROUPS;
+        NUM_FRESHMEN_ENROLLING_PER_YEAR =
+            changed.NUM_FRESHMEN_ENROLLING_PER_YEAR;
+        NUM_NEW_GROUPS_PER_YEAR = changed.NUM_NEW_GROUPS_PER_YEAR;
+        DROPOUT_RATE = changed.DROPOUT_RATE;
+        DROPOUT_INTERCEPT = changed.DROPOUT_INTERCEPT;
+        PROBABILITY_WHITE = changed.PROBABILITY_WHITE;
+        RACE_WEIGHT = changed.RACE_WEIGHT;
+        FRIENDSHIP_COEFFICIENT = changed.FRIENDSHIP_COEFFICIENT;
+        FRIENDSHIP_INTERCEPT = changed.FRIENDSHIP_INTERCEPT;
+        NUM_TO_MEET_GROUP = changed.NUM_TO_MEET_GROUP;
+        NUM_TO_MEET_POP = changed.NUM_TO_MEET_POP;
+        INITIAL_NUM_FORCED_OPPOSITE_RACE_FRIENDS =
+            changed.INITIAL_NUM_FORCED_OPPOSITE_RACE_FRIENDS;
+        LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE =
+            changed.LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE;
+        DRIFT_DISTANCE = changed.DRIFT_DISTANCE;
+        RECRUITMENT_REQUIRED = changed.RECRUITMENT_REQUIRED;
+        LIKELIHOOD_OF_RANDOMLY_LEAVING_GROUP =
+            changed.LIKELIHOOD_OF_RANDOMLY_LEAVING_GROUP;
+        GROUP_LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE =
+            changed.GROUP_LIKELIHOOD_OF_RANDOMLY_CHANGING_ATTRIBUTE;
+        GROUP_DRIFT_DISTANCE = changed.GROUP_DRIFT_DISTANCE;
+        INITIAL_NUM_MIXED_RACE_GROUPS = changed.INITIAL_NUM_MIXED_RACE_GROUPS;
+        MIXED_RACE_GROUP_FRACTION = changed.MIXED_RACE_GROUP_FRACTION;
+        EVENT_FLUSH_POLICY = changed.EVENT_FLUSH_POLICY;
+        OUTPUT_FORMAT = changed.OUTPUT_FORMAT;
+        SUMMARIZE_EVENTS = changed.SUMMARIZE_EVENTS;
+        EVENT_SAMPLE_SIZE = changed.EVENT_SAMPLE_SIZE;
+        SIMILARITY_BINS = changed.SIMILARITY_BINS;
+        FRIENDSHIP_KEYFRAME_YEARS = changed.FRIENDSHIP_KEYFRAME_YEARS;
+        CHECKPOINT_AT = changed.CHECKPOINT_AT;
+        FORK_AT = changed.FORK_AT;
+        FORK_FILE = changed.FORK_FILE;
+        FORK_THREADS = changed.FORK_THREADS;
+        FORK_SHARED_STREAMS = changed.FORK_SHARED_STREAMS;
+        JFR_SAMPLE_EVERY = changed.JFR_SAMPLE_EVERY;
+        return same;
+    }
+
+    /**
+     * Write the main parameters to a SIMTAG-annotated filename in the
+     * current directory.
+     */
+    public void writeParamsFile() throws IOException {
+        PrintWriter paramsFile = new PrintWriter(new BufferedWriter(
+            new FileWriter("./sim_params" + SIMTAG + ".txt")));
+        paramsFile.println("seed="+SEED);
+        paramsFile.println("maxTime="+NUM_SIMULATION_YEARS);
+        paramsFile.println("simtag="+SIMTAG);
+        paramsFile.println("raceWeight="+RACE_WEIGHT);
+        paramsFile.println("initNumPeople="+INIT_NUM_PEOPLE);
+        paramsFile.println("numFreshmenPerYear="+
+            NUM_FRESHMEN_ENROLLING_PER_YEAR);
+        paramsFile.println("initNumGroups="+INIT_NUM_GROUPS);
+        paramsFile.println("numNewGroupsPerYear="+
+            NUM_NEW_GROUPS_PER_YEAR);
+        paramsFile.close();
+    }
+}
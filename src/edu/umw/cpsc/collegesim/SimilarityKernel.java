@@ -0,0 +1,58 @@
+package edu.umw.cpsc.collegesim;
+
+
+/**
+ * The inner loop of {@link Person#similarityTo(Person)}: the L1 (sum of
+ * absolute differences) distance between two rows of an attribute matrix.
+ * <p></p>
+ * There are two implementations. If the <code>jdk.incubator.vector</code>
+ * module is present at runtime (<i>i.e.</i>, the JVM was started with
+ * <code>--add-modules jdk.incubator.vector</code>), {@link #create()} hands
+ * out one that uses SIMD lanes; otherwise, it falls back to a plain scalar
+ * loop. Setting the system property <code>collegesim.similarityKernel</code>
+ * to <code>scalar</code> forces the fallback. Note that the two may differ
+ * in the last few bits, since the vector version adds in a different order.
+ */
+public abstract class SimilarityKernel {
+
+    /**
+     * Returns the sum of |a[aOff+i] - b[bOff+i]| for i from 0 to length-1.
+     */
+    public abstract double l1Distance(double[] a, int aOff, double[] b,
+        int bOff, int length);
+
+    /**
+     * Returns the best kernel available in this JVM.
+     */
+    public static SimilarityKernel create() {
+        if (!"scalar".equals(System.getProperty("collegesim.similarityKernel"))
+            && ModuleLayer.boot().findModule("jdk.incubator.vector")
+                .isPresent()) {
+            try {
+                // Load by name, so that this class (and the scalar kernel)
+                // never link against the incubator module.
+                return (SimilarityKernel) Class.forName(
+                    "edu.umw.cpsc.collegesim.VectorSimilarityKernel")
+                    .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.out.println("Vector API unavailable (" + e +
+                    "); using scalar similarity kernel");
+            }
+        }
+        return new Scalar();
+    }
+
+    /**
+     * The plain, one-element-at-a-time kernel.
+     */
+    static class Scalar extends SimilarityKernel {
+        public double l1Distance(double[] a, int aOff, double[] b, int bOff,
+            int length) {
+            double dissimilarity = 0.0;
+            for (int i = 0; i < length; i++) {
+                dissimilarity += Math.abs(a[aOff+i]-b[bOff+i]);
+            }
+            return dissimilarity;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+
+/**
+ * What a {@link Person} has decided to do in one month's step, worked out
+ * against the state of the simulation at the time but not yet applied to
+ * it.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Record, in order, each encounter the person had: whom they met or
+ * tickled, and for meetings, their similarity and whether they decided to
+ * become friends.</li>
+ * <li>Record the person's personality drift: the average attributes of
+ * their friends, and the random factor (or none) drawn for each
+ * attribute.</li>
+ * </ul>
+ * This split is what lets {@link PersonPhase} work out everyone's proposals
+ * in parallel and then apply them one at a time in a fixed order. (When
+ * Persons step one by one, they apply each proposal as soon as they've made
+ * it.) Proposals are meant to be reused from month to month; see {@link
+ * #clear()}.
+ */
+public class StepProposal implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int TICKLE = 0;
+    static final int MEET_NO_FRIENDS = 1;
+    static final int MEET_FRIENDS = 2;
+
+    // The encounters, in order.
+    int numEvents;
+    int[] kinds = new int[16];
+    Person[] others = new Person[16];
+    double[] similarities = new double[16];
+
+    // True if there were any friends to drift towards.
+    boolean drifts;
+    double[] preferenceAverage;
+    double[] hobbyAverage;
+
+    // For each attribute, the random fraction of DRIFT_DISTANCE to move
+    // towards the average, or NaN if the attribute doesn't change.
+    double[] preferenceFactor;
+    double[] hobbyFactor;
+
+    /** Forgets everything, ready for another month. */
+    public void clear() {
+        Arrays.fill(others, 0, numEvents, null);
+        numEvents = 0;
+        drifts = false;
+    }
+
+    void addTickle(Person other) {
+        add(TICKLE, other, Double.NaN);
+    }
+
+    void addMeet(Person other, double similarity, boolean friends) {
+        add(friends ? MEET_FRIENDS : MEET_NO_FRIENDS, other, similarity);
+    }
+
+    /** Returns true if this proposal has the person passed becoming a new
+     * friend. */
+    boolean befriends(Person other) {
+        for (int i = 0; i < numEvents; i++) {
+            if (kinds[i] == MEET_FRIENDS  &&  others[i] == other) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Make sure the drift arrays are there and the right size.
+    void prepareDrift(int numPreferences, int numHobbies) {
+        if (preferenceAverage == null  ||
+            preferenceAverage.length != numPreferences) {
+            preferenceAverage = new double[numPreferences];
+            preferenceFactor = new double[numPreferences];
+        }
+        if (hobbyAverage == null  ||  hobbyAverage.length != numHobbies) {
+            hobbyAverage = new double[numHobbies];
+            hobbyFactor = new double[numHobbies];
+        }
+        drifts = true;
+    }
+
+    private void add(int kind, Person other, double similarity) {
+        if (numEvents == kinds.length) {
+            kinds = Arrays.copyOf(kinds, numEvents * 2);
+            others = Arrays.copyOf(others, numEvents * 2);
+            similarities = Arrays.copyOf(similarities, numEvents * 2);
+        }
+        kinds[numEvents] = kind;
+        others[numEvents] = other;
+        similarities[numEvents] = similarity;
+        numEvents++;
+    }
+}
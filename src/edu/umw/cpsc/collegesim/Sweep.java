@@ -0,0 +1,330 @@
+package edu.umw.cpsc.collegesim;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Runs a parameter sweep in one JVM: every one of a list (or grid) of
+ * parameter sets, each some number of times with different seeds, spread
+ * over a pool of threads. Each run gets its own SIMTAG, and so its own
+ * sim_params file and output tables, just as if it had been run by {@link
+ * Sim#main(String[])}.
+ * <p></p>
+ * Usage: <code>Sweep [Sim's arguments] [-replications num] [-sweepThreads
+ * num] [-sweepFile file] [-vary -param value,value,...]... [-manifest
+ * file]</code>
+ * <ul>
+ * <li>Sim's arguments (including the mandatory -maxTime and -simtag) are
+ * shared by every run. The runs get consecutive SIMTAGs starting with
+ * -simtag's.</li>
+ * <li>Each line of the -sweepFile (other than blank ones, and comments
+ * starting with #) is a parameter set: more of Sim's arguments, which
+ * override the shared ones.</li>
+ * <li>Each -vary adds a dimension to a grid of parameter sets: the
+ * parameter's values, separated by commas. With a -sweepFile too, every
+ * line is combined with every point of the grid.</li>
+ * <li>Each parameter set is run -replications times (default 1), the
+ * i<sup>th</sup> time with seed -seed+i (so every set sees the same
+ * seeds).</li>
+ * </ul>
+ * The runs are listed in a manifest file (by default,
+ * sweep&lt;SIMTAG&gt;.manifest), each marked done as it finishes. If the
+ * manifest already exists, the sweep it lists is resumed instead: the runs
+ * not marked done are run again, and the sweep's arguments (other than
+ * -sweepThreads) are ignored.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Run thousands of short simulations without starting a JVM for
+ * each.</li>
+ * <li>Keep every core busy: the runs are handed out by a work-stealing
+ * pool, so a thread that finishes early takes on the next run rather than
+ * waiting for the slow ones.</li>
+ * <li>Pick up where a crashed or killed sweep left off.</li>
+ * </ul>
+ */
+public class Sweep {
+
+    // One run of the sweep.
+    private static class Run {
+        long simtag;
+        long seed;
+        String[] args;
+    }
+
+    private static final String RUN = "run";
+    private static final String DONE = "done";
+
+    private final ArrayList<Run> runs = new ArrayList<Run>();
+    private final HashSet<Long> done = new HashSet<Long>();
+    private final String manifestName;
+    private PrintWriter manifest;
+
+    /**
+     * Constructs the sweep listed in the manifest file named, if it exists
+     * (with those of its runs that are done); otherwise, the one the
+     * arguments passed describe, which it lists in a new manifest file of
+     * that name.
+     */
+    public Sweep(String[] args, String manifestName) throws IOException {
+        this.manifestName = manifestName;
+        if (new File(manifestName).exists()) {
+            readManifest();
+        } else {
+            plan(args);
+            writeManifest();
+        }
+    }
+
+    /** Returns the number of runs in the sweep. */
+    public int getNumRuns() {
+        return runs.size();
+    }
+
+    /** Returns the number of runs in the sweep that are done. */
+    public synchronized int getNumDone() {
+        return done.size();
+    }
+
+    /**
+     * Performs every run of the sweep not yet done, on the number of
+     * threads passed, marking each done in the manifest as it finishes.
+     * Returns the number of runs that failed (which are left not done).
+     */
+    public int run(int threads) throws IOException {
+        manifest = new PrintWriter(new FileWriter(manifestName, true));
+        if (!endsWithNewline(manifestName)) {
+            // Finish the line a crash cut short.
+            manifest.println();
+        }
+        ExecutorService pool = Executors.newWorkStealingPool(threads);
+        ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < runs.size(); i++) {
+            final Run run = runs.get(i);
+            if (!done.contains(run.simtag)) {
+                futures.add(pool.submit(new Runnable() {
+                    public void run() {
+                        perform(run);
+                    }
+                }));
+            }
+        }
+        int failures = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (Exception e) {
+                e.printStackTrace();
+                failures++;
+            }
+        }
+        pool.shutdown();
+        manifest.close();
+        return failures;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String manifestName = null;
+        long simtag = -1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-sweepThreads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-manifest")) {
+                manifestName = args[++i];
+            } else if (args[i].equals("-simtag")) {
+                simtag = Long.parseLong(args[++i]);
+            }
+        }
+        if (manifestName == null) {
+            if (simtag == -1) {
+                printUsageAndQuit();
+            }
+            manifestName = "sweep" + simtag + ".manifest";
+        }
+
+        Sweep sweep = new Sweep(args, manifestName);
+        System.out.println("Sweep: " + sweep.getNumRuns() + " runs, " +
+            sweep.getNumDone() + " already done, on " + threads +
+            " threads.");
+        int failures = sweep.run(threads);
+        if (failures > 0) {
+            System.err.println(failures + " runs failed; rerun to retry " +
+                "them.");
+            System.exit(2);
+        }
+    }
+
+    /** (public simply to get it in the JavaDoc.) */
+    public static void printUsageAndQuit() {
+        System.err.println(
+        "Usage: Sweep [Sim's arguments]         # see Sim\n" +
+        "  [-replications num]                  # Integer; default 1\n" +
+        "  [-sweepThreads num]                  # Integer; default #cores\n" +
+        "  [-sweepFile file]                    # one parameter set a line\n" +
+        "  [-vary -param value,value,...]...    # grid of parameter sets\n" +
+        "  [-manifest file]                     # default sweepTAG.manifest");
+        System.exit(1);
+    }
+
+    // Perform the run passed, and mark it done.
+    private void perform(Run run) {
+        SimParameters params = SimParameters.parse(run.args);
+        try {
+            params.writeParamsFile();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        new Sim(params.SEED, params).runToEnd();
+        synchronized (this) {
+            done.add(run.simtag);
+            manifest.println(DONE + "\t" + run.simtag + "\t" + run.seed);
+            manifest.flush();
+        }
+    }
+
+    // Work out the runs the arguments passed call for.
+    private void plan(String[] args) throws IOException {
+        // Separate the sweep's own arguments from the shared ones.
+        ArrayList<String> shared = new ArrayList<String>();
+        ArrayList<String[]> sets = new ArrayList<String[]>();
+        sets.add(new String[0]);
+        ArrayList<String> varied = new ArrayList<String>();
+        ArrayList<String[]> values = new ArrayList<String[]>();
+        int replications = 1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-replications")) {
+                replications = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-sweepThreads")  ||
+                args[i].equals("-manifest")) {
+                i++;
+            } else if (args[i].equals("-sweepFile")) {
+                sets = new ArrayList<String[]>(
+                    Arrays.asList(readSweepFile(args[++i])));
+            } else if (args[i].equals("-vary")) {
+                varied.add(args[++i]);
+                values.add(args[++i].split(","));
+            } else {
+                shared.add(args[i]);
+            }
+        }
+
+        // Combine each set with each point of the grid.
+        for (int v = 0; v < varied.size(); v++) {
+            ArrayList<String[]> combined = new ArrayList<String[]>();
+            for (int s = 0; s < sets.size(); s++) {
+                for (int x = 0; x < values.get(v).length; x++) {
+                    String[] set = Arrays.copyOf(sets.get(s),
+                        sets.get(s).length + 2);
+                    set[set.length - 2] = varied.get(v);
+                    set[set.length - 1] = values.get(v)[x];
+                    combined.add(set);
+                }
+            }
+            sets = combined;
+        }
+
+        // (Parsing the shared arguments checks the mandatory ones are
+        // there, and fixes the seed, if it's from the clock.)
+        SimParameters base = SimParameters.parse(
+            shared.toArray(new String[0]));
+        for (int s = 0; s < sets.size(); s++) {
+            for (int r = 0; r < replications; r++) {
+                Run run = new Run();
+                run.simtag = base.SIMTAG + runs.size();
+                run.seed = base.SEED + r;
+                ArrayList<String> runArgs = new ArrayList<String>(shared);
+                runArgs.addAll(Arrays.asList(sets.get(s)));
+                runArgs.add("-simtag");
+                runArgs.add("" + run.simtag);
+                runArgs.add("-seed");
+                runArgs.add("" + run.seed);
+                run.args = runArgs.toArray(new String[0]);
+                // Catch any bad parameter set now, rather than mid-sweep.
+                SimParameters.parse(run.args);
+                runs.add(run);
+            }
+        }
+    }
+
+    private static boolean endsWithNewline(String filename)
+        throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        boolean result = file.length() == 0;
+        if (!result) {
+            file.seek(file.length() - 1);
+            result = file.read() == '\n';
+        }
+        file.close();
+        return result;
+    }
+
+    /** Returns the sets of arguments in the file named, one a line
+     * (skipping blank lines and comments starting with #). */
+    static String[][] readSweepFile(String filename)
+        throws IOException {
+        ArrayList<String[]> sets = new ArrayList<String[]>();
+        BufferedReader in = new BufferedReader(new FileReader(filename));
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.length() > 0  &&  !line.startsWith("#")) {
+                sets.add(line.split("\\s+"));
+            }
+        }
+        in.close();
+        return sets.toArray(new String[0][]);
+    }
+
+    // Each run is a tab-separated line: "run", SIMTAG, seed, and its
+    // arguments (separated by spaces); and each run done, "done" and its
+    // SIMTAG and seed.
+    private void writeManifest() throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(manifestName));
+        for (int i = 0; i < runs.size(); i++) {
+            Run run = runs.get(i);
+            out.println(RUN + "\t" + run.simtag + "\t" + run.seed + "\t" +
+                String.join(" ", run.args));
+        }
+        out.close();
+    }
+
+    private void readManifest() throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(manifestName));
+        HashSet<String> finished = new HashSet<String>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] fields = line.split("\t");
+            if (fields[0].equals(RUN)  &&  fields.length == 4) {
+                Run run = new Run();
+                run.simtag = Long.parseLong(fields[1]);
+                run.seed = Long.parseLong(fields[2]);
+                run.args = fields[3].split(" ");
+                runs.add(run);
+            } else if (fields[0].equals(DONE)  &&  fields.length == 3) {
+                finished.add(fields[1] + "\t" + fields[2]);
+            }
+        }
+        in.close();
+        // (A line cut short by a crash won't match any run's SIMTAG and
+        // seed, so that run is done again.)
+        for (int i = 0; i < runs.size(); i++) {
+            Run run = runs.get(i);
+            if (finished.contains(run.simtag + "\t" + run.seed)) {
+                done.add(run.simtag);
+            }
+        }
+    }
+}
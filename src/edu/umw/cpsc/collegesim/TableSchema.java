@@ -0,0 +1,133 @@
+package edu.umw.cpsc.collegesim;
+
+
+/**
+ * The layout of one of the tables the simulation outputs (encounters,
+ * people, groups, and so on): its name, and the name and type of each of
+ * its columns.
+ * <p></p>
+ * Purpose in life:
+ * <ul>
+ * <li>Define, in one place, every table's columns, so that the CSV and
+ * binary writers (see {@link TableWriter}) and the binary reader agree on
+ * them.</li>
+ * <li>By convention, the first column of every table is the year (or
+ * "period") the row belongs to, an {@link Type#INT}.</li>
+ * </ul>
+ */
+public class TableSchema {
+
+    /** The types a column can have. */
+    public enum Type {
+        /** A 32-bit integer. */
+        INT,
+        /** A double, written in CSV as Java prints it. */
+        DOUBLE,
+        /** true or false. */
+        BOOLEAN,
+        /** One of a small set of strings, such as a race or event type. */
+        SYMBOL
+    }
+
+    public static final TableSchema ENCOUNTERS = new TableSchema(
+        "encounters", "year,id1,id2,type",
+        Type.INT, Type.INT, Type.INT, Type.SYMBOL);
+
+    public static final TableSchema SIMILARITY = new TableSchema(
+        "similarity", "year,races,similarity,becameFriends",
+        Type.INT, Type.SYMBOL, Type.DOUBLE, Type.BOOLEAN);
+
+    public static final TableSchema PEOPLE = new TableSchema(
+        "people",
+        "period,id,numFriends,numGroups,race,gender,alienation,yearInSchool",
+        Type.INT, Type.INT, Type.INT, Type.INT, Type.SYMBOL, Type.SYMBOL,
+        Type.DOUBLE, Type.INT);
+
+    /** Students who dropped out, as they were when they did; laid out like
+     * {@link #PEOPLE}. */
+    public static final TableSchema DROPOUTS = new TableSchema(
+        "dropout", PEOPLE.getHeader(), PEOPLE.types);
+
+    /** Students who dropped out, as they were when they did, for
+     * {@link Sim#dumpPreferencesOfDropoutStudent(Person)}. */
+    public static final TableSchema DROPOUT_PREFERENCES = new TableSchema(
+        "dropoutPreferences", "period,ID,numFriends,race,alienation,year",
+        Type.INT, Type.INT, Type.INT, Type.SYMBOL, Type.DOUBLE, Type.INT);
+
+    public static final TableSchema FRIENDSHIPS = new TableSchema(
+        "friendships", "period,id,friendId",
+        Type.INT, Type.INT, Type.INT);
+
+    /** The friendships made and ended each year, with periodic keyframes
+     * (see {@link FriendshipDeltaWriter}). */
+    public static final TableSchema FRIENDSHIP_CHANGES = new TableSchema(
+        "friendshipChanges", "period,id1,id2,change",
+        Type.INT, Type.INT, Type.INT, Type.SYMBOL);
+
+    public static final TableSchema GROUPS = new TableSchema(
+        "groups", "year,id,numMin,numWhi",
+        Type.INT, Type.INT, Type.INT, Type.INT);
+
+    /** Each month's counts and phase times (see {@link SimMetrics}), in
+     * the order of its Counters and Timers. */
+    public static final TableSchema METRICS = new TableSchema(
+        "metrics", "year,month,meets,friendshipsFormed,tickles,decays," +
+        "recruitsAttempted,recruitsAccepted,groupLeaves,dropouts," +
+        "graduations,personStepMillis,groupStepMillis,augustMillis," +
+        "mayMillis,fileDumpMillis",
+        Type.INT, Type.INT, Type.INT, Type.INT, Type.INT, Type.INT,
+        Type.INT, Type.INT, Type.INT, Type.INT, Type.INT,
+        Type.DOUBLE, Type.DOUBLE, Type.DOUBLE, Type.DOUBLE, Type.DOUBLE);
+
+    private final String name;
+    private final String[] columnNames;
+    private final Type[] types;
+
+    /**
+     * Constructs a schema for the table whose name is passed, with the
+     * comma-separated column names and the column types passed.
+     */
+    public TableSchema(String name, String header, Type... types) {
+        this.name = name;
+        this.columnNames = header.split(",");
+        this.types = types.clone();
+        if (columnNames.length != types.length) {
+            throw new IllegalArgumentException(name + " has " +
+                columnNames.length + " column names but " + types.length +
+                " types");
+        }
+        if (types.length == 0  ||  types[0] != Type.INT) {
+            throw new IllegalArgumentException(name +
+                "'s first column must be the year (an INT)");
+        }
+    }
+
+    /** Returns the table's name, which (with the SIMTAG) names its
+     * file. */
+    public String getName() {
+        return name;
+    }
+
+    public int getNumColumns() {
+        return types.length;
+    }
+
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    public Type getType(int column) {
+        return types[column];
+    }
+
+    /** Returns the column names, comma-separated, as in a CSV header. */
+    public String getHeader() {
+        return String.join(",", columnNames);
+    }
+
+    /** Returns the name of this table's file for the run whose SIMTAG is
+     * passed, in the format passed. */
+    public String getFileName(long simtag, TableWriter.Format format) {
+        return name + simtag + format.getExtension();
+    }
+}
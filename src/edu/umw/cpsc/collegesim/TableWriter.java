@@ -0,0 +1,105 @@
+package edu.umw.cpsc.collegesim;
+
+
+/**
+ * Writes the rows of one output table (see {@link TableSchema}), one value
+ * at a time, in whichever {@link Format} the run is using. Callers don't
+ * build any text themselves; they just hand over values, in column order:
+ * <pre>
+ *     table.putInt(year).putInt(id).putSymbol("tickle").endRow();
+ * </pre>
+ * Purpose in life:
+ * <ul>
+ * <li>Let the Persons, Groups, and the Sim write every table the same way,
+ * whatever the format.</li>
+ * <li>Check that each row has the right number of values.</li>
+ * </ul>
+ */
+public abstract class TableWriter {
+
+    /** The formats tables can be written in. */
+    public enum Format {
+        /** Comma-separated text, one file per table (the default). */
+        CSV(".csv"),
+        /** Compact binary, columnar, in yearly chunks (see {@link
+         * ColumnarTableWriter}). */
+        BINARY(ColumnarTableWriter.EXTENSION);
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /** Returns the filename extension (with the dot) for this
+         * format. */
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    protected final TableSchema schema;
+
+    // The column the next value is for.
+    protected int column;
+
+    protected TableWriter(TableSchema schema) {
+        this.schema = schema;
+    }
+
+    public TableSchema getSchema() {
+        return schema;
+    }
+
+    public abstract TableWriter putInt(int value);
+
+    public abstract TableWriter putDouble(double value);
+
+    public abstract TableWriter putBoolean(boolean value);
+
+    /** Puts one of a small set of strings (such as an enum constant's
+     * name). */
+    public abstract TableWriter putSymbol(String value);
+
+    /** Finishes the current row, which must have had a value put for every
+     * column. */
+    public abstract void endRow();
+
+    /** Marks the end of a year's rows. Most writers needn't do anything,
+     * but one that summarizes them (see {@link AggregatingTableWriter})
+     * writes its summary. */
+    public void endYear() {
+    }
+
+    /** Makes sure every row so far has reached the file (or, for a {@link
+     * ColumnarTableWriter}, every year's rows, up to the current year's). */
+    public abstract void flush();
+
+    /** Flushes and closes the table. */
+    public abstract void close();
+
+    // Check that a value of the type passed goes next, and move on to the
+    // column after it.
+    protected void nextColumn(TableSchema.Type type) {
+        if (column >= schema.getNumColumns()) {
+            throw new IllegalStateException("Too many values in a row of " +
+                schema.getName());
+        }
+        if (schema.getType(column) != type) {
+            throw new IllegalStateException("Column " +
+                schema.getColumnName(column) + " of " + schema.getName() +
+                " is " + schema.getType(column) + ", not " + type);
+        }
+        column++;
+    }
+
+    // Check that the row just finished was complete, and start another.
+    protected void checkRowComplete() {
+        if (column != schema.getNumColumns()) {
+            throw new IllegalStateException("Only " + column + " of " +
+                schema.getNumColumns() + " values in a row of " +
+                schema.getName());
+        }
+        column = 0;
+    }
+}
@@ -0,0 +1,36 @@
+package edu.umw.cpsc.collegesim;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * A {@link SimilarityKernel} that uses the (incubating) Java Vector API to
+ * compute as many absolute differences at once as the hardware allows. Only
+ * ever instantiated, by name, from {@link SimilarityKernel#create()}, after
+ * checking that the module is actually there.
+ */
+class VectorSimilarityKernel extends SimilarityKernel {
+
+    private static final VectorSpecies<Double> SPECIES =
+        DoubleVector.SPECIES_PREFERRED;
+
+    public double l1Distance(double[] a, int aOff, double[] b, int bOff,
+        int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int i = 0;
+        int upperBound = SPECIES.loopBound(length);
+        for (; i < upperBound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOff+i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOff+i);
+            acc = acc.add(va.sub(vb).abs());
+        }
+        double dissimilarity = acc.reduceLanes(VectorOperators.ADD);
+        // The leftovers that don't fill a whole vector.
+        for (; i < length; i++) {
+            dissimilarity += Math.abs(a[aOff+i]-b[bOff+i]);
+        }
+        return dissimilarity;
+    }
+}